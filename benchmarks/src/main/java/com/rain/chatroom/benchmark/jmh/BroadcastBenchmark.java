@@ -0,0 +1,55 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.server.handler.OutboundMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播：一次 broadcastToAll 把消息放入所有在线会话的发送队列并写出到 sink
+ *
+ * - preEncoded：调用方已编码好的 OutboundMessage(聊天消息的路径)
+ * - text：从字符串开始，包含一次编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BroadcastBenchmark {
+    @Param({"10", "1000", "50000"})
+    private int sessions;
+
+    private ChatFixture fixture;
+    private OutboundMessage message;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        fixture.login(sessions);
+        ChatMessage chatMessage = new ChatMessage(ChatMessage.MessageType.TEXT, "bench", "hello everyone");
+        message = OutboundMessage.chat(chatMessage, "[bench]: hello everyone");
+    }
+
+    @Benchmark
+    public void preEncoded() {
+        fixture.broadcastService.broadcastToAll(message, null);
+    }
+
+    @Benchmark
+    public void text() {
+        fixture.broadcastService.broadcastToAll("[bench]: hello everyone", null);
+    }
+}
@@ -0,0 +1,95 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import com.rain.chatroom.server.cache.HistoryCache;
+import com.rain.chatroom.server.command.CommandDispatcher;
+import com.rain.chatroom.server.command.CommandRegistry;
+import com.rain.chatroom.server.config.ThreadPoolConfig;
+import com.rain.chatroom.server.dao.AsyncMessageWriter;
+import com.rain.chatroom.server.dao.CachingUserDao;
+import com.rain.chatroom.server.dao.FriendDao;
+import com.rain.chatroom.server.dao.GroupDao;
+import com.rain.chatroom.server.dao.MessageDao;
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.handler.BlockingClientSession;
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.FlushPolicy;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.WriteContext;
+import com.rain.chatroom.server.handler.WriteStats;
+import com.rain.chatroom.server.manager.FriendManager;
+import com.rain.chatroom.server.manager.GroupManager;
+import com.rain.chatroom.server.manager.SessionManager;
+import com.rain.chatroom.server.service.BroadcastService;
+import com.rain.chatroom.server.service.HistoryService;
+
+import java.util.List;
+
+/**
+ * 不依赖数据库和网络的服务器组件组装
+ *
+ * - 会话使用 SinkSocket，写线程池换成调用线程直接执行，sendMessage 返回时消息已写入 sink
+ * - 消息落库换成空实现；用户、群组、好友只使用已在线会话的内存数据，基准不会走到查库分支
+ * - 扇出全部在调用线程执行，测量的是扇出本身而不是线程切换
+ */
+class ChatFixture {
+    // 发送队列容量取较小值，5 万会话时不至于占用过多堆
+    private static final int QUEUE_CAPACITY = 64;
+
+    final SessionManager sessionManager = new SessionManager();
+    final WriteContext writeContext = new WriteContext(Runnable::run, null,
+            new FlushPolicy(true, 0, 64 * 1024), new WriteStats());
+    final BroadcastService broadcastService;
+    final CommandRegistry commandRegistry = new CommandRegistry();
+    final CommandDispatcher commandDispatcher;
+
+    ChatFixture() {
+        MessageDao messageDao = new NullMessageDao();
+        AsyncMessageWriter messageWriter = new AsyncMessageWriter(messageDao, false, 1, 1, 1, 0);
+        HistoryService historyService = new HistoryService(new HistoryCache(50, 32L * 1024 * 1024),
+                messageDao, messageWriter, 20);
+        this.broadcastService = new BroadcastService(sessionManager, new CachingUserDao(10000, 300, 30),
+                new GroupManager(sessionManager, new GroupDao()), new FriendManager(sessionManager, new FriendDao()),
+                historyService, ThreadPoolConfig.createStripedExecutor("bench-fanout-", 1, 1), Integer.MAX_VALUE, null, null, null);
+        broadcastService.registerCommands(commandRegistry);
+        this.commandDispatcher = new CommandDispatcher(commandRegistry,
+                ThreadPoolConfig.createStripedExecutor("bench-io-", 1, 1024));
+    }
+
+    ClientSession newSession() {
+        return new BlockingClientSession(new SinkSocket(),
+                new OutboundQueue(QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.DROP_OLDEST), writeContext);
+    }
+
+    static UserDao.User newUser(long id, String username) {
+        UserDao.User user = new UserDao.User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setNickname(username);
+        user.setPassword("");
+        return user;
+    }
+
+    /**
+     * 建立 count 个已登录会话，用户名为 user-0 ~ user-(count-1)
+     */
+    void login(int count) {
+        for (int i = 0; i < count; i++) {
+            ClientSession session = newSession();
+            sessionManager.registerSession(session);
+            sessionManager.setUser(session, newUser(i, "user-" + i));
+        }
+    }
+
+    // 消息落库的空实现
+    private static final class NullMessageDao extends MessageDao {
+        @Override
+        public boolean saveMessage(ChatMessage message) {
+            return true;
+        }
+
+        @Override
+        public boolean saveMessages(List<ChatMessage> messages) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import com.rain.chatroom.server.command.CommandArgs;
+import com.rain.chatroom.server.command.CommandDefinition;
+import com.rain.chatroom.server.handler.ClientSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令解析：命令名查表 + 按参数模式切分参数，以及完整分发一条 CPU 型命令
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandParseBenchmark {
+    @Param({"/msg alice hello there, how are you?", "/HISTORY #42", "/groupmsg 1001 meeting at 10", "/nosuchcommand x"})
+    private String line;
+
+    private ChatFixture fixture;
+    private ClientSession session;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        fixture.login(100);
+        session = fixture.sessionManager.getSessionsByUsername("user-0").iterator().next();
+    }
+
+    @Benchmark
+    public void lookupAndParse(Blackhole blackhole) {
+        int nameEnd = line.indexOf(' ');
+        if (nameEnd < 0) {
+            nameEnd = line.length();
+        }
+        CommandDefinition command = fixture.commandRegistry.lookup(line, 0, nameEnd);
+        if (command == null) {
+            blackhole.consume(nameEnd);
+            return;
+        }
+        CommandArgs args = CommandArgs.parse(line, nameEnd, command.getSchema());
+        blackhole.consume(args.get(0));
+        blackhole.consume(args.get(args.size() - 1));
+    }
+
+    // /users 在读线程上直接执行，回复写入 sink；包含查表、解析和执行
+    @Benchmark
+    public void dispatchUsers() {
+        fixture.commandDispatcher.dispatch(session, "/users");
+    }
+}
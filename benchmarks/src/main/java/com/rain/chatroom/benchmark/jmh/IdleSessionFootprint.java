@@ -0,0 +1,88 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import com.rain.chatroom.server.handler.FlushPolicy;
+import com.rain.chatroom.server.handler.OutboundMessage;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.WriteContext;
+import com.rain.chatroom.server.handler.WriteStats;
+import com.rain.chatroom.server.manager.SessionManager;
+import com.rain.chatroom.server.nio.NioClientSession;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Properties;
+
+/**
+ * 空闲连接的内存占用：建立 sessions 个已登录、没有在途数据的 NIO 会话，测量平均每个会话增加的堆内存
+ *
+ * - 会话使用 SinkChannel，不占用文件描述符；因此不包含 JDK 的通道对象、SelectionKey 和内核 socket 缓冲区，
+ *   测量的是本项目控制的部分：会话对象、发送队列、用户身份和 SessionManager 的索引
+ * - 每个会话模拟登录时的一次发送(欢迎消息入队后被写出方取空)，之后保持空闲
+ * - 用户资料(UserDao.User)在正式环境由 CachingUserDao 按容量缓存，与连接数无关，不计入
+ * - 阻塞传输每个连接占一个线程，栈内存远大于会话对象，不在这里测量
+ *
+ * 不是 JMH 基准，直接运行：
+ *   java -cp target/benchmarks.jar com.rain.chatroom.benchmark.jmh.IdleSessionFootprint [sessions=100000] [target=768]
+ * 结果超过 target 字节/连接时以非零状态退出，可用于发布前检查
+ */
+public class IdleSessionFootprint {
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    public static void main(String[] args) throws Exception {
+        Properties options = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.out.println("参数格式为 key=value: " + arg);
+                return;
+            }
+            options.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int sessions = Integer.parseInt(options.getProperty("sessions", "100000"));
+        long target = Long.parseLong(options.getProperty("target", "768"));
+
+        SessionManager sessionManager = new SessionManager();
+        WriteContext writeContext = new WriteContext(Runnable::run, null,
+                new FlushPolicy(true, 0, 64 * 1024), new WriteStats());
+        OutboundMessage welcome = OutboundMessage.text("欢迎 user! 输入 'bye' 退出");
+
+        long before = usedHeap();
+        for (int i = 0; i < sessions; i++) {
+            NioClientSession session = new NioClientSession(new SinkChannel(), null,
+                    new OutboundQueue(QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.DROP_SYSTEM_FIRST),
+                    writeContext, null, null, MAX_LINE_LENGTH);
+            sessionManager.registerSession(session);
+            sessionManager.setUser(session, ChatFixture.newUser(i, "user-" + i));
+            OutboundQueue queue = session.getOutboundQueue();
+            queue.offer(welcome);
+            OutboundMessage message;
+            while ((message = queue.poll()) != null) {
+                // 模拟写出方取空队列
+                message.release();
+            }
+        }
+        long after = usedHeap();
+
+        long perSession = (after - before) / sessions;
+        System.out.printf("空闲会话: %d, 堆增长: %.1f MB, 每个连接: %d 字节 (目标 %d 字节)%n",
+                sessionManager.getOnlineCount(), (after - before) / 1024.0 / 1024.0, perSession, target);
+        System.exit(perSession <= target ? 0 : 1);
+    }
+
+    // 多次 GC 直到已用堆稳定，只剩可达对象
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long current = memory.getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,56 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 私聊路由：按用户名索引找到收发双方的会话，投递、写入热点历史，并给发送者回执
+ *
+ * 收发双方轮换，热点历史按会话分布，不会只命中同一个环
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrivateMessageBenchmark {
+    private static final int PAIRS = 256;
+
+    @Param({"1000", "50000"})
+    private int sessions;
+
+    private ChatFixture fixture;
+    private String[] senders;
+    private String[] receivers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        fixture.login(sessions);
+        senders = new String[PAIRS];
+        receivers = new String[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            senders[i] = "user-" + (i * 7919 % sessions);
+            receivers[i] = "user-" + ((i * 7919 + 1) % sessions);
+        }
+    }
+
+    @Benchmark
+    public boolean sendPrivateMessage() {
+        int i = next++ & (PAIRS - 1);
+        return fixture.broadcastService.sendPrivateMessage(senders[i], receivers[i], "are you there?");
+    }
+}
@@ -0,0 +1,61 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.handler.ClientSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话上下线：注册 -> 登录(加入用户名/用户ID索引) -> 移除，在已有 online 个在线会话的基础上反复进行
+ *
+ * 会话对象预先创建并循环使用，只测量 SessionManager 的索引维护
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionChurnBenchmark {
+    private static final int CHURNING = 1024;
+
+    @Param({"0", "10000"})
+    private int online;
+
+    private ChatFixture fixture;
+    private ClientSession[] sessions;
+    private UserDao.User[] users;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        fixture.login(online);
+        sessions = new ClientSession[CHURNING];
+        users = new UserDao.User[CHURNING];
+        for (int i = 0; i < CHURNING; i++) {
+            sessions[i] = fixture.newSession();
+            users[i] = ChatFixture.newUser(online + i, "churn-" + i);
+        }
+    }
+
+    @Benchmark
+    public void registerLoginRemove() {
+        int i = next++ & (CHURNING - 1);
+        ClientSession session = sessions[i];
+        fixture.sessionManager.registerSession(session);
+        fixture.sessionManager.setUser(session, users[i]);
+        fixture.sessionManager.removeSession(session.getSessionId());
+    }
+}
@@ -0,0 +1,66 @@
+package com.rain.chatroom.benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * 不连接网络的 Socket：写出的数据只计数后丢弃，读取立即返回流结束
+ *
+ * 交给 BlockingClientSession 的公开构造器后，会话的入队、合并写、编码拷贝都走真实代码，只有系统调用被替换
+ */
+class SinkSocket extends Socket {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final SinkOutputStream output = new SinkOutputStream();
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return LOOPBACK;
+    }
+
+    @Override
+    public int getPort() {
+        return 65535;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        // 无需释放任何资源
+    }
+
+    long getBytesWritten() {
+        return output.bytes;
+    }
+
+    private static final class SinkOutputStream extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.rain.chatroom.benchmark;
+
+import com.rain.chatroom.server.ChatServer;
+import com.rain.chatroom.server.config.ServerConfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程模型对比测试 - 平台线程池 vs 虚拟线程
+ *
+ * 用法：java -cp ... com.rain.chatroom.benchmark.ThreadModeBenchmark [连接数] [起始端口]
+ * 需要在 Java 21 上运行(mvn -Pjava21 package) 才能看到虚拟线程模式的结果，否则虚拟线程模式会回退到平台线程池
+ *
+ * 测试流程(不依赖数据库)：
+ * 1. 同时保持 N 个连接，每个连接收到登录提示后发送无效选择 "3"，服务端回复后关闭连接
+ * 2. 统计 收到登录提示的延迟分布、全部完成耗时、服务端峰值线程数
+ * 平台线程池模式下超出 pool.connection.maxThreads 的连接会被直接拒绝(队列容量为0时)，需要相应调大该值
+ */
+public class ThreadModeBenchmark {
+    private static final int MAX_CONNECTING = 100;
+    private static final long TIMEOUT_MILLIS = 120_000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int basePort = args.length > 1 ? Integer.parseInt(args[1]) : 9900;
+
+        run("platform", connections, basePort);
+        run("virtual", connections, basePort + 1);
+    }
+
+    private static void run(String threadMode, int connections, int port) throws Exception {
+        System.setProperty("server.transport", "bio");
+        System.setProperty("server.threadMode", threadMode);
+        System.setProperty("server.port", String.valueOf(port));
+
+        ChatServer server = new ChatServer(ServerConfig.load());
+        Thread serverThread = new Thread(server::start, "bench-server-" + threadMode);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort(port);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        System.gc();
+
+        long start = System.nanoTime();
+        long[] greetingLatency = drive(port, connections);
+        long elapsed = System.nanoTime() - start;
+
+        server.stop();
+
+        int completed = greetingLatency.length;
+        Arrays.sort(greetingLatency);
+        System.out.printf("[%s] 连接数: %d, 完成: %d, 总耗时: %d ms, 峰值线程: %d%n",
+                threadMode, connections, completed, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                threads.getPeakThreadCount());
+        if (completed > 0) {
+            System.out.printf("[%s] 登录提示延迟 p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                    threadMode,
+                    percentile(greetingLatency, 0.50) / 1e6,
+                    percentile(greetingLatency, 0.99) / 1e6,
+                    greetingLatency[completed - 1] / 1e6);
+        }
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("服务器未能在端口 " + port + " 启动");
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * 用一个Selector驱动所有模拟连接，返回每个完成连接的登录提示延迟(纳秒)
+     */
+    private static long[] drive(int port, int connections) throws IOException {
+        InetSocketAddress address = new InetSocketAddress("localhost", port);
+        ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+        ByteBuffer choice = ByteBuffer.wrap("3\n".getBytes(StandardCharsets.UTF_8));
+        long[] latencies = new long[connections];
+        int opened = 0;
+        int connecting = 0;
+        int finished = 0;
+        int completed = 0;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        try (Selector selector = Selector.open()) {
+            while (finished < connections && System.currentTimeMillis() < deadline) {
+                while (opened < connections && connecting < MAX_CONNECTING) {
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.connect(address);
+                    channel.register(selector, SelectionKey.OP_CONNECT, new long[]{System.nanoTime(), 0});
+                    opened++;
+                    connecting++;
+                }
+
+                selector.select(100);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    long[] state = (long[]) key.attachment();
+                    boolean connectPhase = key.isConnectable();
+                    try {
+                        if (connectPhase) {
+                            channel.finishConnect();
+                            connecting--;
+                            key.interestOps(SelectionKey.OP_READ);
+                        } else if (key.isReadable()) {
+                            readBuffer.clear();
+                            int n = channel.read(readBuffer);
+                            if (n < 0) {
+                                channel.close();
+                                finished++;
+                            } else if (state[1] == 0 && n > 0) {
+                                // 第一次收到数据即登录提示
+                                state[1] = System.nanoTime();
+                                latencies[completed++] = state[1] - state[0];
+                                channel.write(choice.duplicate());
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (connectPhase) {
+                            connecting--;
+                        }
+                        channel.close();
+                        finished++;
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+        }
+        return Arrays.copyOf(latencies, completed);
+    }
+}
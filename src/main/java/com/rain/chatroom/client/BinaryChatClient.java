@@ -0,0 +1,184 @@
+package com.rain.chatroom.client;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.common.protocol.BinaryCodec;
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.common.protocol.BinaryFrameWriter;
+import com.rain.chatroom.common.protocol.BinaryProtocol;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * 二进制协议客户端 - 可作为交互式客户端使用，也可被压测工具以编程方式调用
+ *
+ * 连接后先发送握手，跳过服务端在握手应答之前发出的文本欢迎语，之后收发的都是二进制帧
+ */
+public class BinaryChatClient implements Closeable {
+    private static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final int version;
+
+    public BinaryChatClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        out.write(BinaryProtocol.handshake(BinaryProtocol.VERSION));
+        out.flush();
+        this.version = awaitHandshake();
+        if (version == 0) {
+            socket.close();
+            throw new IOException("服务端不支持二进制协议版本 " + BinaryProtocol.VERSION);
+        }
+    }
+
+    // 文本内容不含 0x00，遇到 0x00 即为握手应答的开始
+    private int awaitHandshake() throws IOException {
+        int b;
+        while ((b = in.read()) != 0) {
+            if (b < 0) {
+                throw new EOFException("握手前连接已关闭");
+            }
+        }
+        byte[] handshake = new byte[BinaryProtocol.HANDSHAKE_LENGTH];
+        in.readFully(handshake, 1, handshake.length - 1);
+        int accepted = BinaryProtocol.readHandshake(handshake, 0);
+        if (accepted < 0) {
+            throw new IOException("握手应答格式错误");
+        }
+        return accepted;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void login(String username, String password) throws IOException {
+        send(new BinaryFrameWriter(BinaryProtocol.OP_LOGIN)
+                .writeString(username).writeString(password).toByteArray());
+    }
+
+    public void register(String username, String password, String nickname, String email) throws IOException {
+        send(new BinaryFrameWriter(BinaryProtocol.OP_REGISTER)
+                .writeString(username).writeString(password)
+                .writeString(nickname).writeString(email).toByteArray());
+    }
+
+    public void sendText(String content) throws IOException {
+        send(BinaryCodec.encodeOutbound(new ChatMessage(ChatMessage.MessageType.TEXT, null, content)));
+    }
+
+    public void sendPrivate(String toUser, String content) throws IOException {
+        ChatMessage message = new ChatMessage(ChatMessage.MessageType.PRIVATE, null, content);
+        message.setToUser(toUser);
+        send(BinaryCodec.encodeOutbound(message));
+    }
+
+    public void sendGroup(long groupId, String content) throws IOException {
+        ChatMessage message = new ChatMessage(ChatMessage.MessageType.GROUP, null, content);
+        message.setGroupId(groupId);
+        send(BinaryCodec.encodeOutbound(message));
+    }
+
+    public void sendCommand(String command) throws IOException {
+        send(BinaryCodec.encodeOutbound(new ChatMessage(ChatMessage.MessageType.COMMAND, null, command)));
+    }
+
+    public void bye() throws IOException {
+        send(new BinaryFrameWriter(BinaryProtocol.OP_BYE).toByteArray());
+    }
+
+    private synchronized void send(byte[] frame) throws IOException {
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * 阻塞读取下一条消息，连接关闭返回 null
+     */
+    public ChatMessage receive() throws IOException {
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length < 1 || length > MAX_FRAME_LENGTH) {
+                throw new IOException("非法的帧长度: " + length);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            ChatMessage message = BinaryCodec.decode(BinaryFrame.wrap(data, 0, length));
+            if (message != null) {
+                return message;
+            }
+            // 未知操作码，跳过
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static String format(ChatMessage message) {
+        switch (message.getType()) {
+            case TEXT:
+                return "[" + message.getFromUser() + "]: " + message.getContent();
+            case PRIVATE:
+                return "[私聊][" + message.getFromUser() + "->" + message.getToUser() + "]: " + message.getContent();
+            case GROUP:
+                return "[群聊" + message.getGroupId() + "][" + message.getFromUser() + "]: " + message.getContent();
+            default:
+                return message.getContent();
+        }
+    }
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8888;
+        Scanner scanner = new Scanner(System.in, StandardCharsets.UTF_8.name());
+        try (BinaryChatClient client = new BinaryChatClient(host, port)) {
+            System.out.println("连接到聊天服务器成功! 协议版本: " + client.getVersion());
+            System.out.print("用户名: ");
+            String username = scanner.nextLine();
+            System.out.print("密码: ");
+            client.login(username, scanner.nextLine());
+
+            Thread readThread = new Thread(() -> {
+                try {
+                    ChatMessage message;
+                    while ((message = client.receive()) != null) {
+                        System.out.println(format(message));
+                    }
+                } catch (IOException e) {
+                    // 连接关闭
+                }
+                System.out.println("与服务器断开连接");
+            });
+            readThread.setDaemon(true);
+            readThread.start();
+
+            // 以 / 开头的输入作为命令发送，bye 退出，其余为群发消息
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if ("bye".equalsIgnoreCase(line)) {
+                    client.bye();
+                    break;
+                } else if (line.startsWith("/")) {
+                    client.sendCommand(line);
+                } else {
+                    client.sendText(line);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("连接服务器失败: " + e.getMessage());
+        }
+    }
+}
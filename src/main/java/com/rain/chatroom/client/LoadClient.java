@@ -0,0 +1,156 @@
+package com.rain.chatroom.client;
+
+import com.rain.chatroom.common.model.ChatMessage;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 压测中的一个模拟客户端 - 一条二进制协议连接 + 一个接收线程
+ *
+ * 接收线程把系统通知放入有界队列(满时丢弃，供登录/建群等脚本步骤等待应答)，
+ * 带压测标记的聊天消息交给 LoadGenerator 统计端到端延迟
+ */
+class LoadClient {
+    // 接收线程只做解码和统计，不需要默认大小的栈
+    private static final long READER_STACK_SIZE = 256 * 1024;
+
+    private final LoadGenerator generator;
+    private final int index;
+    private final String username;
+    private final BlockingQueue<String> notices = new ArrayBlockingQueue<>(256);
+
+    private volatile BinaryChatClient client;
+    private volatile boolean connected;
+    private volatile long groupId;
+
+    LoadClient(LoadGenerator generator, int index, String username) {
+        this.generator = generator;
+        this.index = index;
+        this.username = username;
+    }
+
+    /**
+     * 登录；用户不存在时重新连接并注册后登录(服务端在登录或注册失败后会关闭连接)
+     */
+    void connect(String host, int port, String password, long timeoutMillis) throws IOException {
+        open(host, port);
+        client.login(username, password);
+        String reply = awaitNotice(s -> s.startsWith("登录成功") || s.startsWith("登录失败"), timeoutMillis);
+        if (reply != null && reply.startsWith("登录成功")) {
+            connected = true;
+            return;
+        }
+
+        close();
+        open(host, port);
+        client.register(username, password, username, "");
+        reply = awaitNotice(s -> s.startsWith("注册") || s.startsWith("用户名"), timeoutMillis);
+        if (reply == null || !reply.startsWith("注册成功")) {
+            throw new IOException("注册失败: " + reply);
+        }
+        client.login(username, password);
+        reply = awaitNotice(s -> s.startsWith("登录"), timeoutMillis);
+        if (reply == null || !reply.startsWith("登录成功")) {
+            throw new IOException("登录失败: " + reply);
+        }
+        connected = true;
+    }
+
+    private void open(String host, int port) throws IOException {
+        notices.clear();
+        BinaryChatClient opened = new BinaryChatClient(host, port);
+        client = opened;
+        Thread reader = new Thread(null, () -> readLoop(opened), "lg-read-" + index, READER_STACK_SIZE);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readLoop(BinaryChatClient source) {
+        try {
+            ChatMessage message;
+            while ((message = source.receive()) != null) {
+                if (message.getType() == ChatMessage.MessageType.SYSTEM) {
+                    notices.offer(message.getContent());
+                } else if (!username.equals(message.getFromUser())) {
+                    // 自己发出的群消息和私聊回执不计入
+                    generator.onReceived(message.getType(), message.getContent());
+                }
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        }
+        if (source == client) {
+            connected = false;
+        }
+    }
+
+    /**
+     * 等待满足条件的系统通知，跳过其他通知(上下线广播等)，超时返回 null
+     */
+    String awaitNotice(Predicate<String> condition, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                String notice = notices.poll(remaining, TimeUnit.NANOSECONDS);
+                if (notice != null && condition.test(notice)) {
+                    return notice;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    void sendText(String content) throws IOException {
+        client.sendText(content);
+    }
+
+    void sendPrivate(String toUser, String content) throws IOException {
+        client.sendPrivate(toUser, content);
+    }
+
+    void sendGroup(String content) throws IOException {
+        client.sendGroup(groupId, content);
+    }
+
+    void sendCommand(String command) throws IOException {
+        client.sendCommand(command);
+    }
+
+    void close() {
+        BinaryChatClient current = client;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // 连接已断开
+            }
+        }
+        connected = false;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    long getGroupId() {
+        return groupId;
+    }
+
+    void setGroupId(long groupId) {
+        this.groupId = groupId;
+    }
+}
@@ -0,0 +1,384 @@
+package com.rain.chatroom.client;
+
+import com.rain.chatroom.common.metrics.Histogram;
+import com.rain.chatroom.common.metrics.HistogramSnapshot;
+import com.rain.chatroom.common.model.ChatMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无界面压测客户端 - 模拟大量用户登录后按比例发送广播、私聊、群聊，统计端到端送达延迟和吞吐
+ *
+ * 用法：java -cp ... com.rain.chatroom.client.LoadGenerator [key=value ...]
+ *   host=localhost port=8888     服务器地址；port 可以是逗号分隔的多个端口(集群的多个节点)，用户轮流连接
+ *   clients=1000                 模拟用户数，用户名为 {prefix}-0 ~ {prefix}-(clients-1)，不存在时自动注册
+ *   prefix=lg password=loadtest  用户名前缀和密码
+ *   rate=1000                    每秒发送的消息总数(所有用户合计)
+ *   mix=10:60:30                 广播:私聊:群聊 的比例
+ *   groups=10                    群数量，用户按序号轮流加入，每次运行新建
+ *   size=64                      消息内容字节数
+ *   warmup=5 duration=30         预热和统计时长(秒)
+ *   senders=4                    发送线程数
+ *   connectConcurrency=50        同时进行登录的连接数
+ *
+ * 延迟测量：
+ * 1. 发送线程按固定节奏(开环)发送，消息内容里嵌入计划发送时刻(System.nanoTime)，
+ *    发送线程落后时延迟照常从计划时刻算起，不会因为服务端变慢而少算(避免协同遗漏)
+ * 2. 接收方收到消息即用同一个时钟计算延迟，所有模拟用户在同一个进程内，无需校时
+ * 3. 只统计计划时刻落在统计窗口内的消息，窗口结束后再等待 drain 秒收齐在途消息，未收到的计为丢失
+ *
+ * 广播的每个接收者各记一次延迟，反映的是扇出完成的时间分布
+ */
+public class LoadGenerator {
+    private static final String MARKER = "LG ";
+    private static final String[] TYPE_NAMES = {"广播", "私聊", "群聊"};
+    private static final int BROADCAST = 0;
+    private static final int PRIVATE = 1;
+    private static final int GROUP = 2;
+    private static final long SETUP_TIMEOUT_MILLIS = 10_000;
+
+    private final Properties options;
+    private final String host;
+    private final int[] ports;
+    private final int clientCount;
+    private final int groupCount;
+    private final int[] mix;
+    private final String padding;
+
+    private final List<LoadClient> clients = new ArrayList<>();
+    private final List<LoadClient> online = new ArrayList<>();
+    private int[] groupSizes;
+
+    // 统计窗口(计划发送时刻)
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    private final Histogram[] latency = {new Histogram(), new Histogram(), new Histogram()};
+    private final LongAdder[] sent = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder[] expected = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder sendErrors = new LongAdder();
+
+    private LoadGenerator(Properties options) {
+        this.options = options;
+        this.host = options.getProperty("host", "localhost");
+        this.ports = parsePorts(options.getProperty("port", "8888"));
+        this.clientCount = intOption("clients", 1000);
+        this.groupCount = Math.max(0, intOption("groups", 10));
+        this.mix = parseMix(options.getProperty("mix", "10:60:30"));
+        if (groupCount == 0) {
+            mix[GROUP] = 0;
+        }
+        char[] fill = new char[Math.max(0, intOption("size", 64) - 24)];
+        Arrays.fill(fill, 'x');
+        this.padding = new String(fill);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties options = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.out.println("参数格式为 key=value: " + arg);
+                return;
+            }
+            options.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        System.out.printf("连接 %s:%s, 用户数: %d, 速率: %d 条/秒, 比例(广播:私聊:群聊): %d:%d:%d, 群数量: %d%n",
+                host, options.getProperty("port", "8888"), clientCount, intOption("rate", 1000), mix[BROADCAST], mix[PRIVATE], mix[GROUP], groupCount);
+
+        long start = System.nanoTime();
+        connectAll();
+        System.out.printf("登录完成: %d/%d, 耗时 %d ms%n", online.size(), clientCount,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (online.size() < 2) {
+            System.out.println("在线用户不足，结束压测");
+            return;
+        }
+        if (mix[GROUP] > 0) {
+            setUpGroups();
+        }
+        // 等待登录产生的上下线广播送达，避免计入统计窗口的排队
+        Thread.sleep(1000);
+
+        drive();
+        report();
+        for (LoadClient client : clients) {
+            client.close();
+        }
+    }
+
+    // ========== 准备 ==========
+
+    private void connectAll() throws InterruptedException {
+        String prefix = options.getProperty("prefix", "lg");
+        String password = options.getProperty("password", "loadtest");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, intOption("connectConcurrency", 50)));
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            LoadClient client = new LoadClient(this, i, prefix + "-" + i);
+            int port = ports[i % ports.length];
+            clients.add(client);
+            futures.add(pool.submit(() -> {
+                try {
+                    client.connect(host, port, password, SETUP_TIMEOUT_MILLIS);
+                } catch (IOException e) {
+                    if (failures.incrementAndGet() <= 5) {
+                        System.out.println(client.getUsername() + " 登录失败: " + e.getMessage());
+                    }
+                    client.close();
+                }
+            }));
+        }
+        awaitAll(futures);
+        pool.shutdown();
+        for (LoadClient client : clients) {
+            if (client.isConnected()) {
+                online.add(client);
+            }
+        }
+    }
+
+    /**
+     * 第 k 个在线用户创建第 k 个群，其余用户按序号对群数量取模加入
+     */
+    private void setUpGroups() throws InterruptedException {
+        int groups = Math.min(groupCount, online.size());
+        long[] groupIds = new long[groups];
+        groupSizes = new int[groups];
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        for (int k = 0; k < groups; k++) {
+            LoadClient owner = online.get(k);
+            try {
+                owner.sendCommand("/creategroup lg-" + runId + "-" + k);
+                String reply = owner.awaitNotice(s -> s.contains("创建成功") || s.contains("创建群组失败"),
+                        SETUP_TIMEOUT_MILLIS);
+                if (reply != null && reply.contains("ID: ")) {
+                    groupIds[k] = Long.parseLong(reply.substring(reply.indexOf("ID: ") + 4).trim());
+                }
+            } catch (IOException | NumberFormatException e) {
+                // 按建群失败处理
+            }
+            if (groupIds[k] != 0) {
+                owner.setGroupId(groupIds[k]);
+                groupSizes[k] = 1;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, intOption("connectConcurrency", 50)));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = groups; i < online.size(); i++) {
+            LoadClient member = online.get(i);
+            int k = i % groups;
+            long groupId = groupIds[k];
+            if (groupId == 0) {
+                continue;
+            }
+            futures.add(pool.submit(() -> {
+                try {
+                    member.sendCommand("/joingroup " + groupId);
+                    String reply = member.awaitNotice(s -> s.contains("加入群组"), SETUP_TIMEOUT_MILLIS);
+                    if (reply != null && reply.contains("成功加入群组")) {
+                        member.setGroupId(groupId);
+                        synchronized (groupSizes) {
+                            groupSizes[k]++;
+                        }
+                    }
+                } catch (IOException e) {
+                    // 不加入群，只发广播和私聊
+                }
+            }));
+        }
+        awaitAll(futures);
+        pool.shutdown();
+        int created = 0;
+        for (long id : groupIds) {
+            if (id != 0) {
+                created++;
+            }
+        }
+        System.out.printf("建群完成: %d/%d 个群%n", created, groups);
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                // 任务内部已处理
+            }
+        }
+    }
+
+    // ========== 发送 ==========
+
+    private void drive() throws InterruptedException {
+        int senders = Math.max(1, intOption("senders", 4));
+        long intervalNanos = (long) (1e9 * senders / Math.max(1, intOption("rate", 1000)));
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        windowStart = start + TimeUnit.SECONDS.toNanos(intOption("warmup", 5));
+        windowEnd = windowStart + TimeUnit.SECONDS.toNanos(intOption("duration", 30));
+
+        Thread[] threads = new Thread[senders];
+        for (int t = 0; t < senders; t++) {
+            // 各发送线程错开半个周期以内的相位，合并后的发送更均匀
+            long phase = intervalNanos * t / senders;
+            threads[t] = new Thread(() -> sendLoop(start + phase, intervalNanos), "lg-send-" + t);
+            threads[t].start();
+        }
+        System.out.printf("开始发送, 预热 %d 秒, 统计 %d 秒%n", intOption("warmup", 5), intOption("duration", 30));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 收齐在途消息
+        Thread.sleep(TimeUnit.SECONDS.toMillis(intOption("drain", 2)));
+    }
+
+    private void sendLoop(long start, long intervalNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int total = mix[BROADCAST] + mix[PRIVATE] + mix[GROUP];
+        for (long n = 0; ; n++) {
+            long intended = start + n * intervalNanos;
+            if (intended >= windowEnd) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            int senderIndex = random.nextInt(online.size());
+            LoadClient sender = online.get(senderIndex);
+            int pick = random.nextInt(total);
+            int type = pick < mix[BROADCAST] ? BROADCAST : pick < mix[BROADCAST] + mix[PRIVATE] ? PRIVATE : GROUP;
+            if (type == GROUP && sender.getGroupId() == 0) {
+                type = PRIVATE;
+            }
+            String content = MARKER + intended + " " + padding;
+            try {
+                int receivers;
+                if (type == BROADCAST) {
+                    sender.sendText(content);
+                    receivers = online.size() - 1;
+                } else if (type == PRIVATE) {
+                    int targetIndex = random.nextInt(online.size() - 1);
+                    if (targetIndex >= senderIndex) {
+                        targetIndex++;
+                    }
+                    sender.sendPrivate(online.get(targetIndex).getUsername(), content);
+                    receivers = 1;
+                } else {
+                    sender.sendGroup(content);
+                    receivers = groupSizeOf(senderIndex) - 1;
+                }
+                if (intended >= windowStart) {
+                    sent[type].increment();
+                    expected[type].add(receivers);
+                }
+            } catch (IOException e) {
+                sendErrors.increment();
+            }
+        }
+    }
+
+    // 与 setUpGroups 的分配规则一致：第 i 个在线用户在第 i % 群数量 个群
+    private int groupSizeOf(int senderIndex) {
+        int k = senderIndex % groupSizes.length;
+        synchronized (groupSizes) {
+            return groupSizes[k];
+        }
+    }
+
+    /**
+     * 接收线程回调：解析内容中的计划发送时刻并记录延迟
+     */
+    void onReceived(ChatMessage.MessageType messageType, String content) {
+        if (content == null || !content.startsWith(MARKER)) {
+            return;
+        }
+        long now = System.nanoTime();
+        int end = content.indexOf(' ', MARKER.length());
+        long intended;
+        try {
+            intended = Long.parseLong(content.substring(MARKER.length(), end < 0 ? content.length() : end));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (intended < windowStart || intended >= windowEnd) {
+            return;
+        }
+        int type = messageType == ChatMessage.MessageType.PRIVATE ? PRIVATE
+                : messageType == ChatMessage.MessageType.GROUP ? GROUP : BROADCAST;
+        latency[type].record(now - intended);
+    }
+
+    // ========== 报告 ==========
+
+    private void report() {
+        double seconds = (windowEnd - windowStart) / 1e9;
+        long totalSent = 0;
+        long totalDelivered = 0;
+        System.out.printf("统计窗口 %.0f 秒, 在线用户 %d, 发送失败 %d%n", seconds, online.size(), sendErrors.sum());
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            HistogramSnapshot snapshot = latency[type].snapshot();
+            long sentCount = sent[type].sum();
+            long expectedCount = expected[type].sum();
+            if (sentCount == 0) {
+                continue;
+            }
+            totalSent += sentCount;
+            totalDelivered += snapshot.getCount();
+            System.out.printf("[%s] 发送 %d (%.1f/s), 送达 %d/%d (%.1f/s, 丢失 %.2f%%), 延迟 %s%n",
+                    TYPE_NAMES[type], sentCount, sentCount / seconds, snapshot.getCount(), expectedCount,
+                    snapshot.getCount() / seconds,
+                    expectedCount == 0 ? 0.0 : 100.0 * Math.max(0, expectedCount - snapshot.getCount()) / expectedCount,
+                    snapshot);
+        }
+        System.out.printf("[合计] 发送 %.1f 条/秒, 送达 %.1f 条/秒%n", totalSent / seconds, totalDelivered / seconds);
+    }
+
+    // ========== 参数 ==========
+
+    private int intOption(String key, int defaultValue) {
+        String value = options.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static int[] parsePorts(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    private static int[] parseMix(String value) {
+        String[] parts = value.split(":");
+        int[] weights = new int[3];
+        for (int i = 0; i < weights.length && i < parts.length; i++) {
+            weights[i] = Math.max(0, Integer.parseInt(parts[i].trim()));
+        }
+        if (weights[BROADCAST] + weights[PRIVATE] + weights[GROUP] == 0) {
+            weights[PRIVATE] = 1;
+        }
+        return weights;
+    }
+}
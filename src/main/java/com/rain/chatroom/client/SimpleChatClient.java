@@ -2,6 +2,7 @@ package com.rain.chatroom.client;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 /**
@@ -23,8 +24,9 @@ public class SimpleChatClient {
         //不需要手动编写finally块来关闭资源
         try (
                 Socket socket = new Socket(host, port);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                // 与服务端统一使用UTF-8，避免平台默认编码不一致导致中文乱码
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
                 Scanner scanner = new Scanner(System.in)
         ) {
             System.out.println("连接到聊天服务器成功!");
@@ -1,5 +1,6 @@
 package com.rain.chatroom.common.db;
 
+import com.rain.chatroom.common.metrics.MetricsRegistry;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import java.util.Properties;
 
 @Slf4j
 public class DatabaseConnection {
+    private static final String POOL_NAME = "chatroom-db";
     private static HikariDataSource dataSource;
 
     static {
@@ -36,6 +38,7 @@ public class DatabaseConnection {
                 config.setUsername("root");
                 config.setPassword("password");
                 config.setMaximumPoolSize(20);
+                configureMonitoring(config);
                 dataSource = new HikariDataSource(config);
                 return;
             }
@@ -53,6 +56,7 @@ public class DatabaseConnection {
             config.setConnectionTimeout(Long.parseLong(props.getProperty("db.pool.connectionTimeout", "30000")));
             config.setIdleTimeout(Long.parseLong(props.getProperty("db.pool.idleTimeout", "600000")));
             config.setMaxLifetime(Long.parseLong(props.getProperty("db.pool.maxLifetime", "1800000")));
+            configureMonitoring(config);
 
             dataSource = new HikariDataSource(config);
             log.info("数据库连接池初始化成功");
@@ -63,6 +67,14 @@ public class DatabaseConnection {
         }
     }
 
+    // 连接池统计接入指标注册表；同时注册 HikariCP 自带的 MBean(com.zaxxer.hikari:type=Pool (chatroom-db))，
+    // 可查看活跃/空闲连接数并在运行时调整 maximumPoolSize
+    private static void configureMonitoring(HikariConfig config) {
+        config.setPoolName(POOL_NAME);
+        config.setRegisterMbeans(true);
+        config.setMetricsTrackerFactory(new PoolMetricsTracker(MetricsRegistry.getDefault()));
+    }
+
     public static Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
@@ -0,0 +1,55 @@
+package com.rain.chatroom.common.db;
+
+import com.rain.chatroom.common.metrics.Counter;
+import com.rain.chatroom.common.metrics.Histogram;
+import com.rain.chatroom.common.metrics.MetricsRegistry;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 HikariCP 连接池的统计接入指标注册表
+ *
+ * - db.acquire：从连接池借出连接的等待时间
+ * - db.call：连接从借出到归还的时间，即一次 DAO 调用的耗时(连接池只精确到毫秒)
+ * - db.timeouts：等待连接超时的次数
+ * - db.pool.*：活跃/空闲/等待线程数
+ */
+class PoolMetricsTracker implements MetricsTrackerFactory, IMetricsTracker {
+    private final MetricsRegistry registry;
+    private final Histogram acquire;
+    private final Histogram call;
+    private final Counter timeouts;
+
+    PoolMetricsTracker(MetricsRegistry registry) {
+        this.registry = registry;
+        this.acquire = registry.histogram("db.acquire");
+        this.call = registry.histogram("db.call");
+        this.timeouts = registry.counter("db.timeouts");
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        registry.gauge("db.pool.active", poolStats::getActiveConnections);
+        registry.gauge("db.pool.idle", poolStats::getIdleConnections);
+        registry.gauge("db.pool.pending", poolStats::getPendingThreads);
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquire.record(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        call.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+}
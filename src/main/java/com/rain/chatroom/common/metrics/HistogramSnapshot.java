@@ -0,0 +1,89 @@
+package com.rain.chatroom.common.metrics;
+
+/**
+ * 直方图在某一时刻的只读副本，单位为纳秒
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        this.sum = sum;
+        this.max = max;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        this.count = total;
+    }
+
+    /**
+     * 本快照减去更早的快照，得到两次快照之间的分布；previous 为 null 时返回自身
+     *
+     * 区间内的最大值取最高非空桶的上界，不超过累计最大值
+     */
+    public HistogramSnapshot minus(HistogramSnapshot previous) {
+        if (previous == null) {
+            return this;
+        }
+        long[] delta = new long[counts.length];
+        int highest = -1;
+        for (int i = 0; i < counts.length; i++) {
+            delta[i] = counts[i] - previous.counts[i];
+            if (delta[i] > 0) {
+                highest = i;
+            }
+        }
+        long intervalMax = highest < 0 ? 0 : Math.min(max, Histogram.bucketUpperBound(highest));
+        return new HistogramSnapshot(delta, sum - previous.sum, intervalMax);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 分位数(0~100)对应的值，误差不超过分桶精度；没有数据时返回 0
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, Histogram.bucketUpperBound(i));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, 平均=%s, p50=%s, p99=%s, p99.9=%s, 最大=%s", count,
+                millis((long) getMean()), millis(getPercentile(50)), millis(getPercentile(99)),
+                millis(getPercentile(99.9)), millis(max));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.rain.chatroom.common.metrics;
+
+/**
+ * 延迟直方图的摘要，单位为毫秒，用于 JMX 展示
+ */
+public final class LatencySummary {
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+
+    public LatencySummary(HistogramSnapshot snapshot) {
+        this.count = snapshot.getCount();
+        this.meanMillis = millis(snapshot.getMean());
+        this.p50Millis = millis(snapshot.getPercentile(50));
+        this.p99Millis = millis(snapshot.getPercentile(99));
+        this.p999Millis = millis(snapshot.getPercentile(99.9));
+        this.maxMillis = millis(snapshot.getMax());
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+}
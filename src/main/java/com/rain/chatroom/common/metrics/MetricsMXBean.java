@@ -0,0 +1,14 @@
+package com.rain.chatroom.common.metrics;
+
+import java.util.Map;
+
+/**
+ * 指标注册表的 JMX 接口，每次读取属性都取一次新快照；延迟分布为启动以来的累计值
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    Map<String, LatencySummary> getLatencies();
+}
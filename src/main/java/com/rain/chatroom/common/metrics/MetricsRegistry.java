@@ -0,0 +1,92 @@
+package com.rain.chatroom.common.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内指标注册表 - 按名称管理计数器、仪表(gauge)和延迟直方图
+ *
+ * 设计思路：
+ * 1. 指标在启动时按名称注册一次，热路径上直接持有 Counter/Histogram 引用，不再查表
+ * 2. 仪表不保存数值，快照时才调用取值函数，平时没有任何开销
+ * 3. 快照只读取计数，不重置；两次快照相减得到区间速率和区间延迟分布，
+ *    多个观察方(日志、JMX等)各自保留上一次快照，互不干扰
+ */
+@Slf4j
+public final class MetricsRegistry implements MetricsMXBean {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * 进程共享的注册表，供数据库连接池等静态组件上报
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * 注册仪表，同名的旧仪表被替换
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            histogramValues.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(System.nanoTime(), getCounters(), getGauges(), histogramValues);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            try {
+                values.put(entry.getKey(), entry.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                log.debug("读取指标 {} 失败: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, LatencySummary> getLatencies() {
+        Map<String, LatencySummary> latencies = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            latencies.put(entry.getKey(), new LatencySummary(entry.getValue().snapshot()));
+        }
+        return latencies;
+    }
+}
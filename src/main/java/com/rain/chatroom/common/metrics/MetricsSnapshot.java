@@ -0,0 +1,82 @@
+package com.rain.chatroom.common.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 注册表在某一时刻的只读快照，各类指标按名称排序
+ */
+public final class MetricsSnapshot {
+    private final long timestampNanos;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    MetricsSnapshot(long timestampNanos, Map<String, Long> counters, Map<String, Long> gauges,
+                    Map<String, HistogramSnapshot> histograms) {
+        this.timestampNanos = timestampNanos;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 计数器从 previous 到本快照之间的每秒速率；previous 为 null 时返回 0
+     */
+    public double getRate(MetricsSnapshot previous, String name) {
+        if (previous == null || timestampNanos <= previous.timestampNanos) {
+            return 0;
+        }
+        return (getCounter(name) - previous.getCounter(name)) * 1_000_000_000.0
+                / (timestampNanos - previous.timestampNanos);
+    }
+
+    /**
+     * 格式化为一行日志：计数器带区间速率，直方图只统计 previous 之后的记录
+     */
+    public String format(MetricsSnapshot previous) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            text.append(entry.getKey()).append('=').append(entry.getValue());
+            if (previous != null) {
+                text.append(String.format("(%.1f/s)", getRate(previous, entry.getKey())));
+            }
+            text.append(", ");
+        }
+        for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+            text.append(entry.getKey()).append('=').append(entry.getValue()).append(", ");
+        }
+        for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+            HistogramSnapshot interval = entry.getValue()
+                    .minus(previous != null ? previous.histograms.get(entry.getKey()) : null);
+            if (interval.getCount() > 0) {
+                text.append(entry.getKey()).append('[').append(interval).append("], ");
+            }
+        }
+        if (text.length() > 0) {
+            text.setLength(text.length() - 2);
+        }
+        return text.toString();
+    }
+}
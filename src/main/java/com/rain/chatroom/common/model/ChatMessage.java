@@ -10,12 +10,13 @@ import lombok.NoArgsConstructor;
 // 消息模型，定义消息类型和内容
 public class ChatMessage {
     public enum MessageType {
-        TEXT, SYSTEM, COMMAND, PRIVATE
+        TEXT, SYSTEM, COMMAND, PRIVATE, GROUP
     }
 
     private MessageType type;
     private String fromUser;
     private String toUser;
+    private Long groupId;
     private String content;
     private long timestamp = System.currentTimeMillis();
 
@@ -0,0 +1,93 @@
+package com.rain.chatroom.common.protocol;
+
+import com.rain.chatroom.common.model.ChatMessage;
+
+/**
+ * ChatMessage 与二进制帧之间的转换
+ *
+ * 服务端下发的帧带发送者和时间戳；客户端上行的帧只带目标和内容，发送者由服务端根据会话确定
+ */
+public final class BinaryCodec {
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * 服务端 -> 客户端
+     */
+    public static byte[] encode(ChatMessage message) {
+        String content = message.getContent();
+        BinaryFrameWriter writer = new BinaryFrameWriter(BinaryProtocol.opcodeOf(message.getType()),
+                content != null ? content.length() * 3 + 32 : 32);
+        switch (message.getType()) {
+            case TEXT:
+                writer.writeString(message.getFromUser());
+                break;
+            case PRIVATE:
+                writer.writeString(message.getFromUser()).writeString(message.getToUser());
+                break;
+            case GROUP:
+                writer.writeString(message.getFromUser()).writeLong(message.getGroupId());
+                break;
+            default:
+                break;
+        }
+        return writer.writeString(content).writeLong(message.getTimestamp()).toByteArray();
+    }
+
+    /**
+     * 服务端解析客户端上行的聊天帧，非聊天操作码返回 null
+     */
+    public static ChatMessage decodeInbound(BinaryFrame frame) {
+        ChatMessage.MessageType type = BinaryProtocol.typeOf(frame.getOpcode());
+        if (type == null || type == ChatMessage.MessageType.SYSTEM) {
+            return null;
+        }
+        ChatMessage message = new ChatMessage();
+        message.setType(type);
+        if (type == ChatMessage.MessageType.PRIVATE) {
+            message.setToUser(frame.readString());
+        } else if (type == ChatMessage.MessageType.GROUP) {
+            message.setGroupId(frame.readLong());
+        }
+        message.setContent(frame.readString());
+        return message;
+    }
+
+    /**
+     * 客户端 -> 服务端
+     */
+    public static byte[] encodeOutbound(ChatMessage message) {
+        BinaryFrameWriter writer = new BinaryFrameWriter(BinaryProtocol.opcodeOf(message.getType()));
+        if (message.getType() == ChatMessage.MessageType.PRIVATE) {
+            writer.writeString(message.getToUser());
+        } else if (message.getType() == ChatMessage.MessageType.GROUP) {
+            writer.writeLong(message.getGroupId());
+        }
+        return writer.writeString(message.getContent()).toByteArray();
+    }
+
+    /**
+     * 客户端解析服务端下发的帧，非聊天操作码返回 null
+     */
+    public static ChatMessage decode(BinaryFrame frame) {
+        ChatMessage.MessageType type = BinaryProtocol.typeOf(frame.getOpcode());
+        if (type == null) {
+            return null;
+        }
+        ChatMessage message = new ChatMessage();
+        message.setType(type);
+        if (type == ChatMessage.MessageType.TEXT) {
+            message.setFromUser(frame.readString());
+        } else if (type == ChatMessage.MessageType.PRIVATE) {
+            message.setFromUser(frame.readString());
+            message.setToUser(frame.readString());
+        } else if (type == ChatMessage.MessageType.GROUP) {
+            message.setFromUser(frame.readString());
+            message.setGroupId(frame.readLong());
+        }
+        message.setContent(frame.readString());
+        message.setTimestamp(frame.readLong());
+        return message;
+    }
+}
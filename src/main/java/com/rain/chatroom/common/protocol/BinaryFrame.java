@@ -0,0 +1,76 @@
+package com.rain.chatroom.common.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 已接收的二进制帧 - 字节数组上的只读游标
+ *
+ * 字段按协议顺序依次读取，直接从字节数组解析，不做整行扫描或字符串切分；
+ * 帧数据不完整时抛出 IllegalArgumentException
+ */
+public final class BinaryFrame {
+    private final byte opcode;
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    private BinaryFrame(byte[] data, int offset, int length) {
+        this.opcode = data[offset];
+        this.data = data;
+        this.position = offset + 1;
+        this.limit = offset + length;
+    }
+
+    /**
+     * 包装 data[offset, offset+length)，首字节为操作码；调用方需保证读取期间数组内容不变
+     */
+    public static BinaryFrame wrap(byte[] data, int offset, int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("空帧");
+        }
+        return new BinaryFrame(data, offset, length);
+    }
+
+    /**
+     * 复制一份帧数据，用于底层缓冲区会被复用的场景(如NIO共享读缓冲区)
+     */
+    public static BinaryFrame copyOf(byte[] data, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        return wrap(copy, 0, length);
+    }
+
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public long readLong() {
+        require(8);
+        long value = BinaryProtocol.readLong(data, position);
+        position += 8;
+        return value;
+    }
+
+    public String readString() {
+        require(4);
+        int length = BinaryProtocol.readInt(data, position);
+        position += 4;
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private void require(int bytes) {
+        if (bytes > limit - position) {
+            throw new IllegalArgumentException("帧数据不完整, 操作码: " + opcode);
+        }
+    }
+}
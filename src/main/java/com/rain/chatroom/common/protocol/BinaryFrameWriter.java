@@ -0,0 +1,68 @@
+package com.rain.chatroom.common.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 二进制帧编码器 - 按字段顺序写入，最后回填长度前缀
+ *
+ * 用法：new BinaryFrameWriter(OP_TEXT).writeString(content).toByteArray()
+ */
+public final class BinaryFrameWriter {
+    private byte[] buffer;
+    private int position;
+
+    public BinaryFrameWriter(byte opcode) {
+        this(opcode, 64);
+    }
+
+    public BinaryFrameWriter(byte opcode, int expectedPayload) {
+        this.buffer = new byte[BinaryProtocol.LENGTH_FIELD_SIZE + 1 + expectedPayload];
+        this.position = BinaryProtocol.LENGTH_FIELD_SIZE;
+        buffer[position++] = opcode;
+    }
+
+    public BinaryFrameWriter writeLong(long value) {
+        ensure(8);
+        writeIntAt(position, (int) (value >>> 32));
+        writeIntAt(position + 4, (int) value);
+        position += 8;
+        return this;
+    }
+
+    public BinaryFrameWriter writeString(String value) {
+        if (value == null) {
+            ensure(4);
+            writeIntAt(position, -1);
+            position += 4;
+            return this;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        writeIntAt(position, bytes.length);
+        System.arraycopy(bytes, 0, buffer, position + 4, bytes.length);
+        position += 4 + bytes.length;
+        return this;
+    }
+
+    /**
+     * 返回完整的帧(含长度前缀)
+     */
+    public byte[] toByteArray() {
+        writeIntAt(0, position - BinaryProtocol.LENGTH_FIELD_SIZE);
+        return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    private void writeIntAt(int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,109 @@
+package com.rain.chatroom.common.protocol;
+
+import com.rain.chatroom.common.model.ChatMessage;
+
+/**
+ * 二进制线路协议定义
+ *
+ * 握手：客户端连接后先发送 5 字节 [0x00 'R' 'C' 'B' 版本号]，服务端回复相同格式的应答，
+ * 应答中的版本号为协商结果，0 表示不支持。文本协议的内容不会出现 0x00，
+ * 因此服务端根据首字节即可区分两种协议；客户端在收到应答前会先收到文本欢迎语，直接跳过即可
+ *
+ * 帧格式(大端)：[int32 长度][uint8 操作码][负载]，长度包含操作码和负载
+ * 负载字段：字符串为 [int32 字节数][UTF-8]，字节数为 -1 表示 null；整数为 int64
+ */
+public final class BinaryProtocol {
+    public static final byte[] MAGIC = {0x00, 'R', 'C', 'B'};
+    public static final int VERSION = 1;
+    public static final int HANDSHAKE_LENGTH = MAGIC.length + 1;
+    // 长度字段本身占用的字节数
+    public static final int LENGTH_FIELD_SIZE = 4;
+
+    // ========== 客户端 -> 服务端 ==========
+    public static final byte OP_LOGIN = 0x01;       // username, password
+    public static final byte OP_REGISTER = 0x02;    // username, password, nickname, email
+    public static final byte OP_BYE = 0x03;         // 无负载
+
+    // ========== 双向，与 ChatMessage.MessageType 对应 ==========
+    public static final byte OP_TEXT = 0x10;        // 上行: content；下行: fromUser, content, timestamp
+    public static final byte OP_PRIVATE = 0x11;     // 上行: toUser, content；下行: fromUser, toUser, content, timestamp
+    public static final byte OP_GROUP = 0x12;       // 上行: groupId, content；下行: fromUser, groupId, content, timestamp
+    public static final byte OP_COMMAND = 0x13;     // 上行: 命令行(如 "/users")
+    public static final byte OP_SYSTEM = 0x14;      // 下行: content, timestamp
+
+    private BinaryProtocol() {
+    }
+
+    public static byte opcodeOf(ChatMessage.MessageType type) {
+        switch (type) {
+            case TEXT:
+                return OP_TEXT;
+            case PRIVATE:
+                return OP_PRIVATE;
+            case GROUP:
+                return OP_GROUP;
+            case COMMAND:
+                return OP_COMMAND;
+            case SYSTEM:
+            default:
+                return OP_SYSTEM;
+        }
+    }
+
+    /**
+     * 操作码对应的消息类型，非聊天消息的操作码(登录、注册等)返回 null
+     */
+    public static ChatMessage.MessageType typeOf(byte opcode) {
+        switch (opcode) {
+            case OP_TEXT:
+                return ChatMessage.MessageType.TEXT;
+            case OP_PRIVATE:
+                return ChatMessage.MessageType.PRIVATE;
+            case OP_GROUP:
+                return ChatMessage.MessageType.GROUP;
+            case OP_COMMAND:
+                return ChatMessage.MessageType.COMMAND;
+            case OP_SYSTEM:
+                return ChatMessage.MessageType.SYSTEM;
+            default:
+                return null;
+        }
+    }
+
+    public static byte[] handshake(int version) {
+        byte[] bytes = new byte[HANDSHAKE_LENGTH];
+        System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+        bytes[MAGIC.length] = (byte) version;
+        return bytes;
+    }
+
+    /**
+     * 解析握手，返回对端声明的版本号；魔数不匹配返回 -1
+     */
+    public static int readHandshake(byte[] data, int offset) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[offset + i] != MAGIC[i]) {
+                return -1;
+            }
+        }
+        return data[offset + MAGIC.length] & 0xFF;
+    }
+
+    /**
+     * 服务端协商版本：取双方都支持的最高版本，无法兼容返回 0
+     */
+    public static int negotiateVersion(int clientVersion) {
+        return clientVersion < 1 ? 0 : Math.min(clientVersion, VERSION);
+    }
+
+    public static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24
+                | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8
+                | (data[offset + 3] & 0xFF);
+    }
+
+    public static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,9 @@
+package com.rain.chatroom.common.protocol;
+
+/**
+ * 连接使用的线路协议，连接建立时由客户端发送的首个字节决定
+ */
+public enum WireProtocol {
+    TEXT,   // 文本行协议：UTF-8，每条消息以 '\n' 结尾
+    BINARY  // 二进制协议：长度前缀 + 操作码，见 BinaryProtocol
+}
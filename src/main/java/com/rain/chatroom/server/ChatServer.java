@@ -1,17 +1,55 @@
 package com.rain.chatroom.server;
 
-import com.rain.chatroom.server.config.ThreadPoolConfig;
+import com.rain.chatroom.common.metrics.MetricsRegistry;
+import com.rain.chatroom.common.metrics.MetricsSnapshot;
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.server.buffer.BufferPool;
+import com.rain.chatroom.server.cache.HistoryCache;
+import com.rain.chatroom.server.cluster.ClusterMessage;
+import com.rain.chatroom.server.cluster.LoopbackMessageBus;
+import com.rain.chatroom.server.cluster.MessageBus;
+import com.rain.chatroom.server.cluster.PresenceDirectory;
+import com.rain.chatroom.server.cluster.TcpMessageBus;
+import com.rain.chatroom.server.command.CommandDispatcher;
+import com.rain.chatroom.server.command.CommandRegistry;
+import com.rain.chatroom.server.config.ServerConfig;
+import com.rain.chatroom.server.dao.AsyncMessageWriter;
+import com.rain.chatroom.server.dao.CachingUserDao;
+import com.rain.chatroom.server.dao.FriendDao;
+import com.rain.chatroom.server.dao.GroupDao;
 import com.rain.chatroom.server.dao.MessageDao;
-import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.dao.MessageJournal;
+import com.rain.chatroom.server.handler.BlockingClientSession;
+import com.rain.chatroom.server.handler.ChatSessionHandler;
 import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.FlushPolicy;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.SessionState;
+import com.rain.chatroom.server.handler.WriteContext;
+import com.rain.chatroom.server.handler.WriteStats;
+import com.rain.chatroom.server.jmx.JmxExporter;
+import com.rain.chatroom.server.jmx.ServerAdmin;
+import com.rain.chatroom.server.manager.FriendManager;
+import com.rain.chatroom.server.manager.GroupManager;
+import com.rain.chatroom.server.manager.PoolStats;
 import com.rain.chatroom.server.manager.SessionManager;
+import com.rain.chatroom.server.manager.ThreadPoolManager;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import com.rain.chatroom.server.nio.NioServer;
+import com.rain.chatroom.server.ratelimit.RateLimiter;
 import com.rain.chatroom.server.service.BroadcastService;
+import com.rain.chatroom.server.service.HistoryService;
+import com.rain.chatroom.server.service.OfflineMessageService;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * 处理客户端消息
@@ -20,6 +58,9 @@ import java.util.concurrent.ThreadPoolExecutor;
  * 1. 使用线程池处理并发连接
  * 2. 每个会话独立线程，避免阻塞
  * 3. 消息广播使用CopyOnWriteArraySet保证线程安全
+ * 4. 传输层可切换：server.transport=bio(阻塞) / nio(Selector事件循环)
+ * 5. 阻塞模式可使用虚拟线程(server.threadMode=virtual，需Java 21)，连接数只受内存限制
+ * 6. 集群模式(cluster.bus=loopback/tcp)下多个节点通过消息总线互相转发广播、私聊和群聊
  *
  * 性能考虑：
  * - 读多写少场景使用CopyOnWriteArraySet
@@ -28,60 +69,280 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 @Slf4j
 public class ChatServer {
+    private final ServerConfig config;
     private final int port;
     private final SessionManager sessionManager;
     private final BroadcastService broadcastService;
-    private final ThreadPoolExecutor threadPool;
+    private final ChatSessionHandler sessionHandler;
+    private final AsyncMessageWriter messageWriter;
+    private final CachingUserDao userDao;
+    private final GroupManager groupManager;
+    private final FriendManager friendManager;
+    private final HistoryCache historyCache;
+    private final CommandDispatcher commandDispatcher;
+    // 连接、网络写出、数据库、扇出各自独立的执行器
+    private final ThreadPoolManager threadPoolManager;
+    private final WriteContext writeContext;
+    private final OfflineMessageService offlineMessageService;
+    // 集群总线，单机模式为 null
+    private final MessageBus clusterBus;
+    private final PresenceDirectory presence;
+    // 发送频率限制，未启用时为 null
+    private final RateLimiter rateLimiter;
+    private final JmxExporter jmxExporter = new JmxExporter();
     private volatile boolean running = false;
-
-    // 在ChatServer类中添加
-    private final UserDao userDao = new UserDao();
-    private final MessageDao messageDao = new MessageDao();
+    private volatile ServerSocket serverSocket;
+    private NioServer nioServer;
 
     public ChatServer(int port) {
+        this(ServerConfig.load(), port);
+    }
+
+    public ChatServer(ServerConfig config) {
+        this(config, config.getPort());
+    }
+
+    private ChatServer(ServerConfig config, int port) {
+        this.config = config;
         this.port = port;
         this.sessionManager = new SessionManager();
-        this.broadcastService = new BroadcastService(sessionManager);
-        this.threadPool = ThreadPoolConfig.createChatThreadPool();
+        this.threadPoolManager = new ThreadPoolManager(config);
+        this.messageWriter = new AsyncMessageWriter(new MessageDao(), config.isPersistenceWriteBehind(),
+                config.getPersistenceQueueCapacity(), config.getPersistenceBatchSize(),
+                config.getPersistenceFlushIntervalMillis(), config.getPersistenceEnqueueTimeoutMillis(),
+                openJournal(config));
+        this.userDao = new CachingUserDao(config.getUserCacheMaxSize(), config.getUserCacheTtlSeconds(),
+                config.getUserCacheNegativeTtlSeconds());
+        this.groupManager = new GroupManager(sessionManager, new GroupDao());
+        sessionManager.addListener(groupManager);
+        this.clusterBus = createMessageBus(config, port);
+        this.presence = clusterBus != null
+                ? new PresenceDirectory(sessionManager, clusterBus, config.getClusterVirtualNodes()) : null;
+        if (presence != null) {
+            sessionManager.addListener(presence);
+        }
+        this.friendManager = new FriendManager(sessionManager, new FriendDao(), presence);
+        sessionManager.addListener(friendManager);
+        this.historyCache = new HistoryCache(config.getHistoryPerConversation(), config.getHistoryMaxBytes());
+        HistoryService historyService = new HistoryService(historyCache, new MessageDao(), messageWriter,
+                config.getHistoryPageSize(), clusterBus == null);
+        if (clusterBus != null) {
+            // 节点断开期间的群消息不会重传，环可能缺消息：节点变化时清空，之后重新从数据库补足
+            clusterBus.addMembershipListener(historyCache::invalidateAll);
+        }
+        this.rateLimiter = config.isRateLimitEnabled() ? new RateLimiter(
+                config.getRateLimitSessionRate(), config.getRateLimitSessionBurst(),
+                config.getRateLimitUserRate(), config.getRateLimitUserBurst(),
+                config.getRateLimitGroupRate(), config.getRateLimitGroupBurst(),
+                config.getRateLimitGlobalRate(), config.getRateLimitGlobalBurst()) : null;
+        this.broadcastService = new BroadcastService(sessionManager, userDao, groupManager, friendManager,
+                historyService, threadPoolManager.getFanoutExecutor(), config.getFanoutInlineThreshold(), clusterBus,
+                presence, rateLimiter);
+        this.offlineMessageService = new OfflineMessageService(new MessageDao(),
+                threadPoolManager.getDatabaseScheduler(), config.getOfflineChunkSize(),
+                config.getOfflinePollIntervalMillis());
+        CommandRegistry commandRegistry = new CommandRegistry();
+        broadcastService.registerCommands(commandRegistry);
+        this.commandDispatcher = new CommandDispatcher(commandRegistry, threadPoolManager.getDatabaseExecutor());
+        this.sessionHandler = new ChatSessionHandler(sessionManager, broadcastService, messageWriter, userDao,
+                offlineMessageService, commandDispatcher, rateLimiter);
+        if (config.isBufferPoolEnabled()) {
+            BufferPool.setDefault(new BufferPool(config.getBufferPoolMaxPooledSize(),
+                    config.getBufferPoolMaxPoolBytes(), config.isBufferPoolLeakDetection()));
+        }
+        this.writeContext = new WriteContext(threadPoolManager.getWriterPool(), threadPoolManager.getFlushTimer(),
+                new FlushPolicy(config.isWriteBatching(), config.getFlushDelayMicros(), config.getMaxBatchBytes()),
+                new WriteStats());
+    }
+
+    // 打开本地消息日志，失败时退回内存队列
+    private static MessageJournal openJournal(ServerConfig config) {
+        if (!config.isJournalEnabled()) {
+            return null;
+        }
+        if (!config.isPersistenceWriteBehind()) {
+            log.warn("消息日志需要开启 persistence.writeBehind，已忽略");
+            return null;
+        }
+        try {
+            return MessageJournal.open(Paths.get(config.getJournalDir()), config.getJournalSegmentBytes());
+        } catch (IOException e) {
+            log.error("打开消息日志失败，使用内存队列: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // 节点ID默认取服务端口，同一JVM内的多个实例(loopback)也能区分
+    private static MessageBus createMessageBus(ServerConfig config, int port) {
+        String nodeId = config.getString("cluster.nodeId", "node-" + port);
+        switch (config.getClusterBus()) {
+            case LOOPBACK:
+                return new LoopbackMessageBus(nodeId, config.getClusterQueueCapacity(), config.getClusterBatchSize());
+            case TCP:
+                return new TcpMessageBus(nodeId, config.getClusterPort(),
+                        TcpMessageBus.parsePeers(config.getClusterPeers()), config.getClusterQueueCapacity(),
+                        config.getClusterBatchSize(), config.getMaxBatchBytes(), config.getMaxLineLength() * 4,
+                        config.getClusterReconnectMillis());
+            default:
+                return null;
+        }
+    }
+
+    // 总线启动失败时以单机模式继续运行
+    private void startCluster() {
+        try {
+            clusterBus.start(this::onClusterMessage);
+        } catch (IOException e) {
+            log.error("集群总线启动失败，以单机模式运行: {}", e.getMessage());
+            clusterBus.close();
+        }
+    }
+
+    // 在线状态消息交给 PresenceDirectory，其余由 BroadcastService 投递
+    private void onClusterMessage(ClusterMessage message) {
+        if (!presence.onClusterMessage(message)) {
+            broadcastService.onClusterMessage(message);
+        }
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            running = true;
-            log.info("聊天服务器启动在端口: {}", port);
+        running = true;
+        messageWriter.start();
+        if (clusterBus != null) {
+            startCluster();
+        }
+
+        // 启动监控
+        registerMetrics();
+        startMonitor();
+        if (config.isJmxEnabled()) {
+            registerMBeans();
+        }
+
+        // 添加关闭钩子
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+
+        if (config.getTransport() == ServerConfig.TransportType.NIO) {
+            startNio();
+        } else {
+            startBlocking();
+        }
+    }
 
-            // 启动监控
-            startMonitor();
+    // NIO模式：事件循环负责连接和读写，线程池只执行业务逻辑
+    private void startNio() {
+        try {
+            nioServer = new NioServer(config, sessionHandler, threadPoolManager.getConnectionExecutor(), writeContext);
+            nioServer.start();
+        } catch (IOException e) {
+            log.error("服务器异常: {}", e.getMessage());
+            shutdown();
+        }
+    }
 
-            // 添加关闭钩子
-            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    // 阻塞模式：每个连接占用一个线程(平台线程池中的线程，或一个虚拟线程)
+    private void startBlocking() {
+        startWriteWatchdog();
+        try (ServerSocket serverSocket = new ServerSocket(port, config.getBacklog())) {
+            this.serverSocket = serverSocket;
+            log.info("聊天服务器启动在端口: {}, 线程模式: {}", port,
+                    threadPoolManager.isVirtualThreads() ? "virtual" : "platform");
 
             while (running && !Thread.currentThread().isInterrupted()) {
                 Socket clientSocket = serverSocket.accept();
-                log.info("客户端连接: {}", clientSocket.getInetAddress());
+                log.debug("客户端连接: {}", clientSocket.getInetAddress());
 
-                // 提交客户端处理任务到线程池
-                threadPool.execute(() -> handleClient(clientSocket));
+                // 提交客户端处理任务，连接线程已满时拒绝该连接
+                try {
+                    threadPoolManager.getConnectionExecutor().execute(() -> handleClient(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    rejectConnection(clientSocket);
+                }
             }
 
         } catch (Exception e) {
-            log.error("服务器异常: {}", e.getMessage());
+            if (running) {
+                log.error("服务器异常: {}", e.getMessage());
+            }
         } finally {
             shutdown();
         }
     }
 
+    // 只在取快照时求值的仪表，数据库连接池的仪表由 DatabaseConnection 注册
+    private void registerMetrics() {
+        MetricsRegistry registry = ServerMetrics.REGISTRY;
+        registry.gauge("sessions.online", sessionManager::getOnlineCount);
+        registry.gauge("writer.queue", messageWriter::getQueueSize);
+        registry.gauge("writer.journalPendingBytes", messageWriter::getJournalPendingBytes);
+        if (clusterBus != null) {
+            registry.gauge("cluster.peers", clusterBus::getPeerCount);
+            registry.gauge("presence.owned", presence::getOwnedCount);
+            registry.gauge("presence.cached", presence::getCachedCount);
+        }
+        if (rateLimiter != null) {
+            registry.gauge("ratelimit.userBuckets", rateLimiter::getUserBucketCount);
+            registry.gauge("ratelimit.groupBuckets", rateLimiter::getGroupBucketCount);
+        }
+        BufferPool bufferPool = BufferPool.getDefault();
+        if (bufferPool != null) {
+            registry.gauge("buffer.outstanding", bufferPool::getOutstanding);
+            registry.gauge("buffer.pooledBytes", bufferPool::getPooledBytes);
+            registry.gauge("buffer.hitPercent", () -> {
+                long acquired = ServerMetrics.BUFFER_ACQUIRE.get();
+                return acquired == 0 ? 0 : ServerMetrics.BUFFER_HIT.get() * 100 / acquired;
+            });
+        }
+        threadPoolManager.registerMetrics(registry);
+    }
+
+    // 会话、合并写策略、线程池和指标注册表；数据库连接池的 MBean 由 HikariCP 在首次连接时注册
+    private void registerMBeans() {
+        jmxExporter.register("Server", new ServerAdmin(config, sessionManager));
+        jmxExporter.register("FlushPolicy", writeContext.getFlushPolicy());
+        jmxExporter.register("ThreadPools", threadPoolManager);
+        jmxExporter.register("Metrics", ServerMetrics.REGISTRY);
+        log.info("JMX 管理接口已注册: {}:type=Server/FlushPolicy/ThreadPools/Metrics", JmxExporter.DOMAIN);
+    }
+
     // 在ChatServer.java中添加监控方法
     private void startMonitor() {
         Thread monitorThread = new Thread(() -> {
+            MetricsSnapshot previous = ServerMetrics.REGISTRY.snapshot();
             while (running) {
                 try {
                     Thread.sleep(30000); // 每30秒输出一次状态
-                    log.info("服务器状态 - 活跃线程: {}/{}, 队列大小: {}, 完成任务: {}",
-                            threadPool.getActiveCount(),
-                            threadPool.getPoolSize(),
-                            threadPool.getQueue().size(),
-                            threadPool.getCompletedTaskCount());
+                    WriteStats writeStats = writeContext.getWriteStats();
+                    log.info("服务器状态 - 在线连接: {}, " +
+                                    "写调用: {}, 平均字节/次: {}, 平均消息/次: {}, " +
+                                    "落库队列: {}, 日志未提交: {}B, 已落库: {}, 批次: {}, 同步回退: {}, " +
+                                    "用户缓存: {}条, 命中率: {}, 淘汰: {}, 离线投递: {}条, " +
+                                    "历史缓存: {}个会话/{}KB, 命中率: {}, 命令(CPU/IO/拒绝): {}/{}/{}",
+                            sessionManager.getOnlineCount(),
+                            writeStats.getWriteCalls(),
+                            String.format("%.1f", writeStats.getBytesPerWrite()),
+                            String.format("%.2f", writeStats.getMessagesPerWrite()),
+                            messageWriter.getQueueSize(),
+                            messageWriter.getJournalPendingBytes(),
+                            messageWriter.getWrittenCount(),
+                            messageWriter.getBatchCount(),
+                            messageWriter.getSyncFallbackCount(),
+                            userDao.size(),
+                            String.format("%.2f", userDao.getHitRate()),
+                            userDao.getEvictionCount(),
+                            offlineMessageService.getDeliveredCount(),
+                            historyCache.size(),
+                            historyCache.getEstimatedBytes() / 1024,
+                            String.format("%.2f", historyCache.getHitRate()),
+                            commandDispatcher.getCpuCount(),
+                            commandDispatcher.getIoCount(),
+                            commandDispatcher.getRejectedCount());
+                    log.info("线程池状态 - {}", threadPoolManager.getStats().stream()
+                            .map(PoolStats::toString).collect(Collectors.joining(", ")));
+                    // 速率和延迟分布只统计最近一个监控周期
+                    MetricsSnapshot current = ServerMetrics.REGISTRY.snapshot();
+                    log.info("指标 - {}", current.format(previous));
+                    previous = current;
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -92,181 +353,121 @@ public class ChatServer {
         monitorThread.start();
     }
 
+    // Socket 的阻塞写没有超时参数：定期检查各会话正在进行的写，超过 writeTimeoutMillis 的断开，
+    // 避免不读数据的客户端长期占住写线程，拖住其他会话的写出
+    private void startWriteWatchdog() {
+        long timeoutMillis = config.getWriteTimeoutMillis();
+        if (timeoutMillis <= 0) {
+            return;
+        }
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long periodMillis = Math.max(100, timeoutMillis / 4);
+        threadPoolManager.getFlushTimer().scheduleWithFixedDelay(() -> {
+            try {
+                long now = System.nanoTime();
+                for (ClientSession session : sessionManager.getAllSessions()) {
+                    if (session instanceof BlockingClientSession) {
+                        ((BlockingClientSession) session).checkWriteDeadline(now, timeoutNanos);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("写超时检查失败: {}", e.getMessage(), e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
     private void handleClient(Socket clientSocket) {
-        ClientSession session = new ClientSession(clientSocket);
+        BlockingClientSession session = new BlockingClientSession(clientSocket,
+                new OutboundQueue(config.getOutboundQueueCapacity(), config.getOverflowPolicy()), writeContext);
 
         try {
-            // 注册会话
-            sessionManager.registerSession(session);
-
-            // 认证流程
-            if (!authenticate(session)) {
-                return;
+            // 注册会话并进入登录流程
+            sessionHandler.onConnect(session);
+
+            // 首字节决定线路协议：二进制客户端先发送握手，文本客户端直接发送行
+            int binaryVersion = session.negotiateProtocol();
+            if (binaryVersion > 0) {
+                if (sessionHandler.onHandshake(session, binaryVersion)) {
+                    // 逐帧驱动
+                    BinaryFrame frame;
+                    while (session.isActive() && (frame = session.readFrame(config.getMaxLineLength())) != null) {
+                        if (!sessionHandler.onFrame(session, frame)) {
+                            break;
+                        }
+                    }
+                }
+            } else {
+                // 逐行驱动 登录/注册 -> 聊天 流程
+                String message;
+                while (session.isActive() && (message = session.readMessage(config.getMaxLineLength())) != null) {
+                    if (!sessionHandler.onMessage(session, message)) {
+                        break;
+                    }
+                }
             }
 
-            // 通知其他用户 - 使用BroadcastService
-            broadcastService.sendSystemMessage(session.getUsername() + " 加入了聊天室");
-            session.sendMessage("欢迎 " + session.getUsername() + "! 输入 'bye' 退出");
-
-            // 消息处理循环
-            processClientMessages(session);
-
         } catch (Exception e) {
-            log.error("处理客户端异常: {}", e.getMessage());
+            if (session.getState() == SessionState.CLOSED || !session.isActive()) {
+                // 服务器已主动断开(例如管理员断开会话)，阻塞的读随socket关闭而失败
+                log.debug("会话已关闭: {}", e.getMessage());
+            } else {
+                log.error("处理客户端异常: {}", e.getMessage());
+            }
         } finally {
             // 清理资源
-            cleanupSession(session);
+            sessionHandler.onDisconnect(session);
         }
     }
 
-//    private boolean authenticate(ClientSession session) throws IOException {
-//        session.sendMessage("请输入你的昵称:");
-//        String username = session.readMessage();
-//
-//        if (username == null || username.trim().isEmpty()) {
-//            session.sendMessage("昵称不能为空");
-//            return false;
-//        }
-//
-//        session.setUsername(username.trim());
-//        return true;
-//    }
-
-    // 修改认证流程
-    private boolean authenticate(ClientSession session) throws IOException {
-        session.sendMessage("请选择: 1. 登录 2. 注册");
-        String choice = session.readMessage();
-
-        if ("1".equals(choice)) {
-            return login(session);
-        } else if ("2".equals(choice)) {
-            return register(session);
-        } else {
-            session.sendMessage("无效选择，连接关闭");
-            return false;
+    // 在接收线程上执行，只写一行提示就关闭，不做任何阻塞的读
+    private void rejectConnection(Socket clientSocket) {
+        log.warn("连接线程已满，拒绝连接: {}", clientSocket.getRemoteSocketAddress());
+        try {
+            clientSocket.setSoTimeout(1000);
+            clientSocket.getOutputStream().write("[系统] 服务器繁忙，请稍后再试\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.debug("发送拒绝提示失败: {}", e.getMessage());
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                log.debug("关闭连接失败: {}", e.getMessage());
+            }
         }
     }
 
-    private boolean login(ClientSession session) throws IOException {
-        session.sendMessage("请输入用户名:");
-        String username = session.readMessage();
-        session.sendMessage("请输入密码:");
-        String password = session.readMessage();
-
-        UserDao.User user = userDao.findUserByUsername(username);
-        if (user != null && user.getPassword().equals(password)) { // 实际应该加密验证
-            userDao.updateUserLoginTime(user.getId());
-            session.setUser(user);
-            session.setUsername(user.getNickname());
-            session.sendMessage("登录成功！欢迎 " + user.getNickname());
-            return true;
-        } else {
-            session.sendMessage("登录失败，用户名或密码错误");
-            return false;
-        }
+    public void stop() {
+        shutdown();
     }
 
-    private boolean register(ClientSession session) throws IOException {
-        session.sendMessage("请输入用户名:");
-        String username = session.readMessage();
-        session.sendMessage("请输入密码:");
-        String password = session.readMessage();
-        session.sendMessage("请输入昵称:");
-        String nickname = session.readMessage();
-        session.sendMessage("请输入邮箱(可选):");
-        String email = session.readMessage();
-
-        if (username.isEmpty() || password.isEmpty() || nickname.isEmpty()) {
-            session.sendMessage("用户名、密码和昵称不能为空");
-            return false;
-        }
-
-        if (userDao.findUserByUsername(username) != null) {
-            session.sendMessage("用户名已存在");
-            return false;
+    private void shutdown() {
+        if (!running) {
+            return;
         }
-
-        if (userDao.createUser(username, password, nickname, email)) {
-            session.sendMessage("注册成功！请登录");
-            return login(session);
-        } else {
-            session.sendMessage("注册失败，请重试");
-            return false;
+        running = false;
+        if (nioServer != null) {
+            nioServer.stop();
         }
-    }
-
-    // 在ChatServer.java的processClientMessages方法中修改
-//    private void processClientMessages(ClientSession session) throws IOException {
-//        String message;
-//        while ((message = session.readMessage()) != null && session.isActive()) {
-//            if ("bye".equalsIgnoreCase(message)) {
-//                session.sendMessage("再见!");
-//                break;
-//            }
-//
-//            // 检查是否是命令
-//            if (message.startsWith("/")) {
-//                broadcastService.handleCommand(session, message);
-//            } else {
-//                // 广播用户消息
-//                String formattedMessage = "[" + session.getUsername() + "]: " + message;
-//                System.out.println("广播消息: " + formattedMessage);
-//                broadcastService.broadcastToAll(formattedMessage, session);
-//            }
-//        }
-//    }
-
-    // 修改消息处理，添加持久化
-    private void processClientMessages(ClientSession session) throws IOException {
-        String message;
-        while ((message = session.readMessage()) != null && session.isActive()) {
-            if ("bye".equalsIgnoreCase(message)) {
-                session.sendMessage("再见!");
-                break;
-            }
-
-            // 检查是否是命令
-            if (message.startsWith("/")) {
-                handleCommand(session, message);
-            } else {
-                // 广播用户消息并保存到数据库
-                String formattedMessage = "[" + session.getUsername() + "]: " + message;
-                System.out.println("广播消息: " + formattedMessage);
-
-                // 保存到数据库 (群聊消息，group_id为null)
-                UserDao.User user = session.getUser();
-                if (user != null) {
-                    messageDao.saveMessage(2, user.getId(), null, null, message, 1, null);
-                }
-
-                broadcastService.broadcastToAll(formattedMessage, session);
+        ServerSocket socket = serverSocket;
+        if (socket != null && !socket.isClosed()) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("关闭监听端口失败: {}", e.getMessage());
             }
         }
-    }
-
-    // 在 ChatServer 类中添加如下方法
-    private void handleCommand(ClientSession session, String command) {
-        broadcastService.handleCommand(session, command);
-    }
-
-
-    private void cleanupSession(ClientSession session) {
-        if (session.getUsername() != null) {
-            // 使用BroadcastService发送系统消息
-            broadcastService.sendSystemMessage(session.getUsername() + " 离开了聊天室");
+        jmxExporter.unregisterAll();
+        if (clusterBus != null) {
+            clusterBus.close();
         }
-        sessionManager.removeSession(session.getClientId());
-        session.close();
-    }
-
-    private void shutdown() {
-        running = false;
-        threadPool.shutdown();
+        threadPoolManager.shutdown();
+        // 最后写完积压的消息
+        messageWriter.shutdown(10000);
         log.info("服务器已关闭");
     }
 
     public static void main(String[] args) {
-        ChatServer server = new ChatServer(8888);
+        ChatServer server = new ChatServer(ServerConfig.load());
         server.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package com.rain.chatroom.server.buffer;
+
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 直接内存缓冲区池 - 传输层写出用的 ByteBuffer 按大小分级复用
+ *
+ * 设计思路：
+ * 1. 大小分级：从 256B 起按 2 倍递增到 maxPooledSize，申请时向上取整到所在级别；
+ *    超过最大级别的(很少见的大消息)用堆内存缓冲区，不回收
+ * 2. 每个线程对每个级别缓存少量缓冲区，申请和归还在同一线程时不需要同步；
+ *    线程缓存空了/满了再与全局的每级共享队列交换，共享队列按 maxPoolBytes 限制总量，超出的交给GC
+ * 3. PooledBuffer 引用计数，归零时回到池中。广播消息的编码结果被多个会话共享，最后一个会话写完后归还
+ * 4. 泄漏检测(调试用)：记录每次申请的调用栈，缓冲区没有 release 就被GC时打印申请位置
+ *
+ * 指标：buffer.acquire 申请次数，buffer.hit 命中池(线程缓存或共享队列)，buffer.miss 新分配，buffer.leak 检测到的泄漏
+ */
+@Slf4j
+public class BufferPool {
+    private static final int MIN_SIZE_SHIFT = 8;
+    private static final int MIN_SIZE = 1 << MIN_SIZE_SHIFT;
+    // 线程缓存每个级别最多占用的字节数和个数
+    private static final int THREAD_CACHE_BYTES_PER_CLASS = 64 * 1024;
+    private static final int MAX_THREAD_CACHE_COUNT = 64;
+
+    private static volatile BufferPool defaultPool;
+
+    private final int maxPooledSize;
+    private final int classCount;
+    private final List<BlockingQueue<PooledBuffer>> shared;
+    private final int[] threadCacheCapacity;
+    private final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+    private final LongAdder outstanding = new LongAdder();
+
+    private final boolean leakDetection;
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<>();
+    private final Set<LeakTracker> trackers = ConcurrentHashMap.newKeySet();
+
+    public BufferPool(int maxPooledSize, long maxPoolBytes, boolean leakDetection) {
+        this.maxPooledSize = MIN_SIZE << sizeClassOf(Math.max(MIN_SIZE, maxPooledSize), Integer.MAX_VALUE);
+        this.classCount = sizeClassOf(this.maxPooledSize, Integer.MAX_VALUE) + 1;
+        this.shared = new ArrayList<>(classCount);
+        this.threadCacheCapacity = new int[classCount];
+        for (int i = 0; i < classCount; i++) {
+            int size = MIN_SIZE << i;
+            long capacity = Math.max(1, maxPoolBytes / classCount / size);
+            shared.add(new ArrayBlockingQueue<PooledBuffer>((int) Math.min(capacity, 1 << 20)));
+            threadCacheCapacity[i] = Math.max(2, Math.min(MAX_THREAD_CACHE_COUNT, THREAD_CACHE_BYTES_PER_CLASS / size));
+        }
+        this.leakDetection = leakDetection;
+        if (leakDetection) {
+            log.warn("直接内存缓冲区泄漏检测已开启，每次申请都会记录调用栈，只应在调试时使用");
+        }
+    }
+
+    /**
+     * 传输层使用的全局实例；未启用缓冲区池时为 null，调用方退回堆内存
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    public static void setDefault(BufferPool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * 申请容量至少为 minCapacity 的缓冲区，position=0，limit=capacity，引用计数为 1
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        ServerMetrics.BUFFER_ACQUIRE.increment();
+        int sizeClass = sizeClassOf(minCapacity, maxPooledSize);
+        PooledBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = threadCache.get().poll(sizeClass);
+            if (buffer == null) {
+                buffer = shared.get(sizeClass).poll();
+            }
+        }
+        if (buffer != null) {
+            ServerMetrics.BUFFER_HIT.increment();
+        } else {
+            ServerMetrics.BUFFER_MISS.increment();
+            buffer = sizeClass >= 0
+                    ? new PooledBuffer(this, ByteBuffer.allocateDirect(MIN_SIZE << sizeClass), sizeClass)
+                    : new PooledBuffer(this, ByteBuffer.allocate(minCapacity), -1);
+        }
+        buffer.reset();
+        outstanding.increment();
+        if (leakDetection) {
+            track(buffer);
+        }
+        return buffer;
+    }
+
+    // 引用计数归零时由 PooledBuffer 调用
+    void recycle(PooledBuffer buffer) {
+        outstanding.decrement();
+        if (buffer.leakTracker != null) {
+            untrack(buffer);
+        }
+        int sizeClass = buffer.sizeClass();
+        if (sizeClass < 0) {
+            return;
+        }
+        if (!threadCache.get().offer(sizeClass, buffer)) {
+            shared.get(sizeClass).offer(buffer);
+        }
+    }
+
+    /**
+     * 已申请、尚未归还的缓冲区数
+     */
+    public long getOutstanding() {
+        return outstanding.sum();
+    }
+
+    /**
+     * 共享队列中空闲缓冲区的总字节数(不含各线程缓存)
+     */
+    public long getPooledBytes() {
+        long bytes = 0;
+        for (int i = 0; i < classCount; i++) {
+            bytes += (long) shared.get(i).size() * (MIN_SIZE << i);
+        }
+        return bytes;
+    }
+
+    public int getMaxPooledSize() {
+        return maxPooledSize;
+    }
+
+    // 容量所在的级别，超过 maxSize 返回 -1
+    private static int sizeClassOf(int capacity, int maxSize) {
+        if (capacity > maxSize) {
+            return -1;
+        }
+        int size = Math.max(capacity, MIN_SIZE);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_SHIFT;
+    }
+
+    // ========== 泄漏检测 ==========
+
+    private void track(PooledBuffer buffer) {
+        reportLeaks();
+        LeakTracker tracker = new LeakTracker(buffer, leakQueue);
+        trackers.add(tracker);
+        buffer.leakTracker = tracker;
+    }
+
+    private void untrack(PooledBuffer buffer) {
+        LeakTracker tracker = buffer.leakTracker;
+        buffer.leakTracker = null;
+        trackers.remove(tracker);
+        tracker.clear();
+    }
+
+    // 包装对象已被GC、仍在登记表中的就是没有 release 的缓冲区
+    private void reportLeaks() {
+        Reference<? extends PooledBuffer> reference;
+        while ((reference = leakQueue.poll()) != null) {
+            LeakTracker tracker = (LeakTracker) reference;
+            if (trackers.remove(tracker)) {
+                outstanding.decrement();
+                ServerMetrics.BUFFER_LEAK.increment();
+                log.error("直接内存缓冲区泄漏: 未调用 release 就被回收", tracker.allocation);
+            }
+        }
+    }
+
+    static final class LeakTracker extends PhantomReference<PooledBuffer> {
+        private final Throwable allocation = new Throwable("缓冲区申请位置");
+
+        LeakTracker(PooledBuffer referent, ReferenceQueue<? super PooledBuffer> queue) {
+            super(referent, queue);
+        }
+    }
+
+    // 线程私有的每级缓冲区栈，只在第一次归还到该级别时分配
+    private final class ThreadCache {
+        private final PooledBuffer[][] stacks = new PooledBuffer[classCount][];
+        private final int[] counts = new int[classCount];
+
+        PooledBuffer poll(int sizeClass) {
+            int count = counts[sizeClass];
+            if (count == 0) {
+                return null;
+            }
+            PooledBuffer[] stack = stacks[sizeClass];
+            PooledBuffer buffer = stack[--count];
+            stack[count] = null;
+            counts[sizeClass] = count;
+            return buffer;
+        }
+
+        boolean offer(int sizeClass, PooledBuffer buffer) {
+            PooledBuffer[] stack = stacks[sizeClass];
+            if (stack == null) {
+                stack = stacks[sizeClass] = new PooledBuffer[threadCacheCapacity[sizeClass]];
+            }
+            int count = counts[sizeClass];
+            if (count == stack.length) {
+                return false;
+            }
+            stack[count] = buffer;
+            counts[sizeClass] = count + 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.rain.chatroom.server.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 带引用计数的直接内存缓冲区，由 BufferPool 分配
+ *
+ * 申请时计数为 1；每个额外的持有者 retain 一次，用完 release 一次，计数归零时回到池中。
+ * 归零之后不能再访问 buffer()，包装对象本身也随缓冲区一起复用
+ */
+public final class PooledBuffer {
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCount");
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    // 所在的大小级别，超过最大级别的缓冲区为 -1，不回收
+    private final int sizeClass;
+    private volatile int refCount;
+    // 泄漏检测开启时记录本次申请
+    BufferPool.LeakTracker leakTracker;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    int sizeClass() {
+        return sizeClass;
+    }
+
+    // 由 BufferPool 在分配时调用
+    void reset() {
+        buffer.clear();
+        refCount = 1;
+    }
+
+    /**
+     * 增加一个持有者；已归还的缓冲区抛出 IllegalStateException
+     */
+    public PooledBuffer retain() {
+        while (true) {
+            int count = refCount;
+            if (count <= 0) {
+                throw new IllegalStateException("缓冲区已归还: refCount=" + count);
+            }
+            if (REF_COUNT.compareAndSet(this, count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一个持有者，最后一个持有者释放时归还到池中并返回 true
+     */
+    public boolean release() {
+        while (true) {
+            int count = refCount;
+            if (count <= 0) {
+                throw new IllegalStateException("缓冲区重复释放: refCount=" + count);
+            }
+            if (REF_COUNT.compareAndSet(this, count, count - 1)) {
+                if (count == 1) {
+                    pool.recycle(this);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    public int refCount() {
+        return refCount;
+    }
+}
@@ -0,0 +1,382 @@
+package com.rain.chatroom.server.cache;
+
+import com.rain.chatroom.server.dao.MessageDao;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点历史消息缓存 - 每个会话(私聊双方 / 群)一个环形缓冲区，保存最近 N 条消息
+ *
+ * 设计思路：
+ * 1. 写路径直接追加：消息落库前先放入对应会话的环，最新的历史不依赖异步落库是否完成
+ * 2. 环只保存"某个时间点之后的全部消息"：floor 之前的由数据库按键集分页补齐，
+ *    环满淘汰最旧消息时同一毫秒的消息一起淘汰，保证时间边界上不重不漏
+ * 3. 写路径创建的环只含创建之后的消息，第一次读取时用数据库中更早的消息补足(seed)
+ * 4. 按会话 key 的哈希分段，每段一个按访问顺序排列的 LinkedHashMap 和一把锁；
+ *    内存按估算字节数计预算，超出时淘汰段内最久未访问的会话
+ *
+ * 环内消息按 created_time 升序排列；写路径上偶尔的乱序(并发发送)通过从尾部插入排序纠正
+ */
+public class HistoryCache {
+    private static final int SEGMENTS = 16;
+    // 每条消息除内容外的估算开销：消息对象、Timestamp、字符串头和环数组槽位
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final Segment[] segments;
+    private final int perConversation;
+    private final long maxBytesPerSegment;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param perConversation 每个会话最多保存的消息数
+     * @param maxBytes        全部会话的估算内存上限(按段平均分配)
+     */
+    public HistoryCache(int perConversation, long maxBytes) {
+        this.perConversation = Math.max(1, perConversation);
+        this.maxBytesPerSegment = Math.max(1, maxBytes / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public static String privateKey(long userId1, long userId2) {
+        return "p:" + Math.min(userId1, userId2) + ":" + Math.max(userId1, userId2);
+    }
+
+    public static String groupKey(long groupId) {
+        return "g:" + groupId;
+    }
+
+    public static boolean isPrivateKey(String key) {
+        return key.startsWith("p:");
+    }
+
+    public int getPerConversation() {
+        return perConversation;
+    }
+
+    /**
+     * 写路径：把新消息追加到会话的环，会话不在缓存中时新建(尚未 seed)
+     *
+     * 不晚于环 floor 的消息(例如其他节点转发来时已经落后)不放入环，由数据库分页读到
+     */
+    public void append(String key, MessageDao.ChatMessage message) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Ring ring = segment.map.get(key);
+            if (ring == null) {
+                ring = new Ring(perConversation);
+                segment.map.put(key, ring);
+            }
+            segment.bytes += ring.add(message);
+            segment.trim(ring, maxBytesPerSegment, evictionCount);
+        }
+    }
+
+    /**
+     * 读取 beforeMillis 之前最新的 limit 条(同一毫秒的消息不拆开，可能略多于 limit)，按时间倒序
+     *
+     * 会话不在缓存中或尚未 seed 时返回 needsSeed 的结果，调用方从数据库加载后调用 seed 再读
+     */
+    public Slice read(String key, long beforeMillis, int limit) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Ring ring = segment.map.get(key);
+            if (ring == null || !ring.seeded) {
+                missCount.increment();
+                return Slice.needsSeed(ring != null ? ring.oldestMillis() : Long.MAX_VALUE,
+                        ring != null ? perConversation - ring.size : perConversation);
+            }
+            hitCount.increment();
+            List<MessageDao.ChatMessage> messages = ring.newestBefore(beforeMillis, limit);
+            return Slice.of(messages, ring.floorMillis, Math.min(beforeMillis, ring.floorMillis + 1));
+        }
+    }
+
+    /**
+     * 用数据库中更早的消息补足会话的环
+     *
+     * @param olderNewestFirst 数据库中早于环内最旧消息的消息，按时间倒序
+     * @param requested        查询时的 limit；返回条数少于它说明数据库中没有更早的消息了
+     */
+    public void seed(String key, List<MessageDao.ChatMessage> olderNewestFirst, int requested) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Ring ring = segment.map.get(key);
+            if (ring == null) {
+                ring = new Ring(perConversation);
+                segment.map.put(key, ring);
+            }
+            if (ring.seeded) {
+                return;
+            }
+            segment.bytes += ring.prependOlder(olderNewestFirst, olderNewestFirst.size() < requested);
+            segment.trim(ring, maxBytesPerSegment, evictionCount);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    static long estimateBytes(MessageDao.ChatMessage message) {
+        long chars = (message.getContent() != null ? message.getContent().length() : 0)
+                + (message.getFromNickname() != null ? message.getFromNickname().length() : 0);
+        return ENTRY_OVERHEAD_BYTES + chars * 2;
+    }
+
+    private static long timeOf(MessageDao.ChatMessage message) {
+        return message.getCreatedTime() != null ? message.getCreatedTime().getTime() : 0;
+    }
+
+    /**
+     * 一次读取的结果
+     */
+    public static final class Slice {
+        private final List<MessageDao.ChatMessage> messages;
+        private final boolean complete;
+        private final long databaseBeforeMillis;
+        private final boolean needsSeed;
+        private final int seedLimit;
+
+        private Slice(List<MessageDao.ChatMessage> messages, boolean complete, long databaseBeforeMillis,
+                      boolean needsSeed, int seedLimit) {
+            this.messages = messages;
+            this.complete = complete;
+            this.databaseBeforeMillis = databaseBeforeMillis;
+            this.needsSeed = needsSeed;
+            this.seedLimit = seedLimit;
+        }
+
+        static Slice of(List<MessageDao.ChatMessage> messages, long floorMillis, long databaseBeforeMillis) {
+            return new Slice(messages, floorMillis == Long.MIN_VALUE, databaseBeforeMillis, false, 0);
+        }
+
+        static Slice needsSeed(long oldestMillis, int seedLimit) {
+            return new Slice(null, false, oldestMillis, true, seedLimit);
+        }
+
+        /** 按时间倒序；needsSeed 时为 null */
+        public List<MessageDao.ChatMessage> getMessages() {
+            return messages;
+        }
+
+        /** 环内保存了会话的全部历史，不需要再查数据库 */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * 环内消息不够时，数据库从这个时间(不含)往前继续查；
+         * needsSeed 时为 seed 查询的上界，Long.MAX_VALUE 表示不限
+         */
+        public long getDatabaseBeforeMillis() {
+            return databaseBeforeMillis;
+        }
+
+        public boolean isNeedsSeed() {
+            return needsSeed;
+        }
+
+        public int getSeedLimit() {
+            return seedLimit;
+        }
+    }
+
+    private static final class Segment {
+        // 按访问顺序排列，淘汰由 trim 按内存预算进行
+        private final LinkedHashMap<String, Ring> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        // 超出预算时淘汰最久未访问的会话，刚访问的会话(current)在链表末尾，最后才会被淘汰
+        void trim(Ring current, long maxBytes, LongAdder evictionCount) {
+            Iterator<Map.Entry<String, Ring>> it = map.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Ring ring = it.next().getValue();
+                if (ring == current) {
+                    break;
+                }
+                bytes -= ring.bytes;
+                it.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * 单个会话的环形缓冲区，由所在段的锁保护
+     */
+    private static final class Ring {
+        private final MessageDao.ChatMessage[] slots;
+        private int head;   // 最旧消息的下标
+        private int size;
+        private long bytes;
+        // 环内保存了 created_time > floorMillis 的全部消息；Long.MIN_VALUE 表示会话的全部历史
+        private long floorMillis = Long.MIN_VALUE;
+        // 已确定 floor：seed 过，或淘汰过消息(写路径创建之前的消息都不晚于被淘汰的消息)
+        private boolean seeded;
+
+        Ring(int capacity) {
+            this.slots = new MessageDao.ChatMessage[capacity];
+        }
+
+        private MessageDao.ChatMessage get(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        private void set(int i, MessageDao.ChatMessage message) {
+            slots[(head + i) % slots.length] = message;
+        }
+
+        long oldestMillis() {
+            return size > 0 ? timeOf(get(0)) : Long.MAX_VALUE;
+        }
+
+        // 追加一条消息，返回字节数变化
+        long add(MessageDao.ChatMessage message) {
+            long before = bytes;
+            if (size == slots.length) {
+                evictOldest();
+            }
+            long time = timeOf(message);
+            if (seeded && time <= floorMillis) {
+                // 早于已淘汰的消息，放进来会让 floor 倒退
+                return bytes - before;
+            }
+            // 从尾部向前找插入位置，绝大多数情况下直接追加在末尾
+            int i = size;
+            while (i > 0 && timeOf(get(i - 1)) > time) {
+                set(i, get(i - 1));
+                i--;
+            }
+            set(i, message);
+            size++;
+            bytes += estimateBytes(message);
+            return bytes - before;
+        }
+
+        // 淘汰最旧的消息以及与它同一毫秒的消息，floor 推进到该时间
+        private void evictOldest() {
+            long time = timeOf(get(0));
+            while (size > 0 && timeOf(get(0)) == time) {
+                bytes -= estimateBytes(get(0));
+                set(0, null);
+                head = (head + 1) % slots.length;
+                size--;
+            }
+            floorMillis = time;
+            seeded = true;
+        }
+
+        // 在头部补入更早的消息，返回字节数变化
+        long prependOlder(List<MessageDao.ChatMessage> olderNewestFirst, boolean exhausted) {
+            long before = bytes;
+            long oldest = oldestMillis();
+            int added = 0;
+            for (MessageDao.ChatMessage message : olderNewestFirst) {
+                if (timeOf(message) >= oldest) {
+                    // 查询之后环内又淘汰过，已经 seeded，不会走到这里；防御性跳过
+                    continue;
+                }
+                if (size == slots.length) {
+                    break;
+                }
+                head = (head - 1 + slots.length) % slots.length;
+                slots[head] = message;
+                size++;
+                added++;
+                bytes += estimateBytes(message);
+            }
+            if (exhausted && added == olderNewestFirst.size()) {
+                floorMillis = Long.MIN_VALUE;
+            } else if (size > 0) {
+                // 没有全部放下，或数据库里还有更早的：最旧那一毫秒可能不完整，整体交给数据库
+                long time = timeOf(get(0));
+                while (size > 0 && timeOf(get(0)) == time) {
+                    bytes -= estimateBytes(get(0));
+                    set(0, null);
+                    head = (head + 1) % slots.length;
+                    size--;
+                }
+                floorMillis = time;
+            }
+            seeded = true;
+            return bytes - before;
+        }
+
+        // 早于 beforeMillis 的最新 limit 条，按时间倒序；同一毫秒的消息不拆开
+        List<MessageDao.ChatMessage> newestBefore(long beforeMillis, int limit) {
+            List<MessageDao.ChatMessage> result = new ArrayList<>(Math.min(limit, size));
+            int i = size - 1;
+            while (i >= 0 && timeOf(get(i)) >= beforeMillis) {
+                i--;
+            }
+            for (; i >= 0; i--) {
+                MessageDao.ChatMessage message = get(i);
+                if (result.size() >= limit && timeOf(message) != timeOf(result.get(result.size() - 1))) {
+                    break;
+                }
+                result.add(message);
+            }
+            return result;
+        }
+    }
+}
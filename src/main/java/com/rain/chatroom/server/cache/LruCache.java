@@ -0,0 +1,180 @@
+package com.rain.chatroom.server.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有界 LRU 缓存，条目带过期时间，支持负缓存(缓存"不存在"的结果)
+ *
+ * 按 key 的哈希分段，每段一个按访问顺序排列的 LinkedHashMap 和一把锁，
+ * 段内超过容量时淘汰最久未访问的条目；不同段的访问互不阻塞
+ *
+ * 读穿透(get)时加载函数在锁外执行，并发的同一 key 可能重复加载，结果以后写入的为准
+ */
+public class LruCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxSize          最大条目数(近似，按段平均分配)
+     * @param ttl              正常条目的存活时间
+     * @param negativeTtl      负缓存条目的存活时间，0 表示不缓存不存在的结果
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(perSegment, evictionCount);
+        }
+    }
+
+    /**
+     * 读穿透：命中(包括负缓存)直接返回，否则调用 loader 加载并缓存结果，loader 返回 null 视为不存在
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - now > 0) {
+                    hitCount.increment();
+                    return entry.value;
+                }
+                segment.map.remove(key);
+            }
+        }
+        missCount.increment();
+        V value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        } else if (negativeTtlNanos > 0) {
+            putEntry(key, null, negativeTtlNanos);
+        }
+        return value;
+    }
+
+    /**
+     * 只查缓存，不加载：未命中、已过期或为负缓存时返回 null
+     */
+    public V getIfPresent(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - now > 0) {
+                    hitCount.increment();
+                    return entry.value;
+                }
+                segment.map.remove(key);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        putEntry(key, value, ttlNanos);
+    }
+
+    private void putEntry(K key, V value, long ttl) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.map.put(key, new Entry<>(value, System.nanoTime() + ttl));
+        }
+    }
+
+    /**
+     * 移除条目，返回被移除的值(不存在或为负缓存时返回 null)
+     */
+    public V invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.remove(key);
+            return entry != null ? entry.value : null;
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        Segment(int capacity, LongAdder evictionCount) {
+            this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictionCount.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
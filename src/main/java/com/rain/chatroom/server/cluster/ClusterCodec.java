@@ -0,0 +1,166 @@
+package com.rain.chatroom.server.cluster;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.common.protocol.BinaryFrameWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 节点间消息的编码 - 沿用客户端二进制协议的帧格式(长度前缀 + 操作码 + 字段)
+ *
+ * 连接建立后发起方先发送 MAGIC 和一个 HELLO 帧(节点ID)，之后是连续的消息帧；
+ * 一批消息就是若干帧首尾相接，一次写出
+ */
+public final class ClusterCodec {
+    public static final int MAGIC = 0x52434332; // "RCC2"，聊天消息增加了发送者字段
+
+    static final byte OP_HELLO = 0x01;          // nodeId
+    static final byte OP_PING = 0x02;           // 无负载，空闲连接的心跳
+    static final byte OP_BROADCAST = 0x10;      // origin, 聊天消息, text
+    static final byte OP_NOTICE = 0x11;         // origin, text
+    static final byte OP_PRIVATE = 0x12;        // origin, 聊天消息, text, userId
+    static final byte OP_GROUP = 0x13;          // origin, 聊天消息, text, userId, 发送者
+    static final byte OP_GROUP_MEMBER = 0x14;   // origin, groupId, userId
+    static final byte OP_PRIVATE_VIA_OWNER = 0x15;  // origin, 聊天消息, text, userId
+    static final byte OP_PRESENCE_UP = 0x20;        // origin, userId
+    static final byte OP_PRESENCE_DOWN = 0x21;      // origin, userId
+    static final byte OP_PRESENCE_SUBSCRIBE = 0x22; // origin, userId
+    static final byte OP_PRESENCE_STATE = 0x23;     // origin, userId, 节点数, nodeId...
+
+    private ClusterCodec() {
+    }
+
+    public static byte[] hello(String nodeId) {
+        return new BinaryFrameWriter(OP_HELLO).writeString(nodeId).toByteArray();
+    }
+
+    public static byte[] ping() {
+        return new BinaryFrameWriter(OP_PING, 0).toByteArray();
+    }
+
+    /**
+     * 解析 HELLO 帧，返回对端节点ID；不是 HELLO 帧时返回 null
+     */
+    public static String readHello(BinaryFrame frame) {
+        return frame.getOpcode() == OP_HELLO ? frame.readString() : null;
+    }
+
+    public static byte[] encode(ClusterMessage message) {
+        String text = message.getText();
+        BinaryFrameWriter writer = new BinaryFrameWriter(opcodeOf(message.getKind()),
+                text != null ? text.length() * 6 + 64 : 64);
+        writer.writeString(message.getOrigin());
+        switch (message.getKind()) {
+            case NOTICE:
+                writer.writeString(text);
+                break;
+            case GROUP_MEMBER:
+                writer.writeLong(message.getGroupId()).writeLong(message.getUserId());
+                break;
+            case PRESENCE_UP:
+            case PRESENCE_DOWN:
+            case PRESENCE_SUBSCRIBE:
+                writer.writeLong(message.getUserId());
+                break;
+            case PRESENCE_STATE:
+                writer.writeLong(message.getUserId()).writeLong(message.getNodes().size());
+                for (String node : message.getNodes()) {
+                    writer.writeString(node);
+                }
+                break;
+            default:
+                // 聊天消息：类型, 发送者, 接收者, 群ID(0表示无), 内容, 时间戳, 显示文本, userId, 发送者ID(仅群聊), 发送者昵称(仅群聊)
+                ChatMessage chat = message.getMessage();
+                writer.writeString(chat.getType().name())
+                        .writeString(chat.getFromUser())
+                        .writeString(chat.getToUser())
+                        .writeLong(chat.getGroupId() != null ? chat.getGroupId() : 0)
+                        .writeString(chat.getContent())
+                        .writeLong(chat.getTimestamp())
+                        .writeString(text)
+                        .writeLong(message.getUserId())
+                        .writeLong(message.getSenderId())
+                        .writeString(message.getSenderNickname());
+                break;
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 帧数据不完整或操作码未知时抛出 IllegalArgumentException
+     */
+    public static ClusterMessage decode(BinaryFrame frame) {
+        ClusterMessage.Kind kind = kindOf(frame.getOpcode());
+        String origin = frame.readString();
+        switch (kind) {
+            case NOTICE:
+                return new ClusterMessage(kind, origin, null, frame.readString(), 0, 0);
+            case GROUP_MEMBER:
+                long groupId = frame.readLong();
+                return new ClusterMessage(kind, origin, null, null, groupId, frame.readLong());
+            case PRESENCE_UP:
+            case PRESENCE_DOWN:
+            case PRESENCE_SUBSCRIBE:
+                return new ClusterMessage(kind, origin, null, null, 0, frame.readLong());
+            case PRESENCE_STATE:
+                long userId = frame.readLong();
+                long count = frame.readLong();
+                if (count < 0 || count > 4096) {
+                    throw new IllegalArgumentException("节点数非法: " + count);
+                }
+                List<String> nodes = new ArrayList<>((int) count);
+                for (int i = 0; i < count; i++) {
+                    nodes.add(frame.readString());
+                }
+                return new ClusterMessage(kind, origin, null, null, 0, userId, nodes);
+            default:
+                ChatMessage chat = new ChatMessage();
+                chat.setType(ChatMessage.MessageType.valueOf(frame.readString()));
+                chat.setFromUser(frame.readString());
+                chat.setToUser(frame.readString());
+                long chatGroupId = frame.readLong();
+                chat.setGroupId(chatGroupId != 0 ? chatGroupId : null);
+                chat.setContent(frame.readString());
+                chat.setTimestamp(frame.readLong());
+                String text = frame.readString();
+                long chatUserId = frame.readLong();
+                long senderId = frame.readLong();
+                return new ClusterMessage(kind, origin, chat, text, chatGroupId, chatUserId,
+                        senderId, frame.readString());
+        }
+    }
+
+    private static byte opcodeOf(ClusterMessage.Kind kind) {
+        switch (kind) {
+            case BROADCAST: return OP_BROADCAST;
+            case NOTICE: return OP_NOTICE;
+            case PRIVATE: return OP_PRIVATE;
+            case GROUP: return OP_GROUP;
+            case GROUP_MEMBER: return OP_GROUP_MEMBER;
+            case PRIVATE_VIA_OWNER: return OP_PRIVATE_VIA_OWNER;
+            case PRESENCE_UP: return OP_PRESENCE_UP;
+            case PRESENCE_DOWN: return OP_PRESENCE_DOWN;
+            case PRESENCE_SUBSCRIBE: return OP_PRESENCE_SUBSCRIBE;
+            case PRESENCE_STATE: return OP_PRESENCE_STATE;
+            default: throw new IllegalArgumentException("未知的节点消息类型: " + kind);
+        }
+    }
+
+    private static ClusterMessage.Kind kindOf(byte opcode) {
+        switch (opcode) {
+            case OP_BROADCAST: return ClusterMessage.Kind.BROADCAST;
+            case OP_NOTICE: return ClusterMessage.Kind.NOTICE;
+            case OP_PRIVATE: return ClusterMessage.Kind.PRIVATE;
+            case OP_GROUP: return ClusterMessage.Kind.GROUP;
+            case OP_GROUP_MEMBER: return ClusterMessage.Kind.GROUP_MEMBER;
+            case OP_PRIVATE_VIA_OWNER: return ClusterMessage.Kind.PRIVATE_VIA_OWNER;
+            case OP_PRESENCE_UP: return ClusterMessage.Kind.PRESENCE_UP;
+            case OP_PRESENCE_DOWN: return ClusterMessage.Kind.PRESENCE_DOWN;
+            case OP_PRESENCE_SUBSCRIBE: return ClusterMessage.Kind.PRESENCE_SUBSCRIBE;
+            case OP_PRESENCE_STATE: return ClusterMessage.Kind.PRESENCE_STATE;
+            default: throw new IllegalArgumentException("未知的节点消息操作码: " + opcode);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.rain.chatroom.server.cluster;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.handler.OutboundMessage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 节点间转发的消息
+ *
+ * 一条逻辑消息只转发一次，由接收节点扇出给自己的本地会话；
+ * 聊天消息同时携带 ChatMessage(二进制协议)和显示文本(文本协议)，接收节点不需要重新拼接；
+ * 群聊还携带发送者的用户ID和昵称，接收节点据此把消息追加到自己的热点历史，
+ * ChatMessage 的时间戳即发送节点落库的 created_time
+ */
+public final class ClusterMessage {
+    public enum Kind {
+        // 所有在线用户：聊天广播 / 上下线等系统通知
+        BROADCAST, NOTICE,
+        // 按用户名投递；VIA_OWNER 发给接收者的负责节点，由它转发到接收者所在的节点
+        PRIVATE, PRIVATE_VIA_OWNER,
+        // 按群投递
+        GROUP,
+        // 群成员变更，接收节点更新已加载的群成员索引
+        GROUP_MEMBER,
+        // 在线状态(见 PresenceDirectory)：向负责节点上报上线/下线、订阅，负责节点推送某用户所在的节点
+        PRESENCE_UP, PRESENCE_DOWN, PRESENCE_SUBSCRIBE, PRESENCE_STATE
+    }
+
+    private final Kind kind;
+    private final String origin;
+    private final ChatMessage message;
+    private final String text;
+    private final long groupId;
+    private final long userId;
+    private final List<String> nodes;
+    private final long senderId;
+    private final String senderNickname;
+
+    ClusterMessage(Kind kind, String origin, ChatMessage message, String text, long groupId, long userId) {
+        this(kind, origin, message, text, groupId, userId, Collections.<String>emptyList(), 0, null);
+    }
+
+    ClusterMessage(Kind kind, String origin, ChatMessage message, String text, long groupId, long userId,
+                   List<String> nodes) {
+        this(kind, origin, message, text, groupId, userId, nodes, 0, null);
+    }
+
+    ClusterMessage(Kind kind, String origin, ChatMessage message, String text, long groupId, long userId,
+                   long senderId, String senderNickname) {
+        this(kind, origin, message, text, groupId, userId, Collections.<String>emptyList(), senderId, senderNickname);
+    }
+
+    private ClusterMessage(Kind kind, String origin, ChatMessage message, String text, long groupId, long userId,
+                           List<String> nodes, long senderId, String senderNickname) {
+        this.kind = kind;
+        this.origin = origin;
+        this.message = message;
+        this.text = text;
+        this.groupId = groupId;
+        this.userId = userId;
+        this.nodes = nodes;
+        this.senderId = senderId;
+        this.senderNickname = senderNickname;
+    }
+
+    /**
+     * 广播消息；系统通知(isSystemNotice)在接收节点同样可被优先丢弃
+     */
+    public static ClusterMessage broadcast(String origin, OutboundMessage outbound) {
+        Kind kind = outbound.isSystemNotice() ? Kind.NOTICE : Kind.BROADCAST;
+        return new ClusterMessage(kind, origin, outbound.getMessage(), outbound.getText(), 0, 0);
+    }
+
+    public static ClusterMessage privateMessage(String origin, ChatMessage message, String text, long toUserId) {
+        return new ClusterMessage(Kind.PRIVATE, origin, message, text, 0, toUserId);
+    }
+
+    public static ClusterMessage privateViaOwner(String origin, ChatMessage message, String text, long toUserId) {
+        return new ClusterMessage(Kind.PRIVATE_VIA_OWNER, origin, message, text, 0, toUserId);
+    }
+
+    /**
+     * 转发给接收者所在节点的同一条私聊(负责节点转发时使用)
+     */
+    public ClusterMessage asDirectPrivate() {
+        return new ClusterMessage(Kind.PRIVATE, origin, message, text, 0, userId);
+    }
+
+    public static ClusterMessage group(String origin, ChatMessage message, String text, UserDao.Identity sender) {
+        return new ClusterMessage(Kind.GROUP, origin, message, text, message.getGroupId(), 0,
+                sender.getId(), sender.getNickname());
+    }
+
+    public static ClusterMessage groupMember(String origin, long groupId, long userId) {
+        return new ClusterMessage(Kind.GROUP_MEMBER, origin, null, null, groupId, userId);
+    }
+
+    public static ClusterMessage presence(String origin, long userId, boolean online) {
+        return new ClusterMessage(online ? Kind.PRESENCE_UP : Kind.PRESENCE_DOWN, origin, null, null, 0, userId);
+    }
+
+    public static ClusterMessage subscribe(String origin, long userId) {
+        return new ClusterMessage(Kind.PRESENCE_SUBSCRIBE, origin, null, null, 0, userId);
+    }
+
+    public static ClusterMessage presenceState(String origin, long userId, List<String> nodes) {
+        return new ClusterMessage(Kind.PRESENCE_STATE, origin, null, null, 0, userId, nodes);
+    }
+
+    /**
+     * 还原为本地发送用的出站消息，每次调用新建实例，调用方在本地扇出时共享
+     */
+    public OutboundMessage toOutbound() {
+        if (kind == Kind.NOTICE) {
+            return OutboundMessage.systemNotice(text);
+        }
+        return OutboundMessage.chat(message, text);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public ChatMessage getMessage() {
+        return message;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getGroupId() {
+        return groupId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * 群聊：发送者的用户ID，其他消息为 0
+     */
+    public long getSenderId() {
+        return senderId;
+    }
+
+    public String getSenderNickname() {
+        return senderNickname;
+    }
+
+    /**
+     * PRESENCE_STATE：用户当前在线的节点
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " from " + origin + (message != null ? " by " + message.getFromUser() : "");
+    }
+}
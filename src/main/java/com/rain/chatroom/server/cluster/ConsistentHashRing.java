@@ -0,0 +1,82 @@
+package com.rain.chatroom.server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 一致性哈希环 - 为用户选出负责节点
+ *
+ * 设计思路：
+ * 1. 每个节点在环上放 virtualNodes 个虚拟节点，节点之间的负载差异随虚拟节点数增加而减小
+ * 2. 构建时把环展开成 2^14 个槽位，槽位归属为槽位起点顺时针方向的第一个虚拟节点；
+ *    查询只做一次哈希和一次数组访问。节点增减时只有受影响的槽位换主，其余用户的负责节点不变
+ * 3. 实例不可变，成员变化时整体替换；所有节点对同一成员集合算出相同的结果
+ */
+public final class ConsistentHashRing {
+    private static final int SLOT_BITS = 14;
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+    private final List<String> members;
+    private final String[] slots;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+        this.slots = new String[SLOT_COUNT];
+        if (members.isEmpty()) {
+            return;
+        }
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // 哈希冲突时按节点ID排序靠前的保留，保证各节点结果一致
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            long start = (long) slot << (64 - SLOT_BITS);
+            // 环上位置是无符号 64 位数，异或 Long.MIN_VALUE 后按有符号顺序比较
+            Long key = ring.ceilingKey(start ^ Long.MIN_VALUE);
+            slots[slot] = ring.get(key != null ? key : ring.firstKey());
+        }
+    }
+
+    /**
+     * 用户的负责节点；环为空时返回 null
+     */
+    public String ownerOf(long userId) {
+        return slots[(int) (mix(userId) >>> (64 - SLOT_BITS))];
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public boolean contains(String node) {
+        return members.contains(node);
+    }
+
+    // 虚拟节点在环上的位置，已偏移 Long.MIN_VALUE，可以直接按有符号顺序排列
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h) ^ Long.MIN_VALUE;
+    }
+
+    // 64 位整数的雪崩混合(MurmurHash3 fmix64)，相邻的用户ID也会均匀分散
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
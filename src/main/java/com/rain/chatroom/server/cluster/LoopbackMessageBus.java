@@ -0,0 +1,166 @@
+package com.rain.chatroom.server.cluster;
+
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内总线 - 同一 JVM 里的多个节点(多个 ChatServer 实例)通过 Hub 互相投递
+ *
+ * 消息对象直接传递，不编码；每个节点有一个有界收件箱和一个投递线程，
+ * 投递线程一次取出积压的一批消息依次处理。收件箱满时丢弃新消息
+ */
+@Slf4j
+public class LoopbackMessageBus implements MessageBus {
+    private static final Hub DEFAULT_HUB = new Hub();
+
+    /**
+     * 加入同一个 Hub 的节点组成一个集群
+     */
+    public static final class Hub {
+        private final List<LoopbackMessageBus> members = new CopyOnWriteArrayList<>();
+
+        private void fireMembershipChanged() {
+            for (LoopbackMessageBus member : members) {
+                for (Runnable listener : member.membershipListeners) {
+                    try {
+                        listener.run();
+                    } catch (Exception e) {
+                        log.error("处理节点变化失败: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private final String nodeId;
+    private final Hub hub;
+    private final BlockingQueue<ClusterMessage> inbox;
+    private final int batchSize;
+    private final List<Runnable> membershipListeners = new CopyOnWriteArrayList<>();
+    private volatile Consumer<ClusterMessage> handler;
+    private volatile Thread deliveryThread;
+
+    public LoopbackMessageBus(String nodeId, int queueCapacity, int batchSize) {
+        this(nodeId, DEFAULT_HUB, queueCapacity, batchSize);
+    }
+
+    public LoopbackMessageBus(String nodeId, Hub hub, int queueCapacity, int batchSize) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+        this.inbox = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Consumer<ClusterMessage> handler) {
+        this.handler = handler;
+        Thread thread = new Thread(this::deliverLoop, "cluster-loopback-" + nodeId);
+        thread.setDaemon(true);
+        deliveryThread = thread;
+        thread.start();
+        hub.members.add(this);
+        log.info("节点 {} 加入进程内集群, 当前节点数: {}", nodeId, hub.members.size());
+        hub.fireMembershipChanged();
+    }
+
+    @Override
+    public boolean publish(ClusterMessage message) {
+        boolean accepted = false;
+        for (LoopbackMessageBus member : hub.members) {
+            if (member == this) {
+                continue;
+            }
+            if (member.inbox.offer(message)) {
+                ServerMetrics.CLUSTER_OUT.increment();
+                accepted = true;
+            } else {
+                ServerMetrics.CLUSTER_DROPPED.increment();
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        for (LoopbackMessageBus member : hub.members) {
+            if (member != this && member.nodeId.equals(nodeId)) {
+                if (member.inbox.offer(message)) {
+                    ServerMetrics.CLUSTER_OUT.increment();
+                    return true;
+                }
+                break;
+            }
+        }
+        ServerMetrics.CLUSTER_DROPPED.increment();
+        return false;
+    }
+
+    @Override
+    public Set<String> getPeers() {
+        Set<String> peers = new HashSet<>();
+        for (LoopbackMessageBus member : hub.members) {
+            if (member != this) {
+                peers.add(member.nodeId);
+            }
+        }
+        return Collections.unmodifiableSet(peers);
+    }
+
+    @Override
+    public int getPeerCount() {
+        return hub.members.size() - (hub.members.contains(this) ? 1 : 0);
+    }
+
+    @Override
+    public void addMembershipListener(Runnable listener) {
+        membershipListeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        if (hub.members.remove(this)) {
+            hub.fireMembershipChanged();
+        }
+        Thread thread = deliveryThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void deliverLoop() {
+        List<ClusterMessage> batch = new ArrayList<>(batchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(inbox.take());
+                inbox.drainTo(batch, batchSize - 1);
+                ServerMetrics.CLUSTER_BATCHES.increment();
+                for (ClusterMessage message : batch) {
+                    ServerMetrics.CLUSTER_IN.increment();
+                    try {
+                        handler.accept(message);
+                    } catch (Exception e) {
+                        log.error("处理节点消息失败: {}, {}", message, e.getMessage(), e);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.rain.chatroom.server.cluster;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 节点间消息总线
+ *
+ * 每个节点先在本地扇出，再把消息发布到总线；其他节点收到后只投递给自己的本地会话，不再转发。
+ * 发布是异步的，不阻塞调用线程；总线负责把发往同一节点的消息攒批发送。
+ * 同一发布节点的消息按发布顺序送达，节点断开期间的消息直接丢弃，不做重传
+ */
+public interface MessageBus {
+
+    String getNodeId();
+
+    /**
+     * 开始收发，handler 在总线的接收线程上调用，应尽快返回
+     */
+    void start(Consumer<ClusterMessage> handler) throws IOException;
+
+    /**
+     * 发布给所有其他节点；返回是否至少交给了一个节点(没有可用节点时返回 false)
+     */
+    boolean publish(ClusterMessage message);
+
+    /**
+     * 只发给指定节点；节点不可用或队列已满时返回 false
+     */
+    boolean send(String nodeId, ClusterMessage message);
+
+    /**
+     * 当前可以发送的其他节点ID(不含本节点)
+     */
+    Set<String> getPeers();
+
+    /**
+     * 当前可以发送的节点数
+     */
+    int getPeerCount();
+
+    /**
+     * 节点加入或离开(getPeers 的结果变化)时回调，在总线线程上执行
+     */
+    void addMembershipListener(Runnable listener);
+
+    void close();
+}
@@ -0,0 +1,282 @@
+package com.rain.chatroom.server.cluster;
+
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.manager.SessionListener;
+import com.rain.chatroom.server.manager.SessionManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 集群在线状态目录 - 用户在哪些节点上在线
+ *
+ * 设计思路：
+ * 1. 用户按一致性哈希分配给负责节点(owner)，负责节点保存该用户在线的节点集合，是权威数据
+ * 2. 用户在某节点上线/最后一个会话下线时，该节点向负责节点上报一次；负责节点是自己时直接更新
+ * 3. 关心某用户的节点(本地有他的好友，或给他发过私聊)向负责节点订阅，负责节点回复当前状态，
+ *    之后状态变化时主动推送；订阅的结果缓存在本地，查询只读内存，不访问数据库
+ * 4. 节点加入/离开时重建哈希环：离开节点的在线记录和订阅被清除，负责节点变化的用户由所在节点重新上报，
+ *    订阅方重新订阅；成员变化期间各节点视图可能短暂不一致，随后收敛
+ *
+ * 负责节点一侧的读写都是登录/下线/订阅这类低频事件，用一把锁串行化；订阅缓存的查询不加锁。
+ * 订阅缓存不主动淘汰，规模受本节点用户的好友和私聊对象数量限制
+ */
+@Slf4j
+public class PresenceDirectory implements SessionListener {
+    // 已发出订阅、尚未收到状态
+    private static final Set<String> PENDING = Collections.unmodifiableSet(new HashSet<String>());
+
+    private final SessionManager sessionManager;
+    private final MessageBus bus;
+    private final String nodeId;
+    private final int virtualNodes;
+    private final Object ownerLock = new Object();
+    private volatile ConsistentHashRing ring;
+
+    // 本节点负责的用户：用户ID -> 在线节点和订阅节点
+    private final Map<Long, Entry> owned = new ConcurrentHashMap<>();
+    // 其他节点负责、本节点订阅的用户：用户ID -> 在线节点(不可变集合)
+    private final ConcurrentMap<Long, Set<String>> cache = new ConcurrentHashMap<>();
+
+    public PresenceDirectory(SessionManager sessionManager, MessageBus bus, int virtualNodes) {
+        this.sessionManager = sessionManager;
+        this.bus = bus;
+        this.nodeId = bus.getNodeId();
+        this.virtualNodes = virtualNodes;
+        this.ring = new ConsistentHashRing(Collections.singleton(nodeId), virtualNodes);
+        bus.addMembershipListener(this::onMembershipChanged);
+    }
+
+    public String ownerOf(long userId) {
+        return ring.ownerOf(userId);
+    }
+
+    public boolean isOwner(long userId) {
+        return nodeId.equals(ownerOf(userId));
+    }
+
+    /**
+     * 用户是否在集群中的任一节点在线；未订阅的其他节点用户只按本节点判断
+     */
+    public boolean isOnline(Long userId) {
+        if (sessionManager.isUserOnline(userId)) {
+            return true;
+        }
+        Set<String> remote = remoteNodesOf(userId);
+        return remote != null && !remote.isEmpty();
+    }
+
+    /**
+     * 用户在线的其他节点(不含本节点)；本节点既不负责也未订阅该用户时返回 null
+     */
+    public Set<String> remoteNodesOf(long userId) {
+        Set<String> nodes;
+        if (isOwner(userId)) {
+            synchronized (ownerLock) {
+                Entry entry = owned.get(userId);
+                nodes = entry != null ? new HashSet<>(entry.nodes) : Collections.<String>emptySet();
+            }
+        } else {
+            nodes = cache.get(userId);
+            if (nodes == null || nodes == PENDING) {
+                return null;
+            }
+        }
+        if (!nodes.contains(nodeId)) {
+            return nodes;
+        }
+        Set<String> remote = new HashSet<>(nodes);
+        remote.remove(nodeId);
+        return remote;
+    }
+
+    public void subscribe(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            subscribe(userId);
+        }
+    }
+
+    /**
+     * 订阅用户的在线状态；本节点负责的用户不需要订阅
+     */
+    public void subscribe(long userId) {
+        String owner = ownerOf(userId);
+        if (nodeId.equals(owner) || cache.putIfAbsent(userId, PENDING) != null) {
+            return;
+        }
+        if (!bus.send(owner, ClusterMessage.subscribe(nodeId, userId))) {
+            // 负责节点不可用，下次用到时重试
+            cache.remove(userId, PENDING);
+        }
+    }
+
+    public int getOwnedCount() {
+        return owned.size();
+    }
+
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    // ========== 本地上下线 ==========
+
+    @Override
+    public void onUserOnline(ClientSession session) {
+        report(session.getUser().getId());
+    }
+
+    @Override
+    public void onUserOffline(ClientSession session) {
+        report(session.getUser().getId());
+    }
+
+    // 上报当前状态而不是事件本身，多端登录时并发的上下线也能以最后一次上报为准
+    private void report(long userId) {
+        boolean online = sessionManager.isUserOnline(userId);
+        String owner = ownerOf(userId);
+        if (nodeId.equals(owner)) {
+            applyPresence(userId, nodeId, online);
+        } else {
+            bus.send(owner, ClusterMessage.presence(nodeId, userId, online));
+        }
+    }
+
+    // ========== 节点间消息 ==========
+
+    /**
+     * 处理在线状态相关的节点消息，其他消息返回 false
+     */
+    public boolean onClusterMessage(ClusterMessage message) {
+        switch (message.getKind()) {
+            case PRESENCE_UP:
+            case PRESENCE_DOWN:
+                applyPresence(message.getUserId(), message.getOrigin(),
+                        message.getKind() == ClusterMessage.Kind.PRESENCE_UP);
+                return true;
+            case PRESENCE_SUBSCRIBE:
+                onSubscribe(message.getUserId(), message.getOrigin());
+                return true;
+            case PRESENCE_STATE:
+                cache.put(message.getUserId(), Collections.unmodifiableSet(new HashSet<>(message.getNodes())));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void applyPresence(long userId, String node, boolean online) {
+        synchronized (ownerLock) {
+            Entry entry = owned.get(userId);
+            if (entry == null) {
+                if (!online) {
+                    return;
+                }
+                entry = new Entry();
+                owned.put(userId, entry);
+            }
+            boolean changed = online ? entry.nodes.add(node) : entry.nodes.remove(node);
+            if (changed) {
+                push(userId, entry);
+            }
+            removeIfEmpty(userId, entry);
+        }
+    }
+
+    private void onSubscribe(long userId, String subscriber) {
+        synchronized (ownerLock) {
+            Entry entry = owned.get(userId);
+            if (entry == null) {
+                entry = new Entry();
+                owned.put(userId, entry);
+            }
+            entry.subscribers.add(subscriber);
+            bus.send(subscriber, ClusterMessage.presenceState(nodeId, userId, new ArrayList<>(entry.nodes)));
+        }
+    }
+
+    // 调用方持有 ownerLock
+    private void push(long userId, Entry entry) {
+        if (entry.subscribers.isEmpty()) {
+            return;
+        }
+        ClusterMessage state = ClusterMessage.presenceState(nodeId, userId, new ArrayList<>(entry.nodes));
+        for (String subscriber : entry.subscribers) {
+            bus.send(subscriber, state);
+        }
+    }
+
+    private void removeIfEmpty(long userId, Entry entry) {
+        if (entry.nodes.isEmpty() && entry.subscribers.isEmpty()) {
+            owned.remove(userId);
+        }
+    }
+
+    // ========== 成员变化 ==========
+
+    private void onMembershipChanged() {
+        synchronized (ownerLock) {
+            Set<String> members = new HashSet<>(bus.getPeers());
+            members.add(nodeId);
+            ConsistentHashRing previous = ring;
+            if (members.equals(new HashSet<>(previous.getMembers()))) {
+                return;
+            }
+            ConsistentHashRing next = new ConsistentHashRing(members, virtualNodes);
+            ring = next;
+
+            // 离开的节点：清除它的在线记录和订阅；不再由本节点负责的用户交给新负责节点(所在节点会重新上报)
+            Iterator<Map.Entry<Long, Entry>> it = owned.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Entry> e = it.next();
+                Entry entry = e.getValue();
+                entry.subscribers.retainAll(members);
+                if (!nodeId.equals(next.ownerOf(e.getKey()))) {
+                    it.remove();
+                    continue;
+                }
+                if (entry.nodes.retainAll(members)) {
+                    push(e.getKey(), entry);
+                }
+                if (entry.nodes.isEmpty() && entry.subscribers.isEmpty()) {
+                    it.remove();
+                }
+            }
+            for (Map.Entry<Long, Set<String>> e : cache.entrySet()) {
+                if (e.getValue() != PENDING && !members.containsAll(e.getValue())) {
+                    Set<String> nodes = new HashSet<>(e.getValue());
+                    nodes.retainAll(members);
+                    e.setValue(Collections.unmodifiableSet(nodes));
+                }
+            }
+
+            // 负责节点变化的本地在线用户重新上报
+            for (Long userId : sessionManager.getOnlineUserIds()) {
+                if (!next.ownerOf(userId).equals(previous.ownerOf(userId))) {
+                    report(userId);
+                }
+            }
+
+            // 负责节点变化的订阅重新订阅；改由本节点负责的直接使用本地条目
+            for (Long userId : new ArrayList<>(cache.keySet())) {
+                if (!next.ownerOf(userId).equals(previous.ownerOf(userId))) {
+                    cache.remove(userId);
+                    subscribe(userId);
+                }
+            }
+            log.info("集群成员变化: {}, 负责用户: {}, 订阅用户: {}", next.getMembers(), owned.size(), cache.size());
+        }
+    }
+
+    private static final class Entry {
+        private final Set<String> nodes = new HashSet<>();
+        private final Set<String> subscribers = new HashSet<>();
+    }
+}
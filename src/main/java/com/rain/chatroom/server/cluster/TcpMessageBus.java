@@ -0,0 +1,389 @@
+package com.rain.chatroom.server.cluster;
+
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * TCP 点对点总线 - 全互联，每个节点监听 cluster.port，并主动连接 cluster.peers 中的每个节点
+ *
+ * 设计思路：
+ * 1. 连接单向使用：主动连接只用于发送，接受的连接只用于接收，两个节点之间各有一条，不需要协商谁保留连接
+ * 2. 每个对端一个有界发送队列 + 一个发送线程；发送线程取出积压的一批消息，
+ *    写入与 maxBatchBytes 等大的缓冲区后只 flush 一次，高负载时一次系统调用携带多条消息
+ * 3. 一条消息只编码一次，各对端共享同一个字节数组
+ * 4. 对端未连接或队列已满时丢弃消息并计数，断线后按 reconnectMillis 间隔重连
+ * 5. 握手时接收方回复自己的节点ID，发送方据此建立 节点ID -> 连接 的映射；
+ *    发送连接空闲时按 reconnectMillis 间隔发送心跳帧，对端宕机时能及时发现并通知成员变化
+ */
+@Slf4j
+public class TcpMessageBus implements MessageBus {
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private final String nodeId;
+    private final int listenPort;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final int maxBatchBytes;
+    private final int maxFrameBytes;
+    private final long reconnectMillis;
+    private final List<PeerLink> links = new ArrayList<>();
+    // 已完成握手的发送连接
+    private final Map<String, PeerLink> linksByNode = new ConcurrentHashMap<>();
+    private final List<Runnable> membershipListeners = new CopyOnWriteArrayList<>();
+    private final List<Socket> inbound = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inboundIds = new AtomicInteger();
+
+    private volatile boolean running;
+    private volatile ServerSocket serverSocket;
+    private volatile Consumer<ClusterMessage> handler;
+
+    public TcpMessageBus(String nodeId, int listenPort, List<InetSocketAddress> peers, int queueCapacity,
+                         int batchSize, int maxBatchBytes, int maxFrameBytes, long reconnectMillis) {
+        this.nodeId = nodeId;
+        this.listenPort = listenPort;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxFrameBytes = maxFrameBytes;
+        this.reconnectMillis = reconnectMillis;
+        for (InetSocketAddress peer : peers) {
+            links.add(new PeerLink(peer));
+        }
+    }
+
+    /**
+     * 解析 "host:port,host:port" 形式的节点列表
+     */
+    public static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String peer = part.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("节点地址格式应为 host:port: " + peer);
+            }
+            peers.add(InetSocketAddress.createUnresolved(peer.substring(0, colon),
+                    Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return peers;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Consumer<ClusterMessage> handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(listenPort);
+        running = true;
+        startThread(this::acceptLoop, "cluster-accept");
+        for (PeerLink link : links) {
+            startThread(link::run, "cluster-send-" + link.address);
+        }
+        log.info("节点 {} 监听集群端口: {}, 对端: {}", nodeId, listenPort, links.size());
+    }
+
+    @Override
+    public boolean publish(ClusterMessage message) {
+        if (links.isEmpty()) {
+            return false;
+        }
+        byte[] frame = null;
+        boolean accepted = false;
+        for (PeerLink link : links) {
+            if (!link.connected) {
+                ServerMetrics.CLUSTER_DROPPED.increment();
+                continue;
+            }
+            if (frame == null) {
+                frame = ClusterCodec.encode(message);
+            }
+            if (link.queue.offer(frame)) {
+                ServerMetrics.CLUSTER_OUT.increment();
+                accepted = true;
+            } else {
+                ServerMetrics.CLUSTER_DROPPED.increment();
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        PeerLink link = linksByNode.get(nodeId);
+        if (link == null || !link.connected) {
+            ServerMetrics.CLUSTER_DROPPED.increment();
+            return false;
+        }
+        if (link.queue.offer(ClusterCodec.encode(message))) {
+            ServerMetrics.CLUSTER_OUT.increment();
+            return true;
+        }
+        ServerMetrics.CLUSTER_DROPPED.increment();
+        return false;
+    }
+
+    @Override
+    public Set<String> getPeers() {
+        return Collections.unmodifiableSet(new HashSet<>(linksByNode.keySet()));
+    }
+
+    @Override
+    public int getPeerCount() {
+        return linksByNode.size();
+    }
+
+    @Override
+    public void addMembershipListener(Runnable listener) {
+        membershipListeners.add(listener);
+    }
+
+    private void fireMembershipChanged() {
+        for (Runnable listener : membershipListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("处理节点变化失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (PeerLink link : links) {
+            link.close();
+        }
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // ========== 接收 ==========
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                startThread(() -> receive(socket), "cluster-recv-" + inboundIds.incrementAndGet());
+            } catch (IOException e) {
+                if (running) {
+                    log.error("接受节点连接失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void receive(Socket socket) {
+        String peer = String.valueOf(socket.getRemoteSocketAddress());
+        try (InputStream stream = socket.getInputStream()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, maxBatchBytes));
+            if (in.readInt() != ClusterCodec.MAGIC) {
+                log.warn("拒绝非集群连接: {}", peer);
+                return;
+            }
+            BinaryFrame hello = readFrame(in);
+            String remoteNode = hello != null ? ClusterCodec.readHello(hello) : null;
+            if (remoteNode == null) {
+                log.warn("节点握手失败: {}", peer);
+                return;
+            }
+            peer = remoteNode;
+            OutputStream out = socket.getOutputStream();
+            out.write(ClusterCodec.hello(nodeId));
+            out.flush();
+            log.info("节点 {} 已连接(接收)", peer);
+
+            BinaryFrame frame;
+            while ((frame = readFrame(in)) != null) {
+                if (frame.getOpcode() == ClusterCodec.OP_PING) {
+                    continue;
+                }
+                ClusterMessage message = ClusterCodec.decode(frame);
+                ServerMetrics.CLUSTER_IN.increment();
+                try {
+                    handler.accept(message);
+                } catch (Exception e) {
+                    log.error("处理节点消息失败: {}, {}", message, e.getMessage(), e);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            if (running) {
+                log.warn("节点 {} 接收连接断开: {}", peer, e.getMessage());
+            }
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // 读取一个完整的帧，连接正常关闭时返回 null
+    private BinaryFrame readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0 || length > maxFrameBytes) {
+            throw new IOException("节点消息长度非法: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return BinaryFrame.wrap(data, 0, length);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("关闭集群连接失败: {}", e.getMessage());
+        }
+    }
+
+    // ========== 发送 ==========
+
+    private final class PeerLink {
+        private final InetSocketAddress address;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private volatile boolean connected;
+        private volatile Socket socket;
+        private String remoteNode;
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void run() {
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            while (running) {
+                try (Socket connection = new Socket()) {
+                    socket = connection;
+                    connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                            CONNECT_TIMEOUT_MILLIS);
+                    connection.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(connection.getOutputStream(), maxBatchBytes));
+                    out.writeInt(ClusterCodec.MAGIC);
+                    out.write(ClusterCodec.hello(nodeId));
+                    out.flush();
+                    remoteNode = readHelloReply(connection);
+                    // 断线期间的消息已丢弃，连接前可能残留的也一并清掉
+                    queue.clear();
+                    connected = true;
+                    linksByNode.put(remoteNode, this);
+                    log.info("已连接节点 {}({})", remoteNode, address);
+                    fireMembershipChanged();
+
+                    byte[] ping = ClusterCodec.ping();
+                    while (running) {
+                        byte[] first = queue.poll(reconnectMillis, TimeUnit.MILLISECONDS);
+                        if (first == null) {
+                            out.write(ping);
+                            out.flush();
+                            continue;
+                        }
+                        batch.add(first);
+                        queue.drainTo(batch, batchSize - 1);
+                        for (byte[] frame : batch) {
+                            out.write(frame);
+                        }
+                        out.flush();
+                        ServerMetrics.CLUSTER_BATCHES.increment();
+                        batch.clear();
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        if (connected) {
+                            log.warn("节点 {} 连接断开: {}", address, e.getMessage());
+                        } else {
+                            log.debug("连接节点 {} 失败: {}", address, e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    boolean wasConnected = connected;
+                    connected = false;
+                    ServerMetrics.CLUSTER_DROPPED.add(batch.size());
+                    batch.clear();
+                    if (wasConnected && linksByNode.remove(remoteNode, this)) {
+                        fireMembershipChanged();
+                    }
+                }
+                if (running) {
+                    try {
+                        Thread.sleep(reconnectMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        // 握手应答：对端的节点ID
+        private String readHelloReply(Socket connection) throws IOException {
+            connection.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            BinaryFrame reply = readFrame(new DataInputStream(connection.getInputStream()));
+            String remote = reply != null ? ClusterCodec.readHello(reply) : null;
+            if (remote == null) {
+                throw new IOException("节点握手应答无效");
+            }
+            connection.setSoTimeout(0);
+            return remote;
+        }
+
+        void close() {
+            connected = false;
+            closeQuietly(socket);
+            // 唤醒阻塞在空队列上的发送线程
+            queue.offer(new byte[0]);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.rain.chatroom.server.command;
+
+import lombok.Getter;
+
+/**
+ * 命令参数声明 - 必填/可选参数个数，最后一个参数是否取整行剩余部分
+ *
+ * 例如 /msg 用户名 消息内容：ArgSchema.of(2, 0, true, "/msg 用户名 消息内容")，
+ * 消息内容中的空格保留原样
+ */
+@Getter
+public final class ArgSchema {
+    private static final ArgSchema NONE = new ArgSchema(0, 0, false, null);
+
+    private final int required;
+    private final int optional;
+    private final boolean restOfLine;
+    private final String usage;
+
+    private ArgSchema(int required, int optional, boolean restOfLine, String usage) {
+        this.required = required;
+        this.optional = optional;
+        this.restOfLine = restOfLine;
+        this.usage = usage;
+    }
+
+    public static ArgSchema none() {
+        return NONE;
+    }
+
+    public static ArgSchema of(int required, int optional, boolean restOfLine, String usage) {
+        if (required < 0 || optional < 0 || required + optional == 0 && restOfLine) {
+            throw new IllegalArgumentException("非法的参数声明: " + usage);
+        }
+        return new ArgSchema(required, optional, restOfLine, usage);
+    }
+
+    public int getMaxArgs() {
+        return required + optional;
+    }
+}
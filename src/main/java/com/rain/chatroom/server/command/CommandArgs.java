@@ -0,0 +1,105 @@
+package com.rain.chatroom.server.command;
+
+/**
+ * 解析后的命令参数 - 只记录各参数在原始输入中的起止位置，不切分字符串
+ *
+ * 按 ArgSchema 的最大参数个数解析：参数之间以一个或多个空格分隔，
+ * 声明了 restOfLine 时最后一个参数取剩余的整段内容；多余的输入被忽略。
+ * 只有处理函数真正需要 String 时(get)才截取子串，数字参数可直接从原始输入解析(getLong)
+ */
+public final class CommandArgs {
+    private final String input;
+    // bounds[2i] / bounds[2i+1] 为第 i 个参数的起止位置
+    private final int[] bounds;
+    private final int count;
+
+    private CommandArgs(String input, int[] bounds, int count) {
+        this.input = input;
+        this.bounds = bounds;
+        this.count = count;
+    }
+
+    /**
+     * 从 offset 开始按 schema 解析参数
+     */
+    public static CommandArgs parse(String input, int offset, ArgSchema schema) {
+        int max = schema.getMaxArgs();
+        int[] bounds = new int[max * 2];
+        int count = 0;
+        int length = input.length();
+        int pos = offset;
+        while (count < max) {
+            while (pos < length && input.charAt(pos) == ' ') {
+                pos++;
+            }
+            if (pos >= length) {
+                break;
+            }
+            int start = pos;
+            if (schema.isRestOfLine() && count == max - 1) {
+                pos = length;
+            } else {
+                while (pos < length && input.charAt(pos) != ' ') {
+                    pos++;
+                }
+            }
+            bounds[count * 2] = start;
+            bounds[count * 2 + 1] = pos;
+            count++;
+        }
+        return new CommandArgs(input, bounds, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean has(int index) {
+        return index < count;
+    }
+
+    /**
+     * 第 index 个参数，不存在时返回空串
+     */
+    public String get(int index) {
+        return index < count ? input.substring(bounds[index * 2], bounds[index * 2 + 1]) : "";
+    }
+
+    /**
+     * 不截取子串直接解析整数参数，不存在或格式错误时抛出 NumberFormatException
+     */
+    public long getLong(int index) {
+        if (index >= count) {
+            throw new NumberFormatException("缺少参数");
+        }
+        int pos = bounds[index * 2];
+        int end = bounds[index * 2 + 1];
+        boolean negative = input.charAt(pos) == '-';
+        if (negative || input.charAt(pos) == '+') {
+            pos++;
+        }
+        if (pos == end || end - pos > 18) {
+            throw new NumberFormatException("非法的数字: " + get(index));
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = input.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("非法的数字: " + get(index));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 第 index 个参数是否以指定字符开头，不截取子串
+     */
+    public boolean startsWith(int index, char c) {
+        return index < count && input.charAt(bounds[index * 2]) == c;
+    }
+
+    public String getInput() {
+        return input;
+    }
+}
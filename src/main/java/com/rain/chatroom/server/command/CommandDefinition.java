@@ -0,0 +1,27 @@
+package com.rain.chatroom.server.command;
+
+import lombok.Getter;
+
+/**
+ * 一条已注册的命令：名称(含别名)、参数声明、执行类型和处理函数
+ */
+@Getter
+public final class CommandDefinition {
+    private final String name;
+    private final String[] aliases;
+    private final ArgSchema schema;
+    private final CommandType type;
+    private final CommandHandler handler;
+
+    public CommandDefinition(String name, ArgSchema schema, CommandType type, CommandHandler handler,
+                             String... aliases) {
+        if (!name.startsWith("/")) {
+            throw new IllegalArgumentException("命令名必须以 / 开头: " + name);
+        }
+        this.name = name;
+        this.aliases = aliases;
+        this.schema = schema;
+        this.type = type;
+        this.handler = handler;
+    }
+}
@@ -0,0 +1,104 @@
+package com.rain.chatroom.server.command;
+
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.manager.StripedExecutor;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 命令分发 - 解析命令行、校验参数，按命令类型选择执行线程
+ *
+ * 设计思路：
+ * 1. 命令名在原始输入上直接查表，参数只记录位置，解析过程不产生中间数组和子串
+ * 2. CPU 型命令直接在读线程/事件循环上执行
+ * 3. IO 型命令交给命令执行器，读循环不会因为等待数据库而阻塞；回复通过会话发送队列异步写出
+ * 4. 命令执行器(数据库舱壁)按会话分条带(每条一个线程)，同一会话的命令按提交顺序执行，
+ *    例如 /addfriend 之后的 /friends 一定能看到新好友；队列满时直接回复繁忙，不在读线程上降级执行
+ */
+@Slf4j
+public class CommandDispatcher {
+    private final CommandRegistry registry;
+    private final StripedExecutor ioExecutor;
+
+    private final LongAdder cpuCount = new LongAdder();
+    private final LongAdder ioCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public CommandDispatcher(CommandRegistry registry, StripedExecutor ioExecutor) {
+        this.registry = registry;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * 分发一行以 / 开头的命令
+     */
+    public void dispatch(ClientSession session, String line) {
+        long start = System.nanoTime();
+        int nameEnd = line.indexOf(' ');
+        if (nameEnd < 0) {
+            nameEnd = line.length();
+        }
+        CommandDefinition command = registry.lookup(line, 0, nameEnd);
+        if (command == null) {
+            session.sendMessage("[系统] 未知命令: " + line.substring(0, nameEnd) + "，输入 /help 查看帮助");
+            return;
+        }
+
+        ArgSchema schema = command.getSchema();
+        CommandArgs args = CommandArgs.parse(line, nameEnd, schema);
+        ServerMetrics.PARSE.recordSince(start);
+        if (args.size() < schema.getRequired()) {
+            session.sendMessage("[系统] 用法: " + schema.getUsage());
+            return;
+        }
+
+        if (command.getType() == CommandType.IO) {
+            ioCount.increment();
+            executeIo(session, () -> execute(command, session, args));
+        } else {
+            cpuCount.increment();
+            execute(command, session, args);
+        }
+    }
+
+    /**
+     * 在会话所属的命令执行线程上执行可能访问数据库的任务，与该会话的 IO 型命令保持顺序
+     */
+    public void executeIo(ClientSession session, Runnable task) {
+        try {
+            ioExecutor.execute(Long.hashCode(session.getSessionId()), () -> {
+                if (session.isActive()) {
+                    task.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            log.warn("命令执行队列已满，拒绝请求: {}", session.getUsername());
+            session.sendMessage("[系统] 服务器繁忙，请稍后重试");
+        }
+    }
+
+    private void execute(CommandDefinition command, ClientSession session, CommandArgs args) {
+        try {
+            command.getHandler().handle(session, args);
+        } catch (RuntimeException e) {
+            log.error("执行命令 {} 失败: {}", command.getName(), e.getMessage(), e);
+            session.sendMessage("[系统] 命令执行失败: " + command.getName());
+        }
+    }
+
+    public long getCpuCount() {
+        return cpuCount.sum();
+    }
+
+    public long getIoCount() {
+        return ioCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
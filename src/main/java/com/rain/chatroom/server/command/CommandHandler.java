@@ -0,0 +1,11 @@
+package com.rain.chatroom.server.command;
+
+import com.rain.chatroom.server.handler.ClientSession;
+
+/**
+ * 命令处理函数，参数已按 ArgSchema 校验过数量
+ */
+@FunctionalInterface
+public interface CommandHandler {
+    void handle(ClientSession session, CommandArgs args);
+}
@@ -0,0 +1,92 @@
+package com.rain.chatroom.server.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 命令注册表 - 按名称(忽略大小写)查找命令
+ *
+ * 查找直接在原始输入的区间上计算哈希并逐字符比较，不截取子串、不转小写；
+ * 注册只在启动阶段发生，每次注册重建一张新的开放寻址表(写时复制)，查找无锁
+ */
+public class CommandRegistry {
+    private final List<CommandDefinition> commands = new ArrayList<>();
+    private volatile Table table = new Table(16);
+
+    public synchronized void register(CommandDefinition command) {
+        Table current = table;
+        Table next = new Table(Integer.highestOneBit(Math.max(16, (current.size + 1 + command.getAliases().length) * 4)));
+        for (CommandDefinition existing : commands) {
+            next.putAll(existing);
+        }
+        next.putAll(command);
+        commands.add(command);
+        table = next;
+    }
+
+    public synchronized List<CommandDefinition> getCommands() {
+        return Collections.unmodifiableList(new ArrayList<>(commands));
+    }
+
+    /**
+     * 查找 input[start, end) 对应的命令，不存在返回 null
+     */
+    public CommandDefinition lookup(String input, int start, int end) {
+        return table.get(input, start, end);
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Table {
+        private final String[] keys;
+        private final CommandDefinition[] values;
+        private int size;
+
+        Table(int capacity) {
+            this.keys = new String[capacity];
+            this.values = new CommandDefinition[capacity];
+        }
+
+        void putAll(CommandDefinition command) {
+            put(command.getName(), command);
+            for (String alias : command.getAliases()) {
+                put(alias, command);
+            }
+        }
+
+        private void put(String name, CommandDefinition command) {
+            int mask = keys.length - 1;
+            int i = hash(name, 0, name.length()) & mask;
+            while (keys[i] != null) {
+                if (keys[i].equalsIgnoreCase(name)) {
+                    throw new IllegalStateException("命令重复注册: " + name);
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = name;
+            values[i] = command;
+            size++;
+        }
+
+        CommandDefinition get(String input, int start, int end) {
+            int length = end - start;
+            int mask = keys.length - 1;
+            int i = hash(input, start, end) & mask;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key.length() == length && key.regionMatches(true, 0, input, start, length)) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.rain.chatroom.server.command;
+
+/**
+ * 命令的执行类型 - 决定命令在哪个线程上执行
+ */
+public enum CommandType {
+    CPU,    // 只访问内存，直接在读线程/事件循环上执行
+    IO      // 可能访问数据库，交给命令执行器异步执行，结果通过会话异步回复
+}
@@ -0,0 +1,235 @@
+package com.rain.chatroom.server.config;
+
+import com.rain.chatroom.server.handler.OutboundQueue;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * 服务器配置 - 从 server.properties 加载，JVM 系统属性(-Dkey=value)优先级更高
+ */
+@Slf4j
+@Getter
+public class ServerConfig {
+    private static final String CONFIG_FILE = "server.properties";
+
+    /** 传输层实现：bio(每连接一个线程) / nio(Selector 事件循环) */
+    public enum TransportType {
+        BIO, NIO
+    }
+
+    /** 阻塞传输下的连接线程模型：platform(有界线程池) / virtual(每连接一个虚拟线程，需Java 21) */
+    public enum ThreadMode {
+        PLATFORM, VIRTUAL
+    }
+
+    /** 集群总线：none(单机) / loopback(同一JVM内的多个实例) / tcp(节点间点对点连接) */
+    public enum ClusterBusType {
+        NONE, LOOPBACK, TCP
+    }
+
+    private final Properties props;
+
+    private final int port;
+    private final TransportType transport;
+    private final ThreadMode threadMode;
+    private final int backlog;
+
+    // NIO 相关参数
+    private final int nioWorkerThreads;
+    private final int nioReadBufferSize;
+    private final int maxLineLength;
+
+    // 会话发送队列
+    private final int outboundQueueCapacity;
+    private final OutboundQueue.OverflowPolicy overflowPolicy;
+    private final int writerThreads;
+    private final int writerQueueCapacity;
+    private final long writeTimeoutMillis;
+
+    // 合并写出
+    private final boolean writeBatching;
+    private final long flushDelayMicros;
+    private final int maxBatchBytes;
+
+    // 直接内存缓冲区池
+    private final boolean bufferPoolEnabled;
+    private final int bufferPoolMaxPooledSize;
+    private final long bufferPoolMaxPoolBytes;
+    private final boolean bufferPoolLeakDetection;
+
+    // 发送频率限制(令牌桶，每秒条数/突发条数，速率为0表示不限制)
+    private final boolean rateLimitEnabled;
+    private final int rateLimitSessionRate;
+    private final int rateLimitSessionBurst;
+    private final int rateLimitUserRate;
+    private final int rateLimitUserBurst;
+    private final int rateLimitGroupRate;
+    private final int rateLimitGroupBurst;
+    private final int rateLimitGlobalRate;
+    private final int rateLimitGlobalBurst;
+
+    // 消息异步落库
+    private final boolean persistenceWriteBehind;
+    private final int persistenceQueueCapacity;
+    private final int persistenceBatchSize;
+    private final long persistenceFlushIntervalMillis;
+    private final long persistenceEnqueueTimeoutMillis;
+
+    // 用户缓存
+    private final int userCacheMaxSize;
+    private final long userCacheTtlSeconds;
+    private final long userCacheNegativeTtlSeconds;
+
+    // 本地消息日志(WAL)
+    private final boolean journalEnabled;
+    private final String journalDir;
+    private final int journalSegmentBytes;
+
+    // 热点历史消息
+    private final int historyPerConversation;
+    private final long historyMaxBytes;
+    private final int historyPageSize;
+
+    // 线程池(舱壁)
+    private final int connectionMaxThreads;
+    private final int connectionQueueCapacity;
+    private final int sessionPoolThreads;
+    private final int databaseThreads;
+    private final int databaseQueueCapacity;
+    private final int fanoutThreads;
+    private final int fanoutQueueCapacity;
+    private final int fanoutInlineThreshold;
+
+    // 离线消息投递
+    private final int offlineChunkSize;
+    private final long offlinePollIntervalMillis;
+
+    // 注册 JMX 管理接口
+    private final boolean jmxEnabled;
+
+    // 集群
+    private final ClusterBusType clusterBus;
+    private final int clusterPort;
+    private final String clusterPeers;
+    private final int clusterQueueCapacity;
+    private final int clusterBatchSize;
+    private final long clusterReconnectMillis;
+    private final int clusterVirtualNodes;
+
+    private ServerConfig(Properties props) {
+        this.props = props;
+        this.port = getInt("server.port", 8888);
+        this.transport = TransportType.valueOf(getString("server.transport", "bio").trim().toUpperCase());
+        this.threadMode = ThreadMode.valueOf(getString("server.threadMode", "platform").trim().toUpperCase());
+        this.backlog = getInt("server.backlog", 1024);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.nioWorkerThreads = getInt("nio.workerThreads", cores);
+        this.nioReadBufferSize = getInt("nio.readBufferSize", 64 * 1024);
+        this.maxLineLength = getInt("server.maxLineLength", 64 * 1024);
+
+        this.outboundQueueCapacity = getInt("session.outboundQueueCapacity", 1024);
+        this.overflowPolicy = OutboundQueue.OverflowPolicy.valueOf(
+                getString("session.overflowPolicy", "drop_oldest").trim().toUpperCase());
+        this.writerThreads = getInt("session.writerThreads", cores * 2);
+        this.writerQueueCapacity = getInt("session.writerQueueCapacity", 10000);
+        this.writeTimeoutMillis = getLong("session.writeTimeoutMillis", 10000);
+
+        this.writeBatching = getBoolean("session.writeBatching", true);
+        this.flushDelayMicros = getLong("session.flushDelayMicros", 0);
+        this.maxBatchBytes = getInt("session.maxBatchBytes", 64 * 1024);
+
+        this.bufferPoolEnabled = getBoolean("buffer.pool.enabled", true);
+        this.bufferPoolMaxPooledSize = getInt("buffer.pool.maxPooledSize", 64 * 1024);
+        this.bufferPoolMaxPoolBytes = getLong("buffer.pool.maxPoolBytes", 64L * 1024 * 1024);
+        this.bufferPoolLeakDetection = getBoolean("buffer.pool.leakDetection", false);
+
+        this.rateLimitEnabled = getBoolean("ratelimit.enabled", true);
+        this.rateLimitSessionRate = getInt("ratelimit.session.rate", 20);
+        this.rateLimitSessionBurst = getInt("ratelimit.session.burst", 40);
+        this.rateLimitUserRate = getInt("ratelimit.user.rate", 30);
+        this.rateLimitUserBurst = getInt("ratelimit.user.burst", 60);
+        this.rateLimitGroupRate = getInt("ratelimit.group.rate", 200);
+        this.rateLimitGroupBurst = getInt("ratelimit.group.burst", 400);
+        this.rateLimitGlobalRate = getInt("ratelimit.global.rate", 0);
+        this.rateLimitGlobalBurst = getInt("ratelimit.global.burst", rateLimitGlobalRate);
+
+        this.persistenceWriteBehind = getBoolean("persistence.writeBehind", true);
+        this.persistenceQueueCapacity = getInt("persistence.queueCapacity", 10000);
+        this.persistenceBatchSize = getInt("persistence.batchSize", 200);
+        this.persistenceFlushIntervalMillis = getLong("persistence.flushIntervalMillis", 50);
+        this.persistenceEnqueueTimeoutMillis = getLong("persistence.enqueueTimeoutMillis", 100);
+
+        this.userCacheMaxSize = getInt("cache.user.maxSize", 10000);
+        this.userCacheTtlSeconds = getLong("cache.user.ttlSeconds", 300);
+        this.userCacheNegativeTtlSeconds = getLong("cache.user.negativeTtlSeconds", 30);
+
+        this.journalEnabled = getBoolean("journal.enabled", false);
+        this.journalDir = getString("journal.dir", "data/journal");
+        this.journalSegmentBytes = getInt("journal.segmentBytes", 64 * 1024 * 1024);
+
+        this.historyPerConversation = getInt("cache.history.perConversation", 50);
+        this.historyMaxBytes = getLong("cache.history.maxBytes", 32L * 1024 * 1024);
+        this.historyPageSize = getInt("history.pageSize", 20);
+
+        this.connectionMaxThreads = getInt("pool.connection.maxThreads", 1000);
+        this.connectionQueueCapacity = getInt("pool.connection.queueCapacity", 0);
+        this.sessionPoolThreads = getInt("pool.session.threads", cores * 2);
+        this.databaseThreads = getInt("pool.database.threads", 8);
+        this.databaseQueueCapacity = getInt("pool.database.queueCapacity", 256);
+        this.fanoutThreads = getInt("pool.fanout.threads", cores);
+        this.fanoutQueueCapacity = getInt("pool.fanout.queueCapacity", 1024);
+        this.fanoutInlineThreshold = getInt("pool.fanout.inlineThreshold", 64);
+
+        this.offlineChunkSize = getInt("offline.chunkSize", 100);
+        this.offlinePollIntervalMillis = getLong("offline.pollIntervalMillis", 20);
+
+        this.jmxEnabled = getBoolean("jmx.enabled", true);
+
+        this.clusterBus = ClusterBusType.valueOf(getString("cluster.bus", "none").trim().toUpperCase());
+        this.clusterPort = getInt("cluster.port", port + 1000);
+        this.clusterPeers = getString("cluster.peers", "");
+        this.clusterQueueCapacity = getInt("cluster.queueCapacity", 10000);
+        this.clusterBatchSize = getInt("cluster.batchSize", 256);
+        this.clusterReconnectMillis = getLong("cluster.reconnectMillis", 1000);
+        this.clusterVirtualNodes = getInt("cluster.virtualNodes", 128);
+    }
+
+    public static ServerConfig load() {
+        Properties props = new Properties();
+        try (InputStream input = ServerConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            } else {
+                log.warn("服务器配置文件未找到，使用默认配置");
+            }
+        } catch (IOException e) {
+            log.error("加载服务器配置失败，使用默认配置: {}", e.getMessage());
+        }
+        return new ServerConfig(props);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = props.getProperty(key);
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return Integer.parseInt(getString(key, String.valueOf(defaultValue)).trim());
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return Long.parseLong(getString(key, String.valueOf(defaultValue)).trim());
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)).trim());
+    }
+}
@@ -1,47 +1,160 @@
 package com.rain.chatroom.server.config;
 
+import com.rain.chatroom.server.manager.StripedExecutor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ThreadPoolConfig {
 
-    public static ThreadPoolExecutor createChatThreadPool() {
-        int corePoolSize = Runtime.getRuntime().availableProcessors();
-        int maxPoolSize = corePoolSize * 4;
+    /**
+     * 阻塞模式的连接线程池 - 每个连接占用一个线程直到断开
+     *
+     * 线程数即并发连接上限；queueCapacity 为 0 时使用同步移交队列，没有空闲线程就立即拒绝，
+     * 由接收线程关闭该连接，而不是让连接在队列里无人处理或在接收线程上执行
+     */
+    public static ThreadPoolExecutor createConnectionPool(int maxThreads, int queueCapacity) {
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads,
+                maxThreads,
+                60L,                       // 空闲线程存活时间
+                TimeUnit.SECONDS,
+                queue,
+                new ChatThreadFactory("chat-worker-"),
+                new CountingAbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
+    /**
+     * NIO模式的会话业务线程池 - 每个会话同一时刻最多一个任务，任务数不超过连接数，因此使用无界队列
+     */
+    public static ThreadPoolExecutor createSessionPool(int threads) {
         return new ThreadPoolExecutor(
-                corePoolSize,              // 核心线程数 = CPU核心数
-                maxPoolSize,               // 最大线程数 = CPU核心数 * 4
-                60L,                       // 空闲线程存活时间
-                TimeUnit.SECONDS,          // 时间单位
-                new ArrayBlockingQueue<>(1000), // 有界队列，防止内存溢出
-                new ChatThreadFactory(),   // 自定义线程工厂
-                new ChatRejectionHandler() // 自定义拒绝策略
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ChatThreadFactory("chat-worker-"),
+                new CountingAbortPolicy()
         );
     }
 
+    /**
+     * 写线程池 - 负责把会话发送队列里的消息写到阻塞Socket
+     *
+     * 每个会话同一时刻最多只有一个写任务；队列有界，满时拒绝，由会话断开自己的连接。
+     * 卡在不读数据的客户端上的写线程由写超时看门狗断开，见 BlockingClientSession.checkWriteDeadline
+     */
+    public static ThreadPoolExecutor createWriterThreadPool(int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                new ChatThreadFactory("chat-writer-"),
+                new CountingAbortPolicy()
+        );
+    }
+
+    /**
+     * 延迟写出定时器 - 只负责到期后把写任务提交给写线程池，单线程即可
+     */
+    public static ScheduledExecutorService createFlushTimer() {
+        return Executors.newSingleThreadScheduledExecutor(new ChatThreadFactory("chat-flush-timer-"));
+    }
+
+    /**
+     * 离线消息投递调度器 - 每步只做一次分页查询和入队，等待写出时重新调度而不占用线程
+     */
+    public static ScheduledExecutorService createOfflineDeliveryScheduler(int threads) {
+        return Executors.newScheduledThreadPool(threads, new ChatThreadFactory("chat-offline-"));
+    }
+
+    /**
+     * 分条带执行器 - 每条带一个线程和一个有界队列，满时拒绝(由调用方降级)，不在提交线程上执行
+     */
+    public static StripedExecutor createStripedExecutor(String namePrefix, int stripes, int queueCapacityPerStripe) {
+        ChatThreadFactory threadFactory = new ChatThreadFactory(namePrefix);
+        ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Math.max(1, stripes)];
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacityPerStripe)), threadFactory,
+                    new CountingAbortPolicy());
+        }
+        return new StripedExecutor(executors);
+    }
+
+    /**
+     * 虚拟线程执行器 - 每个任务一个虚拟线程(JDK 21+)
+     *
+     * 通过反射调用 Thread.ofVirtual()，使源码仍可按 Java 8 编译；
+     * 运行时JDK不支持虚拟线程时返回 null，由调用方决定降级策略
+     */
+    public static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "chat-vthread-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Java 19/20 中虚拟线程为预览特性，未开启时抛出 UnsupportedOperationException
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                return null;
+            }
+            throw new IllegalStateException("创建虚拟线程执行器失败", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
     private static class ChatThreadFactory implements ThreadFactory {
         private final AtomicInteger counter = new AtomicInteger(1);
+        private final String namePrefix;
+
+        ChatThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread thread = new Thread(r, "chat-worker-" + counter.getAndIncrement());
+            Thread thread = new Thread(r, namePrefix + counter.getAndIncrement());
             thread.setDaemon(true); // 设置为守护线程，不会阻止JVM退出
             return thread;
         }
     }
 
-    private static class ChatRejectionHandler implements RejectedExecutionHandler {
+    /**
+     * 拒绝策略：记录拒绝次数后抛出 RejectedExecutionException
+     *
+     * 不采用调用方执行(CallerRuns)：那样会把整个会话压到接收线程或事件循环上，拖垮其他连接
+     */
+    public static class CountingAbortPolicy implements RejectedExecutionHandler {
+        private final LongAdder rejectedCount = new LongAdder();
+
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            // 记录警告日志，但不阻塞主线程
-            System.err.println("警告: 线程池任务被拒绝，当前活跃线程: " +
-                    executor.getActiveCount() + ", 队列大小: " + executor.getQueue().size());
+            rejectedCount.increment();
+            throw new RejectedExecutionException("线程池已满, 活跃线程: " + executor.getActiveCount()
+                    + ", 队列大小: " + executor.getQueue().size());
+        }
 
-            // 简单的降级策略：如果线程池没有关闭，由调用线程直接执行
-            if (!executor.isShutdown()) {
-                r.run();
-            }
+        public long getRejectedCount() {
+            return rejectedCount.sum();
         }
     }
 }
\ No newline at end of file
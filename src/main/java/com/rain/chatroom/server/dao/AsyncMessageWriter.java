@@ -0,0 +1,337 @@
+package com.rain.chatroom.server.dao;
+
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 消息异步落库(write-behind) - 聊天线程只负责入队，由单独的刷写线程批量写入数据库
+ *
+ * 设计思路：
+ * 1. 有界队列承接消息，刷写线程攒够 batchSize 条或等待超过 flushIntervalMillis 就提交一批(组提交)
+ * 2. 每批一个事务、一次 executeBatch；整批失败时逐条重试，避免一条坏数据拖垮整批
+ * 3. 背压：队列满时调用方最多等待 enqueueTimeoutMillis，仍然满则在调用线程同步写入，
+ *    数据库跟不上时聊天线程自然变慢，而不是无限堆积内存或丢消息
+ * 4. shutdown 后不再接收新消息(后续调用同步写入)，刷写线程写完队列中剩余的消息再退出
+ *
+ * 配置了消息日志(MessageJournal)时，消息先追加到本地日志即返回，不再经过内存队列；
+ * 后台线程改为重放日志：按批写入数据库后推进 checkpoint，数据库不可用时退避重试，
+ * 重启后从 checkpoint 继续重放未提交的部分。整批因数据错误被拒绝时，改为逐条重放这一批，
+ * 每条写入或确认为坏数据(记录日志后跳过)后推进 checkpoint，一条坏数据不会卡住后面的消息
+ *
+ * enabled 为 false 时退化为直接同步写入，行为与原来一致
+ */
+@Slf4j
+public class AsyncMessageWriter {
+    private final MessageDao messageDao;
+    private final boolean enabled;
+    private final BlockingQueue<MessageDao.ChatMessage> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long enqueueTimeoutMillis;
+    private final Thread flusher;
+    // 可选的本地消息日志，为 null 时使用内存队列
+    private final MessageJournal journal;
+    private volatile boolean running;
+
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder syncFallbackCount = new LongAdder();
+
+    // 数据库不可用时重放的最大退避间隔
+    private static final long MAX_REPLAY_BACKOFF_MILLIS = 5000;
+
+    public AsyncMessageWriter(MessageDao messageDao, boolean enabled, int queueCapacity, int batchSize,
+                              long flushIntervalMillis, long enqueueTimeoutMillis) {
+        this(messageDao, enabled, queueCapacity, batchSize, flushIntervalMillis, enqueueTimeoutMillis, null);
+    }
+
+    public AsyncMessageWriter(MessageDao messageDao, boolean enabled, int queueCapacity, int batchSize,
+                              long flushIntervalMillis, long enqueueTimeoutMillis, MessageJournal journal) {
+        this.messageDao = messageDao;
+        this.journal = journal;
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.flusher = journal != null
+                ? new Thread(this::runReplayer, "message-journal-replayer")
+                : new Thread(this::runFlusher, "message-writer");
+    }
+
+    public void start() {
+        if (enabled && !running) {
+            running = true;
+            flusher.start();
+            if (journal != null) {
+                log.info("消息异步落库已启用(本地日志), 批大小: {}, 刷写间隔: {}ms", batchSize, flushIntervalMillis);
+            } else {
+                log.info("消息异步落库已启用, 队列容量: {}, 批大小: {}, 刷写间隔: {}ms",
+                        queue.remainingCapacity(), batchSize, flushIntervalMillis);
+            }
+        }
+    }
+
+    public void saveMessage(int messageType, Long fromUserId, Long toUserId, Long groupId,
+                            String content, int contentType, String fileUrl) {
+        saveMessage(messageType, fromUserId, toUserId, groupId, content, contentType, fileUrl, false);
+    }
+
+    public void saveMessage(int messageType, Long fromUserId, Long toUserId, Long groupId,
+                            String content, int contentType, String fileUrl, boolean read) {
+        MessageDao.ChatMessage message = new MessageDao.ChatMessage();
+        message.setMessageType(messageType);
+        message.setFromUserId(fromUserId);
+        message.setToUserId(toUserId);
+        message.setGroupId(groupId);
+        message.setContent(content);
+        message.setContentType(contentType);
+        message.setFileUrl(fileUrl);
+        message.setRead(read);
+        save(message);
+    }
+
+    /**
+     * 保存已组装好的消息；created_time 为空时取当前时间，入队后不再修改
+     */
+    public void save(MessageDao.ChatMessage message) {
+        long start = System.nanoTime();
+        if (message.getCreatedTime() == null) {
+            message.setCreatedTime(new Timestamp(System.currentTimeMillis()));
+        }
+        enqueue(message);
+        ServerMetrics.PERSIST.recordSince(start);
+    }
+
+    private void enqueue(MessageDao.ChatMessage message) {
+        if (!running) {
+            messageDao.saveMessage(message);
+            return;
+        }
+
+        if (journal != null) {
+            if (journal.append(message)) {
+                enqueuedCount.increment();
+                return;
+            }
+            syncFallbackCount.increment();
+            log.warn("消息写入本地日志失败，同步写入数据库");
+            writeOne(message);
+            return;
+        }
+
+        try {
+            if (queue.offer(message, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                enqueuedCount.increment();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 队列持续已满：数据库跟不上，在调用线程同步写入形成背压
+        syncFallbackCount.increment();
+        log.warn("消息落库队列已满，同步写入");
+        writeOne(message);
+    }
+
+    /**
+     * delivered 为 true 表示接收者在线且已投递，入库即为已读
+     */
+    public void savePrivateMessage(Long fromUserId, Long toUserId, String content, boolean delivered) {
+        saveMessage(1, fromUserId, toUserId, null, content, 1, null, delivered);
+    }
+
+    private void runFlusher() {
+        List<MessageDao.ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                MessageDao.ChatMessage first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 组提交：在刷写间隔内继续收集，攒满一批提前提交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    MessageDao.ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("消息落库线程异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runReplayer() {
+        List<MessageDao.ChatMessage> batch = new ArrayList<>(batchSize);
+        long offset = journal.getCheckpointOffset();
+        long backoff = flushIntervalMillis;
+        // 整批被拒绝后，在该偏移之前逐条重放
+        long isolateUntil = -1;
+        while (running || offset < journal.getWriteOffset()) {
+            try {
+                journal.force();
+                batch.clear();
+                boolean isolating = offset < isolateUntil;
+                long next = journal.read(offset, batch, isolating ? 1 : batchSize);
+                if (batch.isEmpty()) {
+                    if (next != offset) {
+                        // 跳过了损坏的段
+                        journal.checkpoint(next);
+                        offset = next;
+                    }
+                    Thread.sleep(flushIntervalMillis);
+                    continue;
+                }
+                MessageDao.SaveResult result = batch.size() == 1
+                        ? messageDao.trySaveMessage(batch.get(0)) : messageDao.trySaveMessages(batch);
+                if (result == MessageDao.SaveResult.REJECTED && batch.size() > 1) {
+                    log.warn("重放的一批消息被数据库拒绝，逐条重放定位坏数据: {} 条", batch.size());
+                    isolateUntil = next;
+                    continue;
+                }
+                if (result != MessageDao.SaveResult.UNAVAILABLE) {
+                    if (result == MessageDao.SaveResult.SAVED) {
+                        batchCount.increment();
+                        writtenCount.add(batch.size());
+                    } else {
+                        skipRejected(batch.get(0));
+                    }
+                    journal.checkpoint(next);
+                    offset = next;
+                    backoff = flushIntervalMillis;
+                } else {
+                    // 数据库不可用：不推进 checkpoint，退避后重试；停机时留给下次启动重放
+                    if (!running) {
+                        break;
+                    }
+                    log.warn("数据库不可用，{}ms 后重试重放消息日志", backoff);
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_REPLAY_BACKOFF_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                log.error("写入消息日志 checkpoint 失败: {}", e.getMessage());
+            } catch (Exception e) {
+                log.error("重放消息日志异常: {}", e.getMessage(), e);
+            }
+        }
+        journal.close();
+        log.info("消息日志重放已停止, 已提交偏移: {}, 写入偏移: {}",
+                journal.getCheckpointOffset(), journal.getWriteOffset());
+    }
+
+    // 数据库拒绝的消息(重试也不会成功)：记录内容后跳过，不再阻塞后续重放
+    private void skipRejected(MessageDao.ChatMessage message) {
+        failedCount.increment();
+        log.error("消息被数据库拒绝，已跳过: type={}, from={}, to={}, group={}, time={}, content={}",
+                message.getMessageType(), message.getFromUserId(), message.getToUserId(), message.getGroupId(),
+                message.getCreatedTime(), message.getContent());
+    }
+
+    private void flush(List<MessageDao.ChatMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (messageDao.saveMessages(batch)) {
+            batchCount.increment();
+            writtenCount.add(batch.size());
+            return;
+        }
+        // 整批失败，逐条重试定位失败的消息
+        for (MessageDao.ChatMessage message : batch) {
+            writeOne(message);
+        }
+    }
+
+    private void writeOne(MessageDao.ChatMessage message) {
+        if (messageDao.saveMessage(message)) {
+            writtenCount.increment();
+        } else {
+            failedCount.increment();
+        }
+    }
+
+    /**
+     * 停止接收新消息，等待队列中的消息写完
+     */
+    public void shutdown(long timeoutMillis) {
+        if (!running) {
+            return;
+        }
+        // 不中断刷写线程，避免打断进行中的JDBC调用；poll 超时后它会发现 running 已变化
+        running = false;
+        try {
+            flusher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("消息落库未在 {}ms 内完成, 剩余: {} 条", timeoutMillis, queue.size());
+        } else {
+            // 与 shutdown 并发入队、刷写线程退出后才进入队列的消息
+            List<MessageDao.ChatMessage> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            flush(rest);
+            log.info("消息落库已停止, 累计写入: {}, 失败: {}", writtenCount.sum(), failedCount.sum());
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 本地日志中尚未写入数据库的字节数(含段尾空隙)，未启用日志时为0
+     */
+    public long getJournalPendingBytes() {
+        return journal != null ? journal.getWriteOffset() - journal.getCheckpointOffset() : 0;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getSyncFallbackCount() {
+        return syncFallbackCount.sum();
+    }
+}
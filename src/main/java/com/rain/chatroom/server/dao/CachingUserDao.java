@@ -0,0 +1,98 @@
+package com.rain.chatroom.server.dao;
+
+import com.rain.chatroom.server.cache.LruCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带缓存的 UserDao - 按用户名和用户ID两个维度读穿透缓存
+ *
+ * - 查询不存在的用户名也会缓存(负缓存，存活时间较短)，避免重复查库
+ * - createUser 后清除该用户名的缓存(包括负缓存)
+ * - 修改用户状态后清除该用户的两个缓存条目，被禁用的用户下次查询即不可见
+ * - 登录时间不影响业务判断，更新时不失效缓存
+ *
+ * 服务器内共享一个实例，各组件通过构造参数获得，保证失效对所有调用方可见
+ */
+@Slf4j
+public class CachingUserDao extends UserDao {
+    private final LruCache<String, User> usersByUsername;
+    private final LruCache<Long, User> usersById;
+
+    public CachingUserDao(int maxSize, long ttlSeconds, long negativeTtlSeconds) {
+        this.usersByUsername = new LruCache<>(maxSize, ttlSeconds, negativeTtlSeconds, TimeUnit.SECONDS);
+        this.usersById = new LruCache<>(maxSize, ttlSeconds, negativeTtlSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public User findUserByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        User user = usersByUsername.get(username, super::findUserByUsername);
+        if (user != null) {
+            usersById.put(user.getId(), user);
+        }
+        return user;
+    }
+
+    @Override
+    public User findUserById(long userId) {
+        User user = usersById.get(userId, super::findUserById);
+        if (user != null) {
+            usersByUsername.put(user.getUsername(), user);
+        }
+        return user;
+    }
+
+    @Override
+    public boolean createUser(String username, String password, String nickname, String email) {
+        try {
+            return super.createUser(username, password, nickname, email);
+        } finally {
+            // 无论成功与否都清除，避免负缓存挡住刚注册(或被并发注册)的用户
+            if (username != null) {
+                usersByUsername.invalidate(username);
+            }
+        }
+    }
+
+    @Override
+    public boolean updateUserStatus(long userId, int status) {
+        try {
+            return super.updateUserStatus(userId, status);
+        } finally {
+            invalidateUser(userId);
+        }
+    }
+
+    public void invalidateUser(long userId) {
+        User user = usersById.invalidate(userId);
+        if (user != null) {
+            usersByUsername.invalidate(user.getUsername());
+        }
+    }
+
+    public long getHitCount() {
+        return usersByUsername.getHitCount() + usersById.getHitCount();
+    }
+
+    public long getMissCount() {
+        return usersByUsername.getMissCount() + usersById.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return usersByUsername.getEvictionCount() + usersById.getEvictionCount();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int size() {
+        return usersByUsername.size() + usersById.size();
+    }
+}
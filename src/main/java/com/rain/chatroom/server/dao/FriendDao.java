@@ -78,6 +78,40 @@ public class FriendDao {
         return friends;
     }
 
+    /**
+     * 好友列表(不含在线状态)，在线状态由调用方从内存中的会话索引获取；查询失败返回 null
+     */
+    public List<FriendInfo> getFriendList(Long userId) {
+        List<FriendInfo> friends = new ArrayList<>();
+        String sql = "SELECT uf.friend_id, uf.friend_nickname, u.username, u.nickname, u.avatar " +
+                "FROM user_friends uf " +
+                "JOIN users u ON uf.friend_id = u.id " +
+                "WHERE uf.user_id = ? AND uf.status = 1";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                FriendInfo friend = new FriendInfo();
+                friend.setFriendId(rs.getLong("friend_id"));
+                friend.setFriendNickname(rs.getString("friend_nickname"));
+                friend.setUsername(rs.getString("username"));
+                friend.setNickname(rs.getString("nickname"));
+                friend.setAvatar(rs.getString("avatar"));
+                friends.add(friend);
+            }
+
+        } catch (SQLException e) {
+            log.error("获取好友列表失败: {}", e.getMessage());
+            return null;
+        }
+
+        return friends;
+    }
+
     public boolean isFriend(Long userId, Long friendId) {
         String sql = "SELECT COUNT(*) FROM user_friends WHERE user_id = ? AND friend_id = ? AND status = 1";
 
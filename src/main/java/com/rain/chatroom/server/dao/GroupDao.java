@@ -56,6 +56,29 @@ public class GroupDao {
         }
     }
 
+    // 只查询成员ID，用于构建内存中的群成员索引
+    public List<Long> getGroupMemberIds(Long groupId) {
+        List<Long> memberIds = new ArrayList<>();
+        String sql = "SELECT user_id FROM group_members WHERE group_id = ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, groupId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                memberIds.add(rs.getLong("user_id"));
+            }
+
+        } catch (SQLException e) {
+            log.error("获取群组成员失败: {}", e.getMessage());
+            return null;
+        }
+
+        return memberIds;
+    }
+
     public List<GroupInfo> getUserGroups(Long userId) {
         List<GroupInfo> groups = new ArrayList<>();
         String sql = "SELECT g.id, g.group_name, g.description, g.creator_id, gm.role, " +
@@ -9,58 +9,222 @@ import java.util.List;
 
 @Slf4j
 public class MessageDao {
+    private static final String INSERT_SQL = "INSERT INTO chat_messages (message_type, from_user_id, to_user_id, " +
+            "group_id, content, content_type, file_url, is_read, created_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 写入结果：数据库不可用(连接失败、超时、死锁回滚等，稍后重试可能成功)
+     * 与数据被拒绝(约束冲突、内容超长、外键不存在等，重试也不会成功)分开，供消息日志重放决定重试还是跳过
+     */
+    public enum SaveResult {
+        SAVED,
+        UNAVAILABLE,
+        REJECTED
+    }
 
     public boolean saveMessage(int messageType, Long fromUserId, Long toUserId, Long groupId,
                                String content, int contentType, String fileUrl) {
-        String sql = "INSERT INTO chat_messages (message_type, from_user_id, to_user_id, group_id, " +
-                "content, content_type, file_url) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        return saveMessage(messageType, fromUserId, toUserId, groupId, content, contentType, fileUrl, false);
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * read 为 true 表示消息已实时送达接收者，入库即为已读，登录时不会再作为离线消息投递
+     */
+    public boolean saveMessage(int messageType, Long fromUserId, Long toUserId, Long groupId,
+                               String content, int contentType, String fileUrl, boolean read) {
+        ChatMessage message = new ChatMessage();
+        message.setMessageType(messageType);
+        message.setFromUserId(fromUserId);
+        message.setToUserId(toUserId);
+        message.setGroupId(groupId);
+        message.setContent(content);
+        message.setContentType(contentType);
+        message.setFileUrl(fileUrl);
+        message.setRead(read);
+        return saveMessage(message);
+    }
 
-            pstmt.setInt(1, messageType);
-            pstmt.setObject(2, fromUserId);
-            pstmt.setObject(3, toUserId);
-            pstmt.setObject(4, groupId);
-            pstmt.setString(5, content);
-            pstmt.setInt(6, contentType);
-            pstmt.setString(7, fileUrl);
+    /**
+     * created_time 由服务器在接收消息时赋值(为空时取当前时间)，而不是依赖数据库默认值：
+     * 异步落库和日志重放都不会改变消息时间，内存中的历史消息与数据库中的顺序一致。
+     * created_time 列需要毫秒精度(DATETIME(3))
+     */
+    public boolean saveMessage(ChatMessage message) {
+        return trySaveMessage(message) == SaveResult.SAVED;
+    }
+
+    public SaveResult trySaveMessage(ChatMessage message) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
 
-            return pstmt.executeUpdate() > 0;
+            bindInsert(pstmt, message);
+            return pstmt.executeUpdate() > 0 ? SaveResult.SAVED : SaveResult.REJECTED;
 
         } catch (SQLException e) {
             log.error("保存消息失败: {}", e.getMessage());
-            return false;
+            return classify(e);
+        }
+    }
+
+    // 连接类错误(SQLState 08xxx)、JDBC 的瞬时/可恢复异常视为数据库不可用，其余视为数据被拒绝
+    static SaveResult classify(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return SaveResult.UNAVAILABLE;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return SaveResult.UNAVAILABLE;
+                }
+            }
+        }
+        return SaveResult.REJECTED;
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, ChatMessage message) throws SQLException {
+        pstmt.setInt(1, message.getMessageType());
+        pstmt.setObject(2, message.getFromUserId());
+        pstmt.setObject(3, message.getToUserId());
+        pstmt.setObject(4, message.getGroupId());
+        pstmt.setString(5, message.getContent());
+        pstmt.setInt(6, message.getContentType());
+        pstmt.setString(7, message.getFileUrl());
+        pstmt.setInt(8, message.isRead() ? 1 : 0);
+        pstmt.setTimestamp(9, message.getCreatedTime() != null
+                ? message.getCreatedTime() : new Timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * 批量保存消息：一次获取连接、一个事务、一次 executeBatch
+     * 任何一条失败则整批回滚，返回 false，由调用方决定是否逐条重试
+     */
+    public boolean saveMessages(List<ChatMessage> messages) {
+        return trySaveMessages(messages) == SaveResult.SAVED;
+    }
+
+    public SaveResult trySaveMessages(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return SaveResult.SAVED;
+        }
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                for (ChatMessage message : messages) {
+                    bindInsert(pstmt, message);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+                return SaveResult.SAVED;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+        } catch (SQLException e) {
+            log.error("批量保存消息失败: {} 条, {}", messages.size(), e.getMessage());
+            return classify(e);
         }
     }
 
     public List<ChatMessage> getPrivateMessageHistory(Long user1Id, Long user2Id, int limit) {
-        List<ChatMessage> messages = new ArrayList<>();
+        List<ChatMessage> messages = getPrivateHistoryBefore(user1Id, user2Id, null, 0, limit);
+        return messages != null ? messages : new ArrayList<ChatMessage>();
+    }
+
+    /**
+     * 私聊历史的键集分页：取 (created_time, id) 早于游标的最多 limit 条，按时间倒序返回
+     *
+     * 两个方向拆成 UNION ALL 的两个分支，各自可以走 (from_user_id, to_user_id, created_time) 索引并提前 LIMIT，
+     * 避免 OR 条件导致的全表扫描。before 为 null 表示从最新一条开始；
+     * beforeId 为 0 时只按时间比较(游标来自内存中尚无数据库ID的消息)。查询失败返回 null
+     */
+    public List<ChatMessage> getPrivateHistoryBefore(Long user1Id, Long user2Id, Timestamp before, long beforeId,
+                                                     int limit) {
+        String branch = "(SELECT * FROM chat_messages WHERE from_user_id = ? AND to_user_id = ? " +
+                "AND message_type = 1 " + keysetCondition("", before) +
+                "ORDER BY created_time DESC, id DESC LIMIT ?)";
+        String sql = "SELECT cm.*, u.nickname as from_nickname " +
+                "FROM (" + branch + " UNION ALL " + branch + ") cm " +
+                "LEFT JOIN users u ON cm.from_user_id = u.id " +
+                "ORDER BY cm.created_time DESC, cm.id DESC LIMIT ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            pstmt.setLong(index++, user1Id);
+            pstmt.setLong(index++, user2Id);
+            index = bindKeyset(pstmt, index, before, beforeId);
+            pstmt.setInt(index++, limit);
+            pstmt.setLong(index++, user2Id);
+            pstmt.setLong(index++, user1Id);
+            index = bindKeyset(pstmt, index, before, beforeId);
+            pstmt.setInt(index++, limit);
+            pstmt.setInt(index, limit);
+            return readHistory(pstmt, limit);
+
+        } catch (SQLException e) {
+            log.error("获取私聊历史失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 群聊历史的键集分页，语义同 getPrivateHistoryBefore
+     */
+    public List<ChatMessage> getGroupHistoryBefore(Long groupId, Timestamp before, long beforeId, int limit) {
         String sql = "SELECT cm.*, u.nickname as from_nickname " +
                 "FROM chat_messages cm " +
                 "LEFT JOIN users u ON cm.from_user_id = u.id " +
-                "WHERE ((cm.from_user_id = ? AND cm.to_user_id = ?) OR " +
-                "       (cm.from_user_id = ? AND cm.to_user_id = ?)) " +
-                "AND cm.message_type = 1 " +
-                "ORDER BY cm.created_time DESC LIMIT ?";
+                "WHERE cm.group_id = ? AND cm.message_type = 2 " +
+                keysetCondition("cm.", before) +
+                "ORDER BY cm.created_time DESC, cm.id DESC LIMIT ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setLong(1, user1Id);
-            pstmt.setLong(2, user2Id);
-            pstmt.setLong(3, user2Id);
-            pstmt.setLong(4, user1Id);
-            pstmt.setInt(5, limit);
+            int index = 1;
+            pstmt.setLong(index++, groupId);
+            index = bindKeyset(pstmt, index, before, beforeId);
+            pstmt.setInt(index, limit);
+            return readHistory(pstmt, limit);
 
-            ResultSet rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            log.error("获取群聊历史失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String keysetCondition(String alias, Timestamp before) {
+        return before != null ? "AND (" + alias + "created_time < ? OR (" + alias + "created_time = ? AND "
+                + alias + "id < ?)) " : "";
+    }
 
+    private static int bindKeyset(PreparedStatement pstmt, int index, Timestamp before, long beforeId)
+            throws SQLException {
+        if (before != null) {
+            pstmt.setTimestamp(index++, before);
+            pstmt.setTimestamp(index++, before);
+            pstmt.setLong(index++, beforeId);
+        }
+        return index;
+    }
+
+    private static List<ChatMessage> readHistory(PreparedStatement pstmt, int limit) throws SQLException {
+        List<ChatMessage> messages = new ArrayList<>(limit);
+        try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
                 ChatMessage message = new ChatMessage();
                 message.setId(rs.getLong("id"));
                 message.setMessageType(rs.getInt("message_type"));
                 message.setFromUserId(rs.getLong("from_user_id"));
-                message.setToUserId(rs.getLong("to_user_id"));
+                message.setToUserId(rs.getObject("to_user_id", Long.class));
+                message.setGroupId(rs.getObject("group_id", Long.class));
                 message.setFromNickname(rs.getString("from_nickname"));
                 message.setContent(rs.getString("content"));
                 message.setContentType(rs.getInt("content_type"));
@@ -68,11 +232,7 @@ public class MessageDao {
                 message.setCreatedTime(rs.getTimestamp("created_time"));
                 messages.add(message);
             }
-
-        } catch (SQLException e) {
-            log.error("获取私聊历史失败: {}", e.getMessage());
         }
-
         return messages;
     }
 
@@ -120,6 +280,87 @@ public class MessageDao {
         return messages;
     }
 
+    /**
+     * 按 (created_time, id) 键集分页读取未读消息，从游标之后取最多 limit 条
+     *
+     * 第一页传 afterCreated = null；之后传上一页最后一条的 created_time 和 id。
+     * 与 OFFSET 分页不同，每页的代价只取决于 limit，不随已读过的页数增长，
+     * 配合 (to_user_id, is_read, created_time, id) 索引只扫描需要的行。
+     * 查询失败返回 null，与"没有更多消息"(空列表)区分
+     */
+    public List<ChatMessage> getUnreadMessagesPage(Long userId, Timestamp afterCreated, long afterId, int limit) {
+        String sql = "SELECT cm.*, u.nickname as from_nickname " +
+                "FROM chat_messages cm " +
+                "LEFT JOIN users u ON cm.from_user_id = u.id " +
+                "WHERE cm.to_user_id = ? AND cm.is_read = 0 " +
+                (afterCreated != null
+                        ? "AND (cm.created_time > ? OR (cm.created_time = ? AND cm.id > ?)) " : "") +
+                "ORDER BY cm.created_time ASC, cm.id ASC LIMIT ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            pstmt.setLong(index++, userId);
+            if (afterCreated != null) {
+                pstmt.setTimestamp(index++, afterCreated);
+                pstmt.setTimestamp(index++, afterCreated);
+                pstmt.setLong(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+
+            List<ChatMessage> messages = new ArrayList<>(limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ChatMessage message = new ChatMessage();
+                    message.setId(rs.getLong("id"));
+                    message.setMessageType(rs.getInt("message_type"));
+                    message.setFromUserId(rs.getLong("from_user_id"));
+                    message.setToUserId(rs.getLong("to_user_id"));
+                    message.setFromNickname(rs.getString("from_nickname"));
+                    message.setContent(rs.getString("content"));
+                    message.setContentType(rs.getInt("content_type"));
+                    message.setCreatedTime(rs.getTimestamp("created_time"));
+                    messages.add(message);
+                }
+            }
+            return messages;
+
+        } catch (SQLException e) {
+            log.error("分页获取未读消息失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 只把已投递的这些消息标记为已读；投递期间新到的未读消息不受影响
+     */
+    public boolean markMessagesRead(Long userId, List<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return true;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE chat_messages SET is_read = 1 WHERE to_user_id = ? AND id IN (");
+        for (int i = 0; i < messageIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            pstmt.setLong(1, userId);
+            for (int i = 0; i < messageIds.size(); i++) {
+                pstmt.setLong(i + 2, messageIds.get(i));
+            }
+            pstmt.executeUpdate();
+            return true;
+
+        } catch (SQLException e) {
+            log.error("标记消息已读失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
     private void markMessagesAsRead(Long userId) {
         String sql = "UPDATE chat_messages SET is_read = 1 WHERE to_user_id = ? AND is_read = 0";
 
@@ -145,6 +386,7 @@ public class MessageDao {
         private Integer contentType;
         private String fileUrl;
         private Timestamp createdTime;
+        private boolean read;
 
         // Getter和Setter方法
         public Long getId() { return id; }
@@ -176,5 +418,8 @@ public class MessageDao {
 
         public Timestamp getCreatedTime() { return createdTime; }
         public void setCreatedTime(Timestamp createdTime) { this.createdTime = createdTime; }
+
+        public boolean isRead() { return read; }
+        public void setRead(boolean read) { this.read = read; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package com.rain.chatroom.server.dao;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * 消息日志(WAL) - 只追加的本地日志，消息先写入日志即视为已接收，再由后台重放到数据库
+ *
+ * 存储格式：
+ * - 日志按固定大小分段，文件名 segment-<起始偏移>.wal，通过 FileChannel 内存映射读写
+ * - 记录格式 [int32 负载长度][int32 CRC32][负载]，长度字段最后写入，长度为0表示该段数据结束
+ * - 偏移为全局递增的逻辑位置：段起始偏移 + 段内位置，段尾放不下的记录写到下一段
+ * - checkpoint 文件记录已写入数据库的偏移，整段都已提交的旧段会被删除
+ *
+ * 重启恢复：从 checkpoint 开始读取，最后一段中第一个长度为0或CRC不匹配的位置即为写入终点，
+ * 其后的残留数据清零，未提交的部分由重放线程重新写入数据库(至少一次语义)
+ *
+ * 追加可被多个线程并发调用；读取和 checkpoint 只由重放线程调用
+ */
+@Slf4j
+public class MessageJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER = 8;
+
+    private static final int FLAG_FROM = 1;
+    private static final int FLAG_TO = 2;
+    private static final int FLAG_GROUP = 4;
+    private static final int FLAG_READ = 8;
+    private static final int FLAG_TIME = 16;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // 当前写入段，受 this 保护
+    private Segment active;
+    private boolean dirty;
+    // 最后一条完整记录之后的偏移，追加完成后发布
+    private volatile long writeOffset;
+    private volatile long checkpointOffset;
+
+    private MessageJournal(Path dir, int segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public static MessageJournal open(Path dir, int segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        MessageJournal journal = new MessageJournal(dir, segmentBytes);
+        journal.recover();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(base, Segment.map(file, base, segmentBytes));
+            }
+        }
+
+        checkpointOffset = readCheckpoint();
+        if (segments.isEmpty()) {
+            active = createSegment(segmentBase(checkpointOffset));
+        } else {
+            deleteSegmentsBefore(checkpointOffset);
+            if (segments.isEmpty()) {
+                active = createSegment(segmentBase(checkpointOffset));
+            } else {
+                active = segments.lastEntry().getValue();
+                active.position = scanEnd(active);
+                // 清除崩溃时写了一半的记录，避免新记录之后残留旧数据
+                ByteBuffer view = active.buffer.duplicate();
+                view.position(active.position);
+                byte[] zeros = new byte[4096];
+                while (view.hasRemaining()) {
+                    view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+                }
+            }
+        }
+        if (checkpointOffset < segments.firstKey()) {
+            checkpointOffset = segments.firstKey();
+        }
+        writeOffset = active.base + active.position;
+        log.info("消息日志已打开: {}, 段数: {}, 已提交偏移: {}, 写入偏移: {}",
+                dir, segments.size(), checkpointOffset, writeOffset);
+    }
+
+    // 扫描段内连续的有效记录，返回第一条无效记录的位置
+    private int scanEnd(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER <= segmentBytes) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER + length > segmentBytes) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + RECORD_HEADER);
+            view.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("消息日志尾部记录校验失败，截断于偏移: {}", segment.base + position);
+                break;
+            }
+            position += RECORD_HEADER + length;
+        }
+        return position;
+    }
+
+    /**
+     * 追加一条消息，记录超过段大小或创建新段失败时返回 false
+     */
+    public boolean append(MessageDao.ChatMessage message) {
+        byte[] payload = encode(message);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        int checksum = (int) crc.getValue();
+        int recordLength = RECORD_HEADER + payload.length;
+        if (recordLength > segmentBytes) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (active.position + recordLength > segmentBytes) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    log.error("创建消息日志段失败: {}", e.getMessage());
+                    return false;
+                }
+            }
+            int position = active.position;
+            MappedByteBuffer buffer = active.buffer;
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + 4);
+            view.putInt(checksum);
+            view.put(payload);
+            // 长度最后写入，读取方看到非0长度时记录已完整
+            buffer.putInt(position, payload.length);
+            active.position = position + recordLength;
+            dirty = true;
+            writeOffset = active.base + active.position;
+        }
+        return true;
+    }
+
+    private void roll() throws IOException {
+        active.buffer.force();
+        active = createSegment(active.base + segmentBytes);
+    }
+
+    private Segment createSegment(long base) throws IOException {
+        Path file = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+        Segment segment = Segment.map(file, base, segmentBytes);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    private long segmentBase(long offset) {
+        return offset - offset % segmentBytes;
+    }
+
+    /**
+     * 从 offset 开始读取最多 max 条记录追加到 out，返回读到的最后一条记录之后的偏移
+     * 遇到校验失败的记录时跳过该段剩余部分
+     */
+    public long read(long offset, List<MessageDao.ChatMessage> out, int max) {
+        long limit = writeOffset;
+        CRC32 crc = new CRC32();
+        while (out.size() < max && offset < limit) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                offset = segments.firstKey();
+                continue;
+            }
+            Segment segment = entry.getValue();
+            int position = (int) (offset - segment.base);
+            long segmentEnd = segment.base + segmentBytes;
+            if (position + RECORD_HEADER > segmentBytes) {
+                offset = segmentEnd;
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                // 写入方已切换到下一段
+                offset = segmentEnd;
+                continue;
+            }
+            if (length < 0 || position + RECORD_HEADER + length > segmentBytes) {
+                log.error("消息日志记录损坏，跳过段剩余部分, 偏移: {}", offset);
+                offset = segmentEnd;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            buffer.position(position + RECORD_HEADER);
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.error("消息日志记录校验失败，跳过段剩余部分, 偏移: {}", offset);
+                offset = segmentEnd;
+                continue;
+            }
+            out.add(decode(payload));
+            offset += RECORD_HEADER + length;
+        }
+        return offset;
+    }
+
+    /**
+     * 记录 offset 之前的消息已写入数据库，并删除已完全提交的旧段
+     */
+    public void checkpoint(long offset) throws IOException {
+        if (offset <= checkpointOffset) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.allocate(12);
+        data.putLong(offset);
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, 8);
+        data.putInt((int) crc.getValue());
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            data.flip();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointOffset = offset;
+        deleteSegmentsBefore(offset);
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return segments.isEmpty() ? 0 : segments.firstKey();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length == 12) {
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            long offset = data.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, 8);
+            if ((int) crc.getValue() == data.getInt()) {
+                return offset;
+            }
+        }
+        log.warn("消息日志 checkpoint 文件损坏，从最早的段开始重放");
+        return segments.isEmpty() ? 0 : segments.firstKey();
+    }
+
+    private void deleteSegmentsBefore(long offset) throws IOException {
+        for (Map.Entry<Long, Segment> entry : segments.headMap(segmentBase(offset)).entrySet()) {
+            Segment segment = entry.getValue();
+            if (segment == active) {
+                continue;
+            }
+            segments.remove(entry.getKey());
+            // 映射区域随 MappedByteBuffer 被回收而释放，删除文件不影响
+            Files.deleteIfExists(segment.file);
+        }
+    }
+
+    /**
+     * 把写入的数据刷到磁盘，由重放线程周期性调用
+     */
+    public void force() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            buffer = active.buffer;
+        }
+        buffer.force();
+    }
+
+    public long getWriteOffset() {
+        return writeOffset;
+    }
+
+    public long getCheckpointOffset() {
+        return checkpointOffset;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    // ========== 编解码 ==========
+
+    private static byte[] encode(MessageDao.ChatMessage message) {
+        byte[] content = bytesOf(message.getContent());
+        byte[] fileUrl = bytesOf(message.getFileUrl());
+        int flags = (message.getFromUserId() != null ? FLAG_FROM : 0)
+                | (message.getToUserId() != null ? FLAG_TO : 0)
+                | (message.getGroupId() != null ? FLAG_GROUP : 0)
+                | (message.getCreatedTime() != null ? FLAG_TIME : 0);
+        int size = 1 + 4 + 4 + Integer.bitCount(flags) * 8
+                + 4 + (content != null ? content.length : 0)
+                + 4 + (fileUrl != null ? fileUrl.length : 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) (message.isRead() ? flags | FLAG_READ : flags));
+        buffer.putInt(message.getMessageType());
+        buffer.putInt(message.getContentType());
+        if (message.getFromUserId() != null) buffer.putLong(message.getFromUserId());
+        if (message.getToUserId() != null) buffer.putLong(message.getToUserId());
+        if (message.getGroupId() != null) buffer.putLong(message.getGroupId());
+        if (message.getCreatedTime() != null) buffer.putLong(message.getCreatedTime().getTime());
+        putBytes(buffer, content);
+        putBytes(buffer, fileUrl);
+        return buffer.array();
+    }
+
+    private static MessageDao.ChatMessage decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int flags = buffer.get();
+        MessageDao.ChatMessage message = new MessageDao.ChatMessage();
+        message.setMessageType(buffer.getInt());
+        message.setContentType(buffer.getInt());
+        if ((flags & FLAG_FROM) != 0) message.setFromUserId(buffer.getLong());
+        if ((flags & FLAG_TO) != 0) message.setToUserId(buffer.getLong());
+        if ((flags & FLAG_GROUP) != 0) message.setGroupId(buffer.getLong());
+        if ((flags & FLAG_TIME) != 0) message.setCreatedTime(new Timestamp(buffer.getLong()));
+        message.setRead((flags & FLAG_READ) != 0);
+        message.setContent(getString(buffer));
+        message.setFileUrl(getString(buffer));
+        return message;
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long base;
+        private final MappedByteBuffer buffer;
+        // 写入位置，仅对当前写入段有意义，受 MessageJournal 锁保护
+        private int position;
+
+        private Segment(Path file, long base, MappedByteBuffer buffer) {
+            this.file = file;
+            this.base = base;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path file, long base, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                return new Segment(file, base, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+    }
+}
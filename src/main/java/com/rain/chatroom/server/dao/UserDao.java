@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 @Slf4j
 public class UserDao {
@@ -41,17 +42,28 @@ public class UserDao {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getLong("id"));
-                user.setUsername(rs.getString("username"));
-                user.setPassword(rs.getString("password"));
-                user.setNickname(rs.getString("nickname"));
-                user.setEmail(rs.getString("email"));
-                user.setAvatar(rs.getString("avatar"));
-                user.setStatus(rs.getInt("status"));
-                user.setLastLoginTime(rs.getTimestamp("last_login_time"));
-                user.setCreatedTime(rs.getTimestamp("created_time"));
-                return user;
+                return mapUser(rs);
+            }
+
+        } catch (SQLException e) {
+            log.error("查询用户失败: {}", e.getMessage());
+        }
+
+        return null;
+    }
+
+    public User findUserById(long userId) {
+        String sql = "SELECT id, username, password, nickname, email, avatar, status, last_login_time, created_time " +
+                "FROM users WHERE id = ? AND status = 1";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                return mapUser(rs);
             }
 
         } catch (SQLException e) {
@@ -61,6 +73,37 @@ public class UserDao {
         return null;
     }
 
+    private static User mapUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("id"));
+        user.setUsername(rs.getString("username"));
+        user.setPassword(rs.getString("password"));
+        user.setNickname(rs.getString("nickname"));
+        user.setEmail(rs.getString("email"));
+        user.setAvatar(rs.getString("avatar"));
+        user.setStatus(rs.getInt("status"));
+        user.setLastLoginTime(rs.getTimestamp("last_login_time"));
+        user.setCreatedTime(rs.getTimestamp("created_time"));
+        return user;
+    }
+
+    // 修改用户状态(1正常，其他值视为禁用，查询时会被过滤)
+    public boolean updateUserStatus(long userId, int status) {
+        String sql = "UPDATE users SET status = ? WHERE id = ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, status);
+            pstmt.setLong(2, userId);
+            return pstmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            log.error("更新用户状态失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
     public boolean updateUserLoginTime(long userId) {
         String sql = "UPDATE users SET last_login_time = CURRENT_TIMESTAMP WHERE id = ?";
 
@@ -144,5 +187,36 @@ public class UserDao {
 
         public Timestamp getCreatedTime() { return createdTime; }
         public void setCreatedTime(Timestamp createdTime) { this.createdTime = createdTime; }
+
+        public Identity toIdentity() {
+            return new Identity(id, username, nickname);
+        }
+    }
+
+    /**
+     * 已登录会话持有的用户身份：只有ID、用户名和昵称，不含密码等资料；不可变，同一用户的多个会话共享一个实例
+     */
+    public static final class Identity {
+        private final long id;
+        private final String username;
+        private final String nickname;
+
+        public Identity(long id, String username, String nickname) {
+            this.id = id;
+            this.username = username;
+            this.nickname = nickname;
+        }
+
+        public long getId() { return id; }
+
+        public String getUsername() { return username; }
+
+        public String getNickname() { return nickname; }
+
+        // 资料未变化时可以继续共享
+        public boolean matches(User user) {
+            return user.getId() != null && user.getId() == id && Objects.equals(user.getUsername(), username)
+                    && Objects.equals(user.getNickname(), nickname);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,389 @@
+package com.rain.chatroom.server.handler;
+
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.common.protocol.BinaryProtocol;
+import com.rain.chatroom.common.protocol.WireProtocol;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 阻塞Socket上的客户端会话 - 每个连接一个读线程，写出交给写线程池
+ *
+ * 读：连接线程调用 negotiateProtocol 确定线路协议，之后循环 readMessage(文本行) 或 readFrame(二进制帧)
+ *
+ * 发送模型：sendMessage 只把消息放入有界发送队列，由写线程池串行写出，
+ * 读得慢的客户端只会占满自己的队列(按 OverflowPolicy 处理)，不会阻塞发送方；
+ * 开启合并写时，一次把队列中积压的消息拷贝到批量缓冲区，用一次write写出。
+ * 一次写阻塞过久(客户端不读数据)时由写超时看门狗断开，见 checkWriteDeadline
+ *
+ * 读缓冲区在第一次读取时分配，读过大消息后在下一次读取前缩回
+ */
+@Slf4j
+public class BlockingClientSession extends ClientSession {
+    // 超过该大小的读缓冲区(读过大消息后)在下一次读取前释放
+    private static final int MAX_RETAINED_READ_BUFFER = 4096;
+    private static final AtomicIntegerFieldUpdater<BlockingClientSession> DRAIN_SCHEDULED =
+            AtomicIntegerFieldUpdater.newUpdater(BlockingClientSession.class, "drainScheduled");
+
+    // 写线程私有的批量缓冲区，空闲连接不占用
+    private static final ThreadLocal<byte[]> BATCH_BUFFER = new ThreadLocal<>();
+
+    @Getter
+    private final Socket socket;
+    private OutputStream output;
+    // 正在进行的阻塞写开始的时间(System.nanoTime)，没有在写时为 0，供写超时看门狗检查
+    private volatile long writeStartNanos;
+    private BufferedInputStream input;
+    // 文本行/二进制帧的读缓冲区，读线程复用，第一次读取时才分配
+    private byte[] readBuffer;
+    private volatile int drainScheduled;
+    private volatile boolean closeRequested;
+
+    public BlockingClientSession(Socket socket, OutboundQueue outboundQueue, WriteContext writeContext) {
+        super(outboundQueue, writeContext);
+        this.socket = socket;
+
+        try {
+            this.output = new DeadlineOutputStream(socket.getOutputStream());
+            this.input = new BufferedInputStream(new MeteredInputStream(socket.getInputStream()));
+        } catch (IOException e) {
+            this.active = false;
+            log.error("初始化客户端会话失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 对端地址，只在日志和管理接口中用到，每次调用时拼接
+     */
+    @Override
+    public String getRemoteAddress() {
+        if (socket.getInetAddress() == null) {
+            return "unknown";
+        }
+        return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+    }
+
+    /**
+     * 阻塞等待客户端的首字节并确定线路协议，返回对端声明的二进制协议版本；文本协议返回 0
+     *
+     * 二进制握手的魔数不匹配时抛出 IOException
+     */
+    public int negotiateProtocol() throws IOException {
+        input.mark(BinaryProtocol.HANDSHAKE_LENGTH);
+        int first = input.read();
+        if (first != (BinaryProtocol.MAGIC[0] & 0xFF)) {
+            input.reset();
+            return 0;
+        }
+        byte[] handshake = new byte[BinaryProtocol.HANDSHAKE_LENGTH];
+        handshake[0] = (byte) first;
+        readFully(handshake, 1, handshake.length - 1);
+        int version = BinaryProtocol.readHandshake(handshake, 0);
+        if (version < 0) {
+            throw new IOException("二进制协议握手失败");
+        }
+        return version;
+    }
+
+    /**
+     * 读取一行文本，连接关闭返回 null；一行超过 maxLineLength 字节(不含行尾)时抛出 IOException
+     *
+     * 按字节切行后解码为 UTF-8，不再为每个连接创建 BufferedReader(字符缓冲区和解码缓冲区各 8KB)
+     */
+    public String readMessage(int maxLineLength) throws IOException {
+        byte[] buffer = readBuffer();
+        int length = 0;
+        int b;
+        while ((b = input.read()) >= 0 && b != '\n') {
+            // 多留一个字节给行尾的 '\r'
+            if (length > maxLineLength) {
+                throw new IOException("客户端消息过长: 超过 " + maxLineLength + " 字节");
+            }
+            if (length == buffer.length) {
+                buffer = readBuffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxLineLength + 1));
+            }
+            buffer[length++] = (byte) b;
+        }
+        if (b < 0 && length == 0) {
+            return null;
+        }
+        if (length > 0 && buffer[length - 1] == '\r') {
+            length--;
+        }
+        if (length > maxLineLength) {
+            throw new IOException("客户端消息过长: 超过 " + maxLineLength + " 字节");
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取一个二进制帧，连接关闭返回 null；返回的帧引用会话内复用的缓冲区，下次读取前有效
+     */
+    public BinaryFrame readFrame(int maxFrameLength) throws IOException {
+        byte[] buffer = readBuffer();
+        if (!readFully(buffer, 0, BinaryProtocol.LENGTH_FIELD_SIZE)) {
+            return null;
+        }
+        int length = BinaryProtocol.readInt(buffer, 0);
+        if (length < 1 || length > maxFrameLength) {
+            throw new IOException("非法的帧长度: " + length);
+        }
+        if (length > buffer.length) {
+            buffer = readBuffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length));
+        }
+        if (!readFully(buffer, 0, length)) {
+            throw new EOFException("帧数据不完整");
+        }
+        return BinaryFrame.wrap(buffer, 0, length);
+    }
+
+    // 上一次读取的数据已用完，可以复用；读过大消息后扩大的缓冲区在这里释放
+    private byte[] readBuffer() {
+        byte[] buffer = readBuffer;
+        if (buffer == null || buffer.length > MAX_RETAINED_READ_BUFFER) {
+            buffer = readBuffer = new byte[256];
+        }
+        return buffer;
+    }
+
+    // 读满 length 字节，一个字节都没读到就遇到连接关闭时返回 false
+    private boolean readFully(byte[] buffer, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = input.read(buffer, offset + read, length - read);
+            if (n < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("连接已关闭");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onMessageQueued() {
+        scheduleDrain();
+    }
+
+    /**
+     * 发送队列溢出且策略为 DISCONNECT 时调用：立即断开，不再写出剩余消息
+     */
+    @Override
+    protected void onOutboundOverflow() {
+        active = false;
+        outboundQueue.clear();
+        // 关闭socket会让读线程退出循环，由其完成会话清理
+        closeSocket();
+    }
+
+    private void scheduleDrain() {
+        if (DRAIN_SCHEDULED.compareAndSet(this, 0, 1)) {
+            long delayMicros = writeContext.getFlushPolicy().effectiveDelayMicros();
+            if (delayMicros > 0 && !closeRequested) {
+                // 延迟写出，让窗口内的后续消息合并到同一次写
+                writeContext.getFlushTimer().schedule(this::submitDrain, delayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                submitDrain();
+            }
+        }
+    }
+
+    private void submitDrain() {
+        try {
+            writeContext.getWriterExecutor().execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 写线程和队列都已占满：断开本会话，不在提交线程上阻塞写
+            log.warn("写线程池已满，断开连接: {}", getRemoteAddress());
+            drainScheduled = 0;
+            active = false;
+            outboundQueue.clear();
+            closeSocket();
+        }
+    }
+
+    /**
+     * 写超时看门狗定期调用：一次阻塞写超过 timeoutNanos(客户端不读数据，TCP窗口已满)时关闭socket，
+     * 阻塞的写随之失败，写线程回到线程池；返回是否断开了连接
+     */
+    public boolean checkWriteDeadline(long nowNanos, long timeoutNanos) {
+        long started = writeStartNanos;
+        if (started == 0 || nowNanos - started < timeoutNanos) {
+            return false;
+        }
+        log.warn("写出超时，断开连接: {}", getRemoteAddress());
+        active = false;
+        outboundQueue.clear();
+        closeSocket();
+        return true;
+    }
+
+    // 在写线程执行，同一会话同一时刻只有一个drain任务
+    private void drain() {
+        long start = System.nanoTime();
+        try {
+            if (writeContext.getFlushPolicy().isBatching()) {
+                drainBatched();
+            } else {
+                OutboundMessage message;
+                while ((message = outboundQueue.poll()) != null) {
+                    try {
+                        WireProtocol protocol = outboundProtocolFor(message);
+                        message.writeTo(output, protocol);
+                        recordWrite(message.size(protocol), 1);
+                    } finally {
+                        message.release();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("发送消息失败: {}", e.getMessage());
+            active = false;
+            outboundQueue.clear();
+            closeSocket();
+        } finally {
+            ServerMetrics.FLUSH.recordSince(start);
+            drainScheduled = 0;
+            if (!outboundQueue.isEmpty()) {
+                scheduleDrain();
+            } else if (closeRequested) {
+                closeSocket();
+            }
+        }
+    }
+
+    // 把积压的消息拷贝到写线程私有的批量缓冲区，攒满 maxBatchBytes 或队列取空时写出一次
+    private void drainBatched() throws IOException {
+        byte[] batch = batchBuffer(writeContext.getFlushPolicy().getMaxBatchBytes());
+        int length = 0;
+        int count = 0;
+        OutboundMessage message;
+        while ((message = outboundQueue.poll()) != null) {
+            try {
+                WireProtocol protocol = outboundProtocolFor(message);
+                int size = message.size(protocol);
+                if (size > batch.length - length && length > 0) {
+                    output.write(batch, 0, length);
+                    recordWrite(length, count);
+                    length = 0;
+                    count = 0;
+                }
+                if (size > batch.length) {
+                    // 超过批量上限的大消息单独写出
+                    message.writeTo(output, protocol);
+                    recordWrite(size, 1);
+                    continue;
+                }
+                // 拷贝进批量缓冲区后就不再引用消息
+                message.copyTo(batch, length, protocol);
+                length += size;
+                count++;
+            } finally {
+                message.release();
+            }
+        }
+        if (length > 0) {
+            output.write(batch, 0, length);
+            recordWrite(length, count);
+        }
+    }
+
+    private static byte[] batchBuffer(int size) {
+        byte[] buffer = BATCH_BUFFER.get();
+        if (buffer == null || buffer.length != size) {
+            buffer = new byte[size];
+            BATCH_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * 优雅关闭：不再接收新消息，已入队的消息写出后再关闭socket
+     */
+    @Override
+    public void close() {
+        this.active = false;
+        this.closeRequested = true;
+        scheduleDrain();
+    }
+
+    /**
+     * 写出已入队的消息后关闭socket，阻塞在读上的连接线程随之退出并完成清理
+     */
+    @Override
+    public void disconnect() {
+        close();
+    }
+
+    private void closeSocket() {
+        try {
+            if (output != null) output.close();
+            if (input != null) input.close();
+            if (socket != null && !socket.isClosed()) socket.close();
+        } catch (IOException e) {
+            log.error("关闭客户端连接失败: {}", e.getMessage());
+        }
+    }
+
+    // 记录每次阻塞写的开始时间，写超时看门狗据此判断写线程是否卡在该连接上
+    private final class DeadlineOutputStream extends FilterOutputStream {
+        DeadlineOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeStartNanos = System.nanoTime();
+            try {
+                out.write(b);
+            } finally {
+                writeStartNanos = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeStartNanos = System.nanoTime();
+            try {
+                out.write(b, off, len);
+            } finally {
+                writeStartNanos = 0;
+            }
+        }
+    }
+
+    // 统计阻塞模式下读入的字节数，按底层 read 调用累加
+    private static final class MeteredInputStream extends FilterInputStream {
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                ServerMetrics.BYTES_IN.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                ServerMetrics.BYTES_IN.add(n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.rain.chatroom.server.handler;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.common.protocol.BinaryCodec;
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.common.protocol.BinaryProtocol;
+import com.rain.chatroom.common.protocol.WireProtocol;
+import com.rain.chatroom.server.command.CommandDispatcher;
+import com.rain.chatroom.server.dao.AsyncMessageWriter;
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.manager.SessionManager;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import com.rain.chatroom.server.ratelimit.RateLimiter;
+import com.rain.chatroom.server.service.BroadcastService;
+import com.rain.chatroom.server.service.OfflineMessageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 会话处理器 - 登录/注册/聊天流程
+ *
+ * 设计思路：
+ * 1. 流程按"一行输入推进一步"的状态机实现，不依赖阻塞读
+ * 2. 阻塞传输(每连接一个线程)和NIO事件循环共用同一套流程
+ * 3. onMessage 返回 false 表示应关闭连接
+ * 4. 二进制协议的客户端用 LOGIN/REGISTER 帧一次提交全部字段，聊天帧按类型直接路由，
+ *    与文本协议共用登录、广播、私聊、群聊逻辑
+ * 5. 登录后的每条输入先经过 RateLimiter，超限的直接丢弃，不落库也不扇出(rateLimiter 为 null 时不限制)
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ChatSessionHandler {
+    private final SessionManager sessionManager;
+    private final BroadcastService broadcastService;
+    private final AsyncMessageWriter messageWriter;
+    private final UserDao userDao;
+    private final OfflineMessageService offlineMessageService;
+    private final CommandDispatcher commandDispatcher;
+    private final RateLimiter rateLimiter;
+
+    public void onConnect(ClientSession session) {
+        // 注册会话
+        sessionManager.registerSession(session);
+
+        session.setState(SessionState.CONNECTED);
+        session.sendMessage("请选择: 1. 登录 2. 注册");
+    }
+
+    public boolean onMessage(ClientSession session, String message) {
+        ServerMetrics.MESSAGES_IN.increment();
+        switch (session.getState()) {
+            case CONNECTED:
+                return onChoice(session, message);
+            case LOGIN_USERNAME:
+                session.getLoginContext().setUsername(message);
+                session.sendMessage("请输入密码:");
+                session.setState(SessionState.LOGIN_PASSWORD);
+                return true;
+            case LOGIN_PASSWORD:
+                return login(session, session.getLoginContext().getUsername(), message);
+            case REGISTER_USERNAME:
+                session.getLoginContext().setUsername(message);
+                session.sendMessage("请输入密码:");
+                session.setState(SessionState.REGISTER_PASSWORD);
+                return true;
+            case REGISTER_PASSWORD:
+                session.getLoginContext().setPassword(message);
+                session.sendMessage("请输入昵称:");
+                session.setState(SessionState.REGISTER_NICKNAME);
+                return true;
+            case REGISTER_NICKNAME:
+                session.getLoginContext().setNickname(message);
+                session.sendMessage("请输入邮箱(可选):");
+                session.setState(SessionState.REGISTER_EMAIL);
+                return true;
+            case REGISTER_EMAIL:
+                LoginContext ctx = session.getLoginContext();
+                return register(session, ctx.getUsername(), ctx.getPassword(), ctx.getNickname(), message);
+            case CHATTING:
+                return processClientMessage(session, message);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 客户端发来二进制握手：协商版本并回复应答，返回 false 表示版本不兼容，应关闭连接
+     */
+    public boolean onHandshake(ClientSession session, int clientVersion) {
+        int version = BinaryProtocol.negotiateVersion(clientVersion);
+        if (version > 0) {
+            session.setProtocol(WireProtocol.BINARY);
+        }
+        session.sendMessage(OutboundMessage.handshakeAck(version));
+        if (version == 0) {
+            log.warn("不支持的二进制协议版本: {}, 客户端: {}", clientVersion,
+                    session.getRemoteAddress());
+            return false;
+        }
+        return true;
+    }
+
+    public boolean onFrame(ClientSession session, BinaryFrame frame) {
+        ServerMetrics.MESSAGES_IN.increment();
+        try {
+            switch (frame.getOpcode()) {
+                case BinaryProtocol.OP_LOGIN:
+                    if (session.getState() == SessionState.CHATTING) {
+                        session.sendMessage("[系统] 已登录");
+                        return true;
+                    }
+                    return login(session, frame.readString(), frame.readString());
+                case BinaryProtocol.OP_REGISTER:
+                    if (session.getState() == SessionState.CHATTING) {
+                        session.sendMessage("[系统] 已登录");
+                        return true;
+                    }
+                    return register(session, frame.readString(), frame.readString(),
+                            frame.readString(), frame.readString());
+                case BinaryProtocol.OP_BYE:
+                    session.sendMessage("再见!");
+                    return false;
+                default:
+                    return onChatFrame(session, frame);
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("客户端帧格式错误: {}, 客户端: {}", e.getMessage(), session.getRemoteAddress());
+            session.sendMessage("[系统] 消息格式错误");
+            return true;
+        }
+    }
+
+    private boolean onChatFrame(ClientSession session, BinaryFrame frame) {
+        long start = System.nanoTime();
+        ChatMessage message = BinaryCodec.decodeInbound(frame);
+        ServerMetrics.PARSE.recordSince(start);
+        if (message == null) {
+            session.sendMessage("[系统] 未知的操作码: " + frame.getOpcode());
+            return true;
+        }
+        if (session.getState() != SessionState.CHATTING) {
+            session.sendMessage("[系统] 请先登录");
+            return true;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire(session)) {
+            return true;
+        }
+        String content = message.getContent() != null ? message.getContent() : "";
+        switch (message.getType()) {
+            case TEXT:
+                broadcastChat(session, content);
+                break;
+            case PRIVATE:
+                // 可能查库(接收者不在缓存中)，与 /msg 一样交给命令执行器
+                String toUser = message.getToUser() != null ? message.getToUser() : "";
+                commandDispatcher.executeIo(session, () -> broadcastService.handlePrivateMessage(session, toUser, content));
+                break;
+            case GROUP:
+                Long groupId = message.getGroupId();
+                commandDispatcher.executeIo(session, () -> broadcastService.handleGroupMessage(session, groupId, content));
+                break;
+            case COMMAND:
+                if (content.startsWith("/")) {
+                    commandDispatcher.dispatch(session, content);
+                } else {
+                    session.sendMessage("[系统] 命令必须以 / 开头");
+                }
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    public void onDisconnect(ClientSession session) {
+        if (session.getState() == SessionState.CLOSED) {
+            return;
+        }
+        session.setState(SessionState.CLOSED);
+
+        if (session.getUsername() != null) {
+            // 使用BroadcastService发送系统消息
+            broadcastService.sendSystemMessage(session.getUsername() + " 离开了聊天室");
+        }
+        sessionManager.removeSession(session.getSessionId());
+        session.close();
+    }
+
+    private boolean onChoice(ClientSession session, String choice) {
+        if ("1".equals(choice)) {
+            promptLogin(session);
+            return true;
+        } else if ("2".equals(choice)) {
+            session.setLoginContext(new LoginContext());
+            session.sendMessage("请输入用户名:");
+            session.setState(SessionState.REGISTER_USERNAME);
+            return true;
+        } else {
+            session.sendMessage("无效选择，连接关闭");
+            return false;
+        }
+    }
+
+    private void promptLogin(ClientSession session) {
+        session.setLoginContext(new LoginContext());
+        session.sendMessage("请输入用户名:");
+        session.setState(SessionState.LOGIN_USERNAME);
+    }
+
+    private boolean login(ClientSession session, String username, String password) {
+        UserDao.User user = userDao.findUserByUsername(username);
+        if (user != null && user.getPassword().equals(password)) { // 实际应该加密验证
+            userDao.updateUserLoginTime(user.getId());
+            sessionManager.setUser(session, user);
+            session.setLoginContext(null);
+            session.setState(SessionState.CHATTING);
+            session.sendMessage("登录成功！欢迎 " + user.getNickname());
+
+            // 通知其他用户 - 使用BroadcastService
+            broadcastService.sendSystemMessage(session.getUsername() + " 加入了聊天室");
+            session.sendMessage("欢迎 " + session.getUsername() + "! 输入 'bye' 退出");
+
+            // 后台分页推送未读的离线私聊
+            offlineMessageService.deliver(session);
+            return true;
+        } else {
+            session.sendMessage("登录失败，用户名或密码错误");
+            return false;
+        }
+    }
+
+    private boolean register(ClientSession session, String username, String password, String nickname, String email) {
+        if (isEmpty(username) || isEmpty(password) || isEmpty(nickname)) {
+            session.sendMessage("用户名、密码和昵称不能为空");
+            return false;
+        }
+
+        if (userDao.findUserByUsername(username) != null) {
+            session.sendMessage("用户名已存在");
+            return false;
+        }
+
+        if (userDao.createUser(username, password, nickname, email)) {
+            session.sendMessage("注册成功！请登录");
+            promptLogin(session);
+            return true;
+        } else {
+            session.sendMessage("注册失败，请重试");
+            return false;
+        }
+    }
+
+    // 处理已登录用户的消息，添加持久化
+    private boolean processClientMessage(ClientSession session, String message) {
+        if ("bye".equalsIgnoreCase(message)) {
+            session.sendMessage("再见!");
+            return false;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire(session)) {
+            return true;
+        }
+
+        // 检查是否是命令
+        if (message.startsWith("/")) {
+            commandDispatcher.dispatch(session, message);
+        } else {
+            broadcastChat(session, message);
+        }
+        return true;
+    }
+
+    // 广播用户消息并保存到数据库
+    private void broadcastChat(ClientSession session, String message) {
+        String formattedMessage = "[" + session.getUsername() + "]: " + message;
+        log.debug("广播消息: {}", formattedMessage);
+
+        // 保存到数据库 (群聊消息，group_id为null)
+        UserDao.Identity user = session.getUser();
+        if (user != null) {
+            messageWriter.saveMessage(2, user.getId(), null, null, message, 1, null);
+        }
+
+        ChatMessage chatMessage = new ChatMessage(ChatMessage.MessageType.TEXT, session.getUsername(), message);
+        broadcastService.broadcastToAll(OutboundMessage.chat(chatMessage, formattedMessage), session);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
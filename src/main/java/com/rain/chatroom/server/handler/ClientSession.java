@@ -1,86 +1,173 @@
 package com.rain.chatroom.server.handler;
 
-import com.rain.chatroom.common.model.ClientInfo;
+import com.rain.chatroom.common.protocol.WireProtocol;
 import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import com.rain.chatroom.server.ratelimit.TokenBucket;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.*;
-import java.net.Socket;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 客户端会话 - 封装单个客户端的连接状态和IO操作
+ * 客户端会话 - 与传输层无关的会话状态：登录流程、用户身份、发送队列、写出统计
+ *
+ * 传输层通过子类接入：BlockingClientSession(阻塞Socket，读线程 + 写线程池)、
+ * NioClientSession(事件循环推送读到的行/帧并负责写出)。读取方式由各传输层自己提供，不在这里定义
+ *
+ * 发送模型：sendMessage 只把消息放入有界发送队列，再通知子类安排写出；
+ * 读得慢的客户端只会占满自己的队列(按 OverflowPolicy 处理)，不会阻塞发送方
+ *
+ * 线路协议：入站协议由传输层根据首字节确定；出站方向在握手应答写出后才切换为二进制，
+ * 之前入队的消息仍按文本协议编码
+ *
+ * 内存：空闲连接只保留少量字段。会话ID是自增的 long，对端地址用到时才拼接，
+ * 用户信息只保存共享的 UserDao.Identity，写出计数是普通字段
  */
 @Slf4j
-public class ClientSession {
+public abstract class ClientSession {
+    private static final AtomicLong NEXT_SESSION_ID = new AtomicLong();
+
+    @Getter
+    private final long sessionId = NEXT_SESSION_ID.incrementAndGet();
+    @Getter
+    private final long connectTime = System.currentTimeMillis();
+    @Getter
+    protected final OutboundQueue outboundQueue;
+
+    //这边关联用户信息，登录后才有
+    private UserDao.Identity user;
+
+    // 登录/注册流程的当前状态，由ChatSessionHandler驱动
+    @Getter
+    @Setter
+    private SessionState state = SessionState.CONNECTED;
     @Getter
-    private final String clientId;
+    @Setter
+    private LoginContext loginContext;
+    // /history 的翻页位置，只保留最近一次查询
     @Getter
-    private final ClientInfo clientInfo;
+    @Setter
+    private volatile HistoryCursor historyCursor;
+    // 入站协商出的线路协议
     @Getter
-    private final Socket socket;
+    @Setter
+    private volatile WireProtocol protocol = WireProtocol.TEXT;
+    // 发送频率限制，登录后第一次输入时由 RateLimiter 创建
+    @Getter
+    @Setter
+    private TokenBucket rateLimit;
+    // 上一次回复限流提示的时间(System.nanoTime)，0 表示没有回复过
+    @Getter
+    @Setter
+    private volatile long throttleNoticeTime;
+    // 出站实际使用的协议，仅由写出方(写线程/事件循环)访问
+    private WireProtocol outboundProtocol = WireProtocol.TEXT;
 
-    //这边关联用户信息
-    private UserDao.User user;
+    protected final WriteContext writeContext;
+    protected volatile boolean active = true;
 
-    private PrintWriter writer;
-    private BufferedReader reader;
-    private volatile boolean active = true;
+    // 写出计数，同一会话的写出是串行的(写线程的 drain / 所属事件循环)，只有一个写入方
+    private volatile long writeCalls;
+    private volatile long bytesWritten;
+    private volatile long messagesWritten;
+
+    protected ClientSession(OutboundQueue outboundQueue, WriteContext writeContext) {
+        this.outboundQueue = outboundQueue;
+        this.writeContext = writeContext;
+    }
 
-    // 在ClientSession中添加用户信息
-    public void setUser(UserDao.User user) {
+    public void setUser(UserDao.Identity user) {
         this.user = user;
     }
 
-    public UserDao.User getUser() {
+    public UserDao.Identity getUser() {
         return user;
     }
 
-    public ClientSession(Socket socket) {
-        this.clientId = UUID.randomUUID().toString();
-        this.socket = socket;
-        this.clientInfo = new ClientInfo(clientId, socket);
-
-        try {
-            this.writer = new PrintWriter(socket.getOutputStream(), true);
-            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        } catch (IOException e) {
-            this.active = false;
-            log.error("初始化客户端会话失败: {}", e.getMessage());
-        }
+    /**
+     * 对端地址，只在日志和管理接口中用到，每次调用时拼接
+     */
+    public abstract String getRemoteAddress();
+
+    public void sendMessage(String message) {
+        sendMessage(OutboundMessage.text(message));
     }
 
-    public String readMessage() throws IOException {
-        return reader.readLine();
+    /**
+     * 发送已编码的消息，广播时多个会话共享同一个 OutboundMessage
+     */
+    public void sendMessage(OutboundMessage message) {
+        if (!active) {
+            return;
+        }
+        if (outboundQueue.offer(message) == OutboundQueue.OfferResult.OVERFLOW) {
+            log.warn("客户端发送队列已满，断开连接: {}", getRemoteAddress());
+            onOutboundOverflow();
+            return;
+        }
+        onMessageQueued();
     }
 
-    public void sendMessage(String message) {
-        if (active && writer != null) {
-            writer.println(message);
+    /**
+     * 消息已进入发送队列：安排写出(可以合并多次调用)
+     */
+    protected abstract void onMessageQueued();
+
+    /**
+     * 发送队列溢出且策略为 DISCONNECT 时调用：立即断开，不再写出剩余消息
+     */
+    protected abstract void onOutboundOverflow();
+
+    /**
+     * 优雅关闭：不再接收新消息，已入队的消息尽量写出后再关闭连接
+     */
+    public abstract void close();
+
+    /**
+     * 从会话线程之外(例如管理接口)断开连接：会话清理(ChatSessionHandler.onDisconnect)
+     * 仍在会话自己的线程上执行，不与正在处理的输入并发
+     */
+    public abstract void disconnect();
+
+    /**
+     * 写出方在编码每条消息前调用：握手应答之后的消息改用二进制协议
+     */
+    protected WireProtocol outboundProtocolFor(OutboundMessage message) {
+        if (message.isHandshakeAck()) {
+            outboundProtocol = WireProtocol.BINARY;
         }
+        return outboundProtocol;
     }
 
-    public String getUsername() {
-        return clientInfo.getUsername();
+    protected void recordWrite(long bytes, int messages) {
+        writeCalls++;
+        bytesWritten += bytes;
+        messagesWritten += messages;
+        WriteStats global = writeContext.getWriteStats();
+        global.recordWrite(bytes);
+        global.recordMessages(messages);
+        ServerMetrics.BYTES_OUT.add(bytes);
+        ServerMetrics.MESSAGES_OUT.add(messages);
     }
 
-    public void setUsername(String username) {
-        clientInfo.setUsername(username);
+    /**
+     * 本会话的写出统计快照
+     */
+    public WriteStats getWriteStats() {
+        return WriteStats.snapshot(writeCalls, bytesWritten, messagesWritten);
     }
 
-    public boolean isActive() {
-        return active;
+    /**
+     * 会话的显示名(用户昵称)，登录前为 null
+     */
+    public String getUsername() {
+        UserDao.Identity identity = user;
+        return identity != null ? identity.getNickname() : null;
     }
 
-    public void close() {
-        this.active = false;
-        try {
-            if (writer != null) writer.close();
-            if (reader != null) reader.close();
-            if (socket != null && !socket.isClosed()) socket.close();
-        } catch (IOException e) {
-            log.error("关闭客户端连接失败: {}", e.getMessage());
-        }
+    public boolean isActive() {
+        return active;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package com.rain.chatroom.server.handler;
+
+/**
+ * 写出合并策略 - 所有会话共享，参数可在运行时调整
+ *
+ * batching 开启时，会话把发送队列中已积压的消息合并成一次写调用(阻塞传输拷贝到批量缓冲区，NIO使用聚集写)；
+ * flushDelayMicros > 0 时，第一条消息入队后再等待该时长才写出，让突发消息尽量落在同一批里
+ *
+ * 通过 JMX(com.rain.chatroom:type=FlushPolicy)可在运行时调整
+ */
+public class FlushPolicy implements FlushPolicyMXBean {
+    private volatile boolean batching;
+    private volatile long flushDelayMicros;
+    private volatile int maxBatchBytes;
+
+    public FlushPolicy(boolean batching, long flushDelayMicros, int maxBatchBytes) {
+        this.batching = batching;
+        this.flushDelayMicros = flushDelayMicros;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    @Override
+    public boolean isBatching() {
+        return batching;
+    }
+
+    @Override
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    @Override
+    public long getFlushDelayMicros() {
+        return flushDelayMicros;
+    }
+
+    @Override
+    public void setFlushDelayMicros(long flushDelayMicros) {
+        this.flushDelayMicros = Math.max(0, flushDelayMicros);
+    }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    @Override
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = Math.max(1024, maxBatchBytes);
+    }
+
+    /**
+     * 需要延迟写出时返回延迟微秒数，否则返回0
+     */
+    public long effectiveDelayMicros() {
+        return batching ? flushDelayMicros : 0;
+    }
+}
@@ -0,0 +1,18 @@
+package com.rain.chatroom.server.handler;
+
+/**
+ * 合并写策略的 JMX 接口，修改立即对所有会话的下一次写出生效
+ */
+public interface FlushPolicyMXBean {
+    boolean isBatching();
+
+    void setBatching(boolean batching);
+
+    long getFlushDelayMicros();
+
+    void setFlushDelayMicros(long flushDelayMicros);
+
+    int getMaxBatchBytes();
+
+    void setMaxBatchBytes(int maxBatchBytes);
+}
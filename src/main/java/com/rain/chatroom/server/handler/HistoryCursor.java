@@ -0,0 +1,20 @@
+package com.rain.chatroom.server.handler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * /history 翻页游标 - 记录上一页最旧一条消息的位置，/history more 从这里继续往前翻
+ *
+ * beforeId 为 0 表示该消息还没有数据库ID(来自内存中的热点历史)，只按时间比较
+ */
+@Getter
+@RequiredArgsConstructor
+public class HistoryCursor {
+    // 会话 key，见 HistoryCache.privateKey / groupKey
+    private final String conversationKey;
+    // 显示用的会话名称，如 "与 bob 的私聊"、"群 12"
+    private final String title;
+    private final long beforeMillis;
+    private final long beforeId;
+}
@@ -0,0 +1,13 @@
+package com.rain.chatroom.server.handler;
+
+import lombok.Data;
+
+/**
+ * 登录/注册过程中暂存的输入，登录完成后清除
+ */
+@Data
+public class LoginContext {
+    private String username;
+    private String password;
+    private String nickname;
+}
@@ -0,0 +1,247 @@
+package com.rain.chatroom.server.handler;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.common.protocol.BinaryCodec;
+import com.rain.chatroom.common.protocol.BinaryProtocol;
+import com.rain.chatroom.common.protocol.WireProtocol;
+import com.rain.chatroom.server.buffer.BufferPool;
+import com.rain.chatroom.server.buffer.PooledBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 出站消息 - 按线路协议缓存编码结果
+ *
+ * 广播时同一个实例交给所有接收者，每种协议最多编码一次：
+ * - 文本协议：UTF-8 + '\n'
+ * - 二进制协议：按 ChatMessage 的类型编码为带操作码的帧，首次有二进制接收者时才编码
+ * 阻塞会话直接写出内部字节数组；NIO会话通过 frame() 取得只读视图，各自维护读写位置
+ * 实例创建后内容不可变，可在线程间安全共享
+ *
+ * 启用 BufferPool 时，NIO 写出的帧编码到池化的直接内存，写入 socket 时不再经过 JDK 的临时直接缓冲区拷贝：
+ * - 消息每进入一个发送队列 retain 一次，写出(或被丢弃、队列清空)后 release 一次；
+ *   扇出期间由扇出方额外持有一次，避免先入队的接收者写完就提前归还
+ * - 计数归零时直接内存归还到池中，此后这条消息不再使用直接内存(之后的接收者按堆内存编码)，
+ *   因此持有者读到的缓冲区不会已被复用
+ */
+public final class OutboundMessage {
+    private static final int RECYCLED = -1;
+    private static final AtomicIntegerFieldUpdater<OutboundMessage> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(OutboundMessage.class, "refCount");
+    private static final AtomicReferenceFieldUpdater<OutboundMessage, PooledBuffer> TEXT_DIRECT =
+            AtomicReferenceFieldUpdater.newUpdater(OutboundMessage.class, PooledBuffer.class, "textDirect");
+    private static final AtomicReferenceFieldUpdater<OutboundMessage, PooledBuffer> BINARY_DIRECT =
+            AtomicReferenceFieldUpdater.newUpdater(OutboundMessage.class, PooledBuffer.class, "binaryDirect");
+    // 编码到直接内存用的 UTF-8 编码器，非法字符替换为 '?'，与 String.getBytes 一致
+    private static final ThreadLocal<CharsetEncoder> UTF8_ENCODER = ThreadLocal.withInitial(() ->
+            StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private final String text;
+    private final ChatMessage message;
+    // 系统通知(上下线等)，发送队列满时可优先丢弃
+    private final boolean systemNotice;
+    // 握手应答：两种协议下字节相同，写出后会话的出站协议切换为二进制
+    private final boolean handshakeAck;
+
+    // 编码缓存，并发首次编码时可能重复计算，结果相同，无需加锁
+    private volatile Encoded textEncoded;
+    private volatile Encoded binaryEncoded;
+
+    // NIO 写出用的直接内存编码，持有者数大于 0 时才分配
+    private volatile PooledBuffer textDirect;
+    private volatile PooledBuffer binaryDirect;
+    // 持有者数；RECYCLED 表示直接内存已归还
+    private volatile int refCount;
+
+    private OutboundMessage(String text, ChatMessage message, boolean systemNotice) {
+        this.text = text;
+        this.message = message;
+        this.systemNotice = systemNotice;
+        this.handshakeAck = false;
+    }
+
+    private OutboundMessage(byte[] handshake) {
+        this.text = null;
+        this.message = null;
+        this.systemNotice = false;
+        this.handshakeAck = true;
+        this.textEncoded = new Encoded(handshake);
+        this.binaryEncoded = textEncoded;
+    }
+
+    public static OutboundMessage text(String message) {
+        return new OutboundMessage(message, new ChatMessage(ChatMessage.MessageType.SYSTEM, null, message), false);
+    }
+
+    public static OutboundMessage systemNotice(String message) {
+        return new OutboundMessage(message, new ChatMessage(ChatMessage.MessageType.SYSTEM, null, message), true);
+    }
+
+    /**
+     * 带类型的聊天消息，text 为文本协议下的显示内容
+     */
+    public static OutboundMessage chat(ChatMessage message, String text) {
+        return new OutboundMessage(text, message, false);
+    }
+
+    public static OutboundMessage handshakeAck(int version) {
+        return new OutboundMessage(BinaryProtocol.handshake(version));
+    }
+
+    /**
+     * 文本协议下的显示内容，握手应答为 null
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 二进制协议下编码的消息，握手应答为 null
+     */
+    public ChatMessage getMessage() {
+        return message;
+    }
+
+    public boolean isSystemNotice() {
+        return systemNotice;
+    }
+
+    public boolean isHandshakeAck() {
+        return handshakeAck;
+    }
+
+    /**
+     * 增加一个持有者(进入发送队列、开始扇出)；直接内存已归还后不再计数
+     */
+    public void retain() {
+        while (true) {
+            int count = refCount;
+            if (count == RECYCLED || REF_COUNT.compareAndSet(this, count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 持有者用完(已写出、被丢弃)时调用，最后一个持有者释放时归还直接内存
+     */
+    public void release() {
+        while (true) {
+            int count = refCount;
+            if (count <= 0) {
+                return;
+            }
+            int next = count == 1 ? RECYCLED : count - 1;
+            if (REF_COUNT.compareAndSet(this, count, next)) {
+                if (next == RECYCLED) {
+                    releaseDirect(TEXT_DIRECT.getAndSet(this, null));
+                    releaseDirect(BINARY_DIRECT.getAndSet(this, null));
+                }
+                return;
+            }
+        }
+    }
+
+    private static void releaseDirect(PooledBuffer buffer) {
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 返回一个独立位置的只读视图，底层字节共享；调用方须持有本消息(从发送队列取出、尚未 release)
+     */
+    public ByteBuffer frame(WireProtocol protocol) {
+        BufferPool pool = BufferPool.getDefault();
+        if (pool == null || handshakeAck || refCount <= 0) {
+            return encoded(protocol).frame.duplicate();
+        }
+        return direct(protocol, pool).buffer().asReadOnlyBuffer();
+    }
+
+    // 并发首次编码时只保留一份，另一份立即归还
+    private PooledBuffer direct(WireProtocol protocol, BufferPool pool) {
+        boolean binary = protocol == WireProtocol.BINARY;
+        AtomicReferenceFieldUpdater<OutboundMessage, PooledBuffer> field = binary ? BINARY_DIRECT : TEXT_DIRECT;
+        PooledBuffer direct = field.get(this);
+        if (direct != null) {
+            return direct;
+        }
+        direct = binary ? encodeBinary(pool) : encodeText(pool);
+        if (field.compareAndSet(this, null, direct)) {
+            return direct;
+        }
+        direct.release();
+        return field.get(this);
+    }
+
+    // UTF-8 每个 char 最多 3 字节(代理对两个 char 共 4 字节)，再加换行符
+    private PooledBuffer encodeText(BufferPool pool) {
+        PooledBuffer pooled = pool.acquire(text.length() * 3 + 1);
+        ByteBuffer buffer = pooled.buffer();
+        CharsetEncoder encoder = UTF8_ENCODER.get();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), buffer, true);
+        encoder.flush(buffer);
+        buffer.put((byte) '\n');
+        buffer.flip();
+        return pooled;
+    }
+
+    private PooledBuffer encodeBinary(BufferPool pool) {
+        byte[] bytes = BinaryCodec.encode(message);
+        PooledBuffer pooled = pool.acquire(bytes.length);
+        pooled.buffer().put(bytes).flip();
+        return pooled;
+    }
+
+    public void writeTo(OutputStream out, WireProtocol protocol) throws IOException {
+        out.write(encoded(protocol).bytes);
+    }
+
+    public void copyTo(byte[] dest, int offset, WireProtocol protocol) {
+        byte[] bytes = encoded(protocol).bytes;
+        System.arraycopy(bytes, 0, dest, offset, bytes.length);
+    }
+
+    public int size(WireProtocol protocol) {
+        return encoded(protocol).bytes.length;
+    }
+
+    private Encoded encoded(WireProtocol protocol) {
+        if (protocol == WireProtocol.BINARY) {
+            Encoded encoded = binaryEncoded;
+            if (encoded == null) {
+                encoded = new Encoded(BinaryCodec.encode(message));
+                binaryEncoded = encoded;
+            }
+            return encoded;
+        }
+        Encoded encoded = textEncoded;
+        if (encoded == null) {
+            encoded = new Encoded((text + "\n").getBytes(StandardCharsets.UTF_8));
+            textEncoded = encoded;
+        }
+        return encoded;
+    }
+
+    private static final class Encoded {
+        private final byte[] bytes;
+        private final ByteBuffer frame;
+
+        Encoded(byte[] bytes) {
+            this.bytes = bytes;
+            this.frame = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.rain.chatroom.server.handler;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 会话发送队列 - 有界，满时按策略处理
+ *
+ * 发送方只负责入队，由写线程(阻塞传输)或事件循环(NIO)负责写出，
+ * 因此一个读得慢的客户端不会阻塞广播线程，只会占满自己的队列
+ *
+ * 队列操作都很短，直接用对象锁；每个会话一个队列，锁竞争只发生在同一会话的发送方之间
+ *
+ * 底层数组只在有待发送消息时存在：第一条消息入队时分配，取空时释放，空闲连接不占用
+ *
+ * 消息的持有关系(见 OutboundMessage.retain/release)：入队成功时 retain，被策略挤掉或 clear 时 release；
+ * poll 取出的消息由调用方负责在写出后 release
+ */
+public class OutboundQueue {
+
+    /** 队列已满时的处理策略 */
+    public enum OverflowPolicy {
+        DROP_OLDEST,        // 丢弃最旧的消息
+        DROP_SYSTEM_FIRST,  // 优先丢弃系统通知(上下线等)，没有系统通知时丢弃最旧的消息
+        DISCONNECT          // 断开该客户端
+    }
+
+    /** 入队结果 */
+    public enum OfferResult {
+        ACCEPTED,
+        DROPPED,            // 按策略丢弃了一条消息(可能是新消息本身)
+        OVERFLOW            // 策略为 DISCONNECT，调用方应断开连接
+    }
+
+    private ArrayDeque<OutboundMessage> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private long enqueuedCount;
+    private long droppedCount;
+    private long polledCount;
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public synchronized OfferResult offer(OutboundMessage message) {
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+        }
+        if (queue.size() < capacity) {
+            message.retain();
+            queue.addLast(message);
+            enqueuedCount++;
+            return OfferResult.ACCEPTED;
+        }
+
+        switch (policy) {
+            case DISCONNECT:
+                return OfferResult.OVERFLOW;
+            case DROP_SYSTEM_FIRST:
+                if (removeOldestSystemNotice()) {
+                    break;
+                }
+                if (message.isSystemNotice()) {
+                    // 队列里全是普通消息，新来的系统通知直接丢弃
+                    droppedCount++;
+                    return OfferResult.DROPPED;
+                }
+                queue.pollFirst().release();
+                break;
+            case DROP_OLDEST:
+            default:
+                queue.pollFirst().release();
+                break;
+        }
+        droppedCount++;
+        message.retain();
+        queue.addLast(message);
+        enqueuedCount++;
+        return OfferResult.DROPPED;
+    }
+
+    private boolean removeOldestSystemNotice() {
+        Iterator<OutboundMessage> it = queue.iterator();
+        while (it.hasNext()) {
+            OutboundMessage message = it.next();
+            if (message.isSystemNotice()) {
+                it.remove();
+                message.release();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取出下一条待发送消息，调用方写出(或放弃)后须调用其 release
+     */
+    public synchronized OutboundMessage poll() {
+        if (queue == null) {
+            return null;
+        }
+        OutboundMessage message = queue.pollFirst();
+        if (message != null) {
+            polledCount++;
+        } else {
+            // 写出方已取空队列
+            queue = null;
+        }
+        return message;
+    }
+
+    public synchronized boolean isEmpty() {
+        return queue == null || queue.isEmpty();
+    }
+
+    public synchronized void clear() {
+        if (queue != null) {
+            for (OutboundMessage message : queue) {
+                message.release();
+            }
+        }
+        queue = null;
+    }
+
+    public synchronized int size() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 已交给写线程/事件循环写出的消息数；与某一时刻的 enqueuedCount 比较，可判断在那之前入队的消息是否都已取走
+     */
+    public synchronized long getPolledCount() {
+        return polledCount;
+    }
+}
@@ -0,0 +1,16 @@
+package com.rain.chatroom.server.handler;
+
+/**
+ * 会话状态 - 登录/注册流程按行推进的状态机
+ */
+public enum SessionState {
+    CONNECTED,          // 已连接，等待选择 登录/注册
+    LOGIN_USERNAME,
+    LOGIN_PASSWORD,
+    REGISTER_USERNAME,
+    REGISTER_PASSWORD,
+    REGISTER_NICKNAME,
+    REGISTER_EMAIL,
+    CHATTING,           // 已登录，处理聊天消息和命令
+    CLOSED
+}
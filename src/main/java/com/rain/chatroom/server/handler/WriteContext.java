@@ -0,0 +1,21 @@
+package com.rain.chatroom.server.handler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 会话写出所需的共享组件：写线程池、延迟写出定时器、合并策略、全局写统计
+ *
+ * NIO会话在事件循环中写出，只使用 flushPolicy 和 writeStats
+ */
+@Getter
+@AllArgsConstructor
+public class WriteContext {
+    private final Executor writerExecutor;
+    private final ScheduledExecutorService flushTimer;
+    private final FlushPolicy flushPolicy;
+    private final WriteStats writeStats;
+}
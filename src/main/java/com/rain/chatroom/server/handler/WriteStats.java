@@ -0,0 +1,53 @@
+package com.rain.chatroom.server.handler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 写出统计 - 写调用次数、字节数、消息数，用于观察合并写的效果(字节/次)
+ *
+ * 全局一个实例；会话自己的计数是会话上的普通字段(单一写入方)，查询时用 snapshot 转换
+ */
+public class WriteStats {
+    private final LongAdder writeCalls = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder messagesWritten = new LongAdder();
+
+    public static WriteStats snapshot(long writeCalls, long bytesWritten, long messagesWritten) {
+        WriteStats stats = new WriteStats();
+        stats.writeCalls.add(writeCalls);
+        stats.bytesWritten.add(bytesWritten);
+        stats.messagesWritten.add(messagesWritten);
+        return stats;
+    }
+
+    public void recordWrite(long bytes) {
+        writeCalls.increment();
+        bytesWritten.add(bytes);
+    }
+
+    public void recordMessages(int messages) {
+        messagesWritten.add(messages);
+    }
+
+    public long getWriteCalls() {
+        return writeCalls.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getMessagesWritten() {
+        return messagesWritten.sum();
+    }
+
+    public double getBytesPerWrite() {
+        long calls = writeCalls.sum();
+        return calls == 0 ? 0 : (double) bytesWritten.sum() / calls;
+    }
+
+    public double getMessagesPerWrite() {
+        long calls = writeCalls.sum();
+        return calls == 0 ? 0 : (double) messagesWritten.sum() / calls;
+    }
+}
@@ -0,0 +1,48 @@
+package com.rain.chatroom.server.jmx;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把管理接口注册到平台 MBeanServer，对象名为 com.rain.chatroom:type={类型}
+ *
+ * 不依赖网络：本机用 jconsole/VisualVM 直接附加到进程即可查看和操作；
+ * 需要远程访问时再按 JDK 的方式开启 com.sun.management.jmxremote
+ */
+@Slf4j
+public class JmxExporter {
+    public static final String DOMAIN = "com.rain.chatroom";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public void register(String type, Object bean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            log.warn("注册MBean {} 失败: {}", type, e.getMessage());
+        }
+    }
+
+    public void unregisterAll() {
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.debug("注销MBean {} 失败: {}", name, e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+}
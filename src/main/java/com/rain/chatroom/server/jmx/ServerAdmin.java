@@ -0,0 +1,73 @@
+package com.rain.chatroom.server.jmx;
+
+import com.rain.chatroom.server.config.ServerConfig;
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.manager.SessionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 服务器管理 MBean(com.rain.chatroom:type=Server)
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ServerAdmin implements ServerAdminMXBean {
+    private final ServerConfig config;
+    private final SessionManager sessionManager;
+
+    @Override
+    public String getTransport() {
+        return config.getTransport().name();
+    }
+
+    @Override
+    public int getOnlineCount() {
+        return sessionManager.getOnlineCount();
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return sessionManager.getAllSessions().size();
+    }
+
+    @Override
+    public List<SessionInfo> getSessions() {
+        Collection<ClientSession> sessions = sessionManager.getAllSessions();
+        List<SessionInfo> infos = new ArrayList<>(sessions.size());
+        for (ClientSession session : sessions) {
+            infos.add(new SessionInfo(session));
+        }
+        return infos;
+    }
+
+    @Override
+    public int kickSession(String sessionIdOrUsername) {
+        List<ClientSession> targets = new ArrayList<>();
+        ClientSession byId = findById(sessionIdOrUsername);
+        if (byId != null) {
+            targets.add(byId);
+        } else {
+            targets.addAll(sessionManager.getSessionsByUsername(sessionIdOrUsername));
+        }
+        for (ClientSession session : targets) {
+            log.info("管理员断开会话: {}, {}", session.getUsername(), session.getRemoteAddress());
+            session.sendMessage("[系统] 你已被管理员断开连接");
+            // 清理交给会话自己的线程，不与正在处理的登录等输入并发
+            session.disconnect();
+        }
+        return targets.size();
+    }
+
+    // 会话ID是数字，纯数字的用户名按会话ID优先匹配
+    private ClientSession findById(String value) {
+        try {
+            return sessionManager.getSession(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.rain.chatroom.server.jmx;
+
+import java.util.List;
+
+/**
+ * 服务器管理的 JMX 接口：在线会话及其发送队列，以及断开指定会话
+ */
+public interface ServerAdminMXBean {
+    String getTransport();
+
+    // 已登录的会话数
+    int getOnlineCount();
+
+    // 所有连接数，包含尚未登录的
+    int getConnectionCount();
+
+    List<SessionInfo> getSessions();
+
+    /**
+     * 断开会话ID或用户名匹配的会话，返回断开的会话数
+     */
+    int kickSession(String sessionIdOrUsername);
+}
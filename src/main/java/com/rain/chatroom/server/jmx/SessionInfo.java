@@ -0,0 +1,36 @@
+package com.rain.chatroom.server.jmx;
+
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import lombok.Getter;
+
+/**
+ * 单个会话的状态快照，用于 JMX 展示
+ */
+@Getter
+public class SessionInfo {
+    private final long sessionId;
+    private final String username;
+    private final String remoteAddress;
+    private final String state;
+    private final String protocol;
+    private final long connectTime;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long droppedMessages;
+    private final long bytesWritten;
+
+    SessionInfo(ClientSession session) {
+        OutboundQueue queue = session.getOutboundQueue();
+        this.sessionId = session.getSessionId();
+        this.username = session.getUsername();
+        this.remoteAddress = session.getRemoteAddress();
+        this.state = session.getState().name();
+        this.protocol = session.getProtocol().name();
+        this.connectTime = session.getConnectTime();
+        this.queueDepth = queue.size();
+        this.queueCapacity = queue.getCapacity();
+        this.droppedMessages = queue.getDroppedCount();
+        this.bytesWritten = session.getWriteStats().getBytesWritten();
+    }
+}
@@ -0,0 +1,193 @@
+package com.rain.chatroom.server.manager;
+
+import com.rain.chatroom.server.cluster.PresenceDirectory;
+import com.rain.chatroom.server.dao.FriendDao;
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.handler.ClientSession;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 好友关系缓存 - 在线用户的好友邻接表
+ *
+ * 设计思路：
+ * 1. 用户登录时预加载好友列表(一次不含在线状态的查询)，最后一个会话下线时释放
+ * 2. addFriend / removeFriend 写库成功后同步更新缓存
+ * 3. 好友的在线状态从 SessionManager 的用户ID索引读取，不再查询 session_info 表；
+ *    集群模式下从 PresenceDirectory 读取(加载好友列表时订阅好友的在线状态)，包括在其他节点上线的好友
+ * 4. 用户在线期间 /friends 和好友关系判断都不访问数据库；缓存未命中(如预加载失败)时退回查库
+ * 5. 加载时先放入占位状态再查库，查库期间的 addFriend / removeFriend 等加载完成后再应用，不会被旧列表覆盖；
+ *    加载完成时用户已下线则不留在缓存中
+ */
+@Slf4j
+public class FriendManager implements SessionListener {
+    private final SessionManager sessionManager;
+    private final FriendDao friendDao;
+    // 集群在线状态目录，单机模式为 null
+    private final PresenceDirectory presence;
+
+    // 用户ID -> 好友列表(好友ID -> 好友信息)
+    private final ConcurrentMap<Long, FriendState> friendsByUser = new ConcurrentHashMap<>();
+
+    public FriendManager(SessionManager sessionManager, FriendDao friendDao) {
+        this(sessionManager, friendDao, null);
+    }
+
+    public FriendManager(SessionManager sessionManager, FriendDao friendDao, PresenceDirectory presence) {
+        this.sessionManager = sessionManager;
+        this.friendDao = friendDao;
+        this.presence = presence;
+    }
+
+    /**
+     * 好友列表，在线状态按当前会话索引填充
+     */
+    public List<FriendDao.FriendInfo> getFriends(Long userId) {
+        Map<Long, FriendDao.FriendInfo> friends = friendsOf(userId);
+        if (friends == null) {
+            return friendDao.getFriends(userId);
+        }
+        List<FriendDao.FriendInfo> result = new ArrayList<>(friends.size());
+        for (FriendDao.FriendInfo cached : friends.values()) {
+            // 复制一份再填充在线状态，缓存中的对象保持不变
+            FriendDao.FriendInfo friend = new FriendDao.FriendInfo();
+            friend.setFriendId(cached.getFriendId());
+            friend.setFriendNickname(cached.getFriendNickname());
+            friend.setUsername(cached.getUsername());
+            friend.setNickname(cached.getNickname());
+            friend.setAvatar(cached.getAvatar());
+            friend.setOnline(isOnline(cached.getFriendId()));
+            result.add(friend);
+        }
+        return result;
+    }
+
+    public boolean isFriend(Long userId, Long friendId) {
+        Map<Long, FriendDao.FriendInfo> friends = friendsOf(userId);
+        return friends != null ? friends.containsKey(friendId) : friendDao.isFriend(userId, friendId);
+    }
+
+    public boolean addFriend(Long userId, UserDao.User friendUser) {
+        if (!friendDao.addFriend(userId, friendUser.getId(), friendUser.getNickname())) {
+            return false;
+        }
+        FriendDao.FriendInfo friend = new FriendDao.FriendInfo();
+        friend.setFriendId(friendUser.getId());
+        friend.setFriendNickname(friendUser.getNickname());
+        friend.setUsername(friendUser.getUsername());
+        friend.setNickname(friendUser.getNickname());
+        friend.setAvatar(friendUser.getAvatar());
+        FriendState state = friendsByUser.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.friends != null) {
+                    state.friends.put(friendUser.getId(), friend);
+                }
+            }
+        }
+        if (presence != null) {
+            presence.subscribe(friendUser.getId());
+        }
+        return true;
+    }
+
+    public boolean removeFriend(Long userId, Long friendId) {
+        if (!friendDao.removeFriend(userId, friendId)) {
+            return false;
+        }
+        FriendState state = friendsByUser.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.friends != null) {
+                    state.friends.remove(friendId);
+                }
+            }
+        }
+        return true;
+    }
+
+    public int getCachedUserCount() {
+        return friendsByUser.size();
+    }
+
+    private boolean isOnline(Long userId) {
+        return presence != null ? presence.isOnline(userId) : sessionManager.isUserOnline(userId);
+    }
+
+    // 在线用户从缓存读取，缓存缺失时尝试加载；用户不在线时不缓存，返回 null
+    private Map<Long, FriendDao.FriendInfo> friendsOf(Long userId) {
+        FriendState state = friendsByUser.get(userId);
+        Map<Long, FriendDao.FriendInfo> friends = state != null ? state.friends : null;
+        if (friends == null && sessionManager.isUserOnline(userId)) {
+            friends = load(userId);
+        }
+        return friends;
+    }
+
+    // 占位状态在查库期间持有锁，并发的修改等加载完成后应用到新列表上
+    private Map<Long, FriendDao.FriendInfo> load(Long userId) {
+        FriendState state = friendsByUser.computeIfAbsent(userId, id -> new FriendState());
+        Map<Long, FriendDao.FriendInfo> friends;
+        synchronized (state) {
+            if (state.friends != null) {
+                return state.friends;
+            }
+            if (state.discarded) {
+                // 等待期间另一个线程的加载失败，或用户已下线
+                return null;
+            }
+            List<FriendDao.FriendInfo> list = friendDao.getFriendList(userId);
+            if (list == null) {
+                // 查询失败不缓存，下次重试
+                state.discarded = true;
+                friendsByUser.remove(userId, state);
+                return null;
+            }
+            friends = new ConcurrentHashMap<>();
+            for (FriendDao.FriendInfo friend : list) {
+                friends.put(friend.getFriendId(), friend);
+            }
+            state.friends = friends;
+            if (!sessionManager.isUserOnline(userId)) {
+                // 查库期间用户已下线，onUserOffline 可能已经执行过，不留下常驻的缓存
+                state.discarded = true;
+                friendsByUser.remove(userId, state);
+                return friends;
+            }
+        }
+        if (presence != null) {
+            presence.subscribe(friends.keySet());
+        }
+        return friends;
+    }
+
+    @Override
+    public void onUserOnline(ClientSession session) {
+        Long userId = session.getUser().getId();
+        FriendState state = friendsByUser.get(userId);
+        if (state == null || state.friends == null) {
+            load(userId);
+        }
+    }
+
+    @Override
+    public void onUserOffline(ClientSession session) {
+        Long userId = session.getUser().getId();
+        // 多端登录时等最后一个会话下线再释放
+        if (!sessionManager.isUserOnline(userId)) {
+            friendsByUser.remove(userId);
+        }
+    }
+
+    private static final class FriendState {
+        // 好友ID -> 好友信息，加载完成前为 null
+        private volatile Map<Long, FriendDao.FriendInfo> friends;
+        // 加载失败或加载完成时用户已下线，已从缓存移除
+        private boolean discarded;
+    }
+}
@@ -0,0 +1,203 @@
+package com.rain.chatroom.server.manager;
+
+import com.rain.chatroom.server.cache.LruCache;
+import com.rain.chatroom.server.dao.GroupDao;
+import com.rain.chatroom.server.handler.ClientSession;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群成员索引 - 群ID -> 成员ID集合 + 在线成员会话集合
+ *
+ * 设计思路：
+ * 1. 按群懒加载：第一次用到某个群时查一次成员ID，之后常驻内存
+ * 2. createGroup / addGroupMember 写库成功后同步更新已加载的群
+ * 3. 监听会话上下线，维护已加载群的在线成员会话，群消息扇出只需一次查表 + 遍历在线成员
+ * 4. 反向索引 用户ID -> 已加载的群ID，上下线时只处理该用户所在的群
+ * 5. 集群模式下其他节点的入群通过 onRemoteMemberAdded 同步到已加载的群
+ * 6. 只有存在成员的群才进入常驻索引；不存在(或没有成员)的群ID记在有界、带过期时间的缓存里，
+ *    客户端遍历随机群ID既不会让索引无限增长，也不会每次都查库；有人入群时清除对应的记录
+ *
+ * 加载与上下线并发时，加载方先登记反向索引再读在线会话，保证不会漏掉新上线的成员；
+ * 可能短暂残留已断开的会话，扇出时按 isActive 过滤并顺带清理
+ */
+@Slf4j
+public class GroupManager implements SessionListener {
+    // 没有成员的群ID最多记录多少个、记录多久
+    private static final int EMPTY_GROUP_CACHE_SIZE = 10000;
+    private static final long EMPTY_GROUP_TTL_SECONDS = 60;
+
+    private final SessionManager sessionManager;
+    private final GroupDao groupDao;
+
+    private final ConcurrentMap<Long, GroupState> groups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<Long>> groupsByUser = new ConcurrentHashMap<>();
+    // 查过库、没有成员的群ID
+    private final LruCache<Long, Boolean> emptyGroups =
+            new LruCache<>(EMPTY_GROUP_CACHE_SIZE, EMPTY_GROUP_TTL_SECONDS, 0, TimeUnit.SECONDS);
+
+    public GroupManager(SessionManager sessionManager, GroupDao groupDao) {
+        this.sessionManager = sessionManager;
+        this.groupDao = groupDao;
+    }
+
+    /**
+     * 创建群组，创建者作为群主加入；返回群ID，失败返回 null
+     */
+    public Long createGroup(String groupName, String description, Long creatorId) {
+        Long groupId = groupDao.createGroup(groupName, description, creatorId);
+        if (groupId != null) {
+            // 新群只有创建者一个成员，直接建立索引，无需再查库
+            GroupState state = new GroupState();
+            state.loaded = true;
+            groups.put(groupId, state);
+            addMember(groupId, state, creatorId);
+        }
+        return groupId;
+    }
+
+    public boolean addGroupMember(Long groupId, Long userId, int role) {
+        if (!groupDao.addGroupMember(groupId, userId, role)) {
+            return false;
+        }
+        onMemberAdded(groupId, userId);
+        return true;
+    }
+
+    /**
+     * 其他节点上有用户加入了群：成员已写库，只更新本节点已加载的索引，未加载的群下次用到时从库里读取
+     */
+    public void onRemoteMemberAdded(Long groupId, Long userId) {
+        onMemberAdded(groupId, userId);
+    }
+
+    // 正在加载的群持有锁，等加载完成后再补上新成员；清除"没有成员"的记录放在最后，不会被并发的加载重新写入
+    private void onMemberAdded(Long groupId, Long userId) {
+        GroupState state = groups.get(groupId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.loaded) {
+                    addMember(groupId, state, userId);
+                }
+            }
+        }
+        emptyGroups.invalidate(groupId);
+    }
+
+    public boolean isMember(Long groupId, Long userId) {
+        GroupState state = load(groupId);
+        return state != null && state.memberIds.contains(userId);
+    }
+
+    /**
+     * 群内在线成员的会话(只读视图)，群不存在或加载失败时返回空集合
+     */
+    public Set<ClientSession> getOnlineMembers(Long groupId) {
+        GroupState state = load(groupId);
+        return state != null ? Collections.unmodifiableSet(state.onlineSessions) : Collections.<ClientSession>emptySet();
+    }
+
+    /**
+     * 清理扇出时发现的已断开会话
+     */
+    public void removeStaleSession(Long groupId, ClientSession session) {
+        GroupState state = groups.get(groupId);
+        if (state != null) {
+            state.onlineSessions.remove(session);
+        }
+    }
+
+    public int getLoadedGroupCount() {
+        return groups.size();
+    }
+
+    private GroupState load(Long groupId) {
+        GroupState state = groups.get(groupId);
+        if (state == null) {
+            if (emptyGroups.getIfPresent(groupId) != null) {
+                return null;
+            }
+            state = groups.computeIfAbsent(groupId, id -> new GroupState());
+        }
+        if (state.loaded) {
+            return state;
+        }
+        synchronized (state) {
+            if (state.discarded) {
+                // 等待期间另一个线程已查过库：群不存在或查询失败
+                return null;
+            }
+            if (!state.loaded) {
+                List<Long> memberIds = groupDao.getGroupMemberIds(groupId);
+                if (memberIds == null || memberIds.isEmpty()) {
+                    // 占位的状态不留在索引里；查询失败不缓存，下次重试
+                    state.discarded = true;
+                    groups.remove(groupId, state);
+                    if (memberIds != null) {
+                        emptyGroups.put(groupId, Boolean.TRUE);
+                    }
+                    return null;
+                }
+                for (Long userId : memberIds) {
+                    addMember(groupId, state, userId);
+                }
+                state.loaded = true;
+                log.debug("加载群成员索引: 群 {}, 成员 {}", groupId, memberIds.size());
+            }
+        }
+        return state;
+    }
+
+    // 先登记反向索引，再收集在线会话，与 onUserOnline 并发时不会漏掉
+    private void addMember(Long groupId, GroupState state, Long userId) {
+        state.memberIds.add(userId);
+        groupsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(groupId);
+        for (ClientSession session : sessionManager.getSessionsByUserId(userId)) {
+            if (session.isActive()) {
+                state.onlineSessions.add(session);
+            }
+        }
+    }
+
+    @Override
+    public void onUserOnline(ClientSession session) {
+        Set<Long> groupIds = groupsByUser.get(session.getUser().getId());
+        if (groupIds == null) {
+            return;
+        }
+        for (Long groupId : groupIds) {
+            GroupState state = groups.get(groupId);
+            if (state != null) {
+                state.onlineSessions.add(session);
+            }
+        }
+    }
+
+    @Override
+    public void onUserOffline(ClientSession session) {
+        Set<Long> groupIds = groupsByUser.get(session.getUser().getId());
+        if (groupIds == null) {
+            return;
+        }
+        for (Long groupId : groupIds) {
+            GroupState state = groups.get(groupId);
+            if (state != null) {
+                state.onlineSessions.remove(session);
+            }
+        }
+    }
+
+    private static final class GroupState {
+        private final Set<Long> memberIds = ConcurrentHashMap.newKeySet();
+        private final Set<ClientSession> onlineSessions = ConcurrentHashMap.newKeySet();
+        private volatile boolean loaded;
+        // 加载时发现群不存在或查询失败，已从索引移除
+        private boolean discarded;
+    }
+}
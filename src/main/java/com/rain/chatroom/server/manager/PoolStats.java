@@ -0,0 +1,58 @@
+package com.rain.chatroom.server.manager;
+
+import com.rain.chatroom.server.config.ThreadPoolConfig;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池运行状态快照 - 活跃线程、队列、拒绝次数，以及由此计算的饱和度
+ */
+@Getter
+@RequiredArgsConstructor
+public class PoolStats {
+    private final String name;
+    private final int maxThreads;
+    private final int activeThreads;
+    private final int queueSize;
+    // 队列容量，-1 表示无界
+    private final int queueCapacity;
+    private final long completedTasks;
+    private final long rejectedTasks;
+
+    public static PoolStats of(String name, ThreadPoolExecutor executor) {
+        int queued = executor.getQueue().size();
+        int remaining = executor.getQueue().remainingCapacity();
+        return new PoolStats(name, executor.getMaximumPoolSize(), executor.getActiveCount(), queued,
+                remaining == Integer.MAX_VALUE ? -1 : queued + remaining,
+                executor.getCompletedTaskCount(), rejectedCountOf(executor));
+    }
+
+    static long rejectedCountOf(ThreadPoolExecutor executor) {
+        if (executor.getRejectedExecutionHandler() instanceof ThreadPoolConfig.CountingAbortPolicy) {
+            return ((ThreadPoolConfig.CountingAbortPolicy) executor.getRejectedExecutionHandler()).getRejectedCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 线程饱和度：活跃线程 / 最大线程数
+     */
+    public double getThreadSaturation() {
+        return maxThreads > 0 ? (double) activeThreads / maxThreads : 0;
+    }
+
+    /**
+     * 队列饱和度：排队任务 / 队列容量，无界或同步移交队列为 0
+     */
+    public double getQueueSaturation() {
+        return queueCapacity > 0 ? (double) queueSize / queueCapacity : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[活跃 %d/%d, 队列 %d/%s, 完成 %d, 拒绝 %d]", name, activeThreads, maxThreads,
+                queueSize, queueCapacity < 0 ? "∞" : String.valueOf(queueCapacity), completedTasks, rejectedTasks);
+    }
+}
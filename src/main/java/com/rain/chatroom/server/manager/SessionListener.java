@@ -0,0 +1,17 @@
+package com.rain.chatroom.server.manager;
+
+import com.rain.chatroom.server.handler.ClientSession;
+
+/**
+ * 会话上下线事件，由 SessionManager 在索引更新之后回调
+ *
+ * 回调在触发事件的线程(登录/断开连接的线程)同步执行，实现应尽量轻量
+ */
+public interface SessionListener {
+
+    /** 会话绑定用户(登录成功)之后 */
+    void onUserOnline(ClientSession session);
+
+    /** 已登录的会话被移除之后 */
+    void onUserOffline(ClientSession session);
+}
@@ -1,48 +1,190 @@
 package com.rain.chatroom.server.manager;
 
-import com.rain.chatroom.common.model.ClientInfo;
+import com.rain.chatroom.server.dao.UserDao;
 import com.rain.chatroom.server.handler.ClientSession;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 会话管理器 - 负责客户端会话的注册、查找、移除
+ *
+ * 除了 会话ID -> 会话 的主索引，还维护两个二级索引：
+ * - 用户名(昵称) -> 会话集合
+ * - 用户ID -> 会话集合
+ * 同一用户可多端登录，因此二级索引的值是集合。私聊/群聊路由只需查索引，开销与接收者数量成正比
+ *
+ * 二级索引的值是不可变集合，增删时整体替换：绝大多数用户只有一个会话，用单元素集合，
+ * 比每个用户一个并发集合省下数百字节；多端登录很少，复制的开销可以忽略。读取方拿到的是快照
+ *
+ * 已登录会话的上下线会通知 SessionListener(群成员索引、好友缓存等)，通知发生在索引更新之后
  */
 //SessionManager：负责管理客户端的会话（注册、移除、查找等）
 //管理最小单位是ClientSession，每一个ClientSession对应各自的socket信息、input output、状态（离线、在线）管理
 @Slf4j
 public class SessionManager {
-    private final ConcurrentMap<String, ClientSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, ClientSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<ClientSession>> sessionsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<ClientSession>> sessionsByUserId = new ConcurrentHashMap<>();
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
 
     public void registerSession(ClientSession session) {
-        sessions.put(session.getClientId(), session);
+        sessions.put(session.getSessionId(), session);
+        if (session.getUser() != null) {
+            addToIndexes(session);
+            fireOnline(session);
+        }
         log.info("用户注册: {}, 当前在线: {}", session.getUsername(), sessions.size());
     }
 
-    public void removeSession(String clientId) {
-        ClientSession session = sessions.remove(clientId);
+    /**
+     * 登录成功后绑定用户，会话的显示名为用户昵称，并加入二级索引
+     *
+     * 会话只保存不含密码的用户身份；同一用户已有在线会话且资料未变时共享同一个实例
+     */
+    public void setUser(ClientSession session, UserDao.User user) {
+        if (session.getUser() != null) {
+            removeFromIndexes(session);
+            fireOffline(session);
+        }
+        session.setUser(identityOf(user));
+        if (sessions.containsKey(session.getSessionId())) {
+            addToIndexes(session);
+            fireOnline(session);
+        }
+    }
+
+    private UserDao.Identity identityOf(UserDao.User user) {
+        for (ClientSession other : getSessionsByUserId(user.getId())) {
+            UserDao.Identity identity = other.getUser();
+            if (identity != null && identity.matches(user)) {
+                return identity;
+            }
+        }
+        return user.toIdentity();
+    }
+
+    public void removeSession(long sessionId) {
+        ClientSession session = sessions.remove(sessionId);
         if (session != null) {
+            if (session.getUser() != null) {
+                removeFromIndexes(session);
+                fireOffline(session);
+            }
             log.info("用户移除: {}, 剩余在线: {}", session.getUsername(), sessions.size());
         }
     }
 
-    public ClientSession getSession(String clientId) {
-        return sessions.get(clientId);
+    public ClientSession getSession(long sessionId) {
+        return sessions.get(sessionId);
     }
 
     public Collection<ClientSession> getAllSessions() {
         return sessions.values();
     }
 
+    public Set<ClientSession> getSessionsByUsername(String username) {
+        Set<ClientSession> result = sessionsByUsername.get(username);
+        return result != null ? result : Collections.<ClientSession>emptySet();
+    }
+
+    public Set<ClientSession> getSessionsByUserId(Long userId) {
+        Set<ClientSession> result = sessionsByUserId.get(userId);
+        return result != null ? result : Collections.<ClientSession>emptySet();
+    }
+
+    /**
+     * 本节点在线用户的ID(只读视图，随会话上下线变化)
+     */
+    public Set<Long> getOnlineUserIds() {
+        return Collections.unmodifiableSet(sessionsByUserId.keySet());
+    }
+
     public int getOnlineCount() {
         return sessions.size();
     }
 
     public boolean isUserOnline(String username) {
-        return sessions.values().stream()
-                .anyMatch(session -> username.equals(session.getUsername()));
+        return sessionsByUsername.containsKey(username);
+    }
+
+    public boolean isUserOnline(Long userId) {
+        return sessionsByUserId.containsKey(userId);
+    }
+
+    private void fireOnline(ClientSession session) {
+        for (SessionListener listener : listeners) {
+            try {
+                listener.onUserOnline(session);
+            } catch (Exception e) {
+                log.error("会话上线通知失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void fireOffline(ClientSession session) {
+        for (SessionListener listener : listeners) {
+            try {
+                listener.onUserOffline(session);
+            } catch (Exception e) {
+                log.error("会话下线通知失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void addToIndexes(ClientSession session) {
+        addToIndex(sessionsByUsername, session.getUsername(), session);
+        addToIndex(sessionsByUserId, session.getUser().getId(), session);
+    }
+
+    private void removeFromIndexes(ClientSession session) {
+        removeFromIndex(sessionsByUsername, session.getUsername(), session);
+        removeFromIndex(sessionsByUserId, session.getUser().getId(), session);
+    }
+
+    // compute 保证同一个键的替换是原子的
+    private static <K> void addToIndex(ConcurrentMap<K, Set<ClientSession>> index, K key, ClientSession session) {
+        if (key == null) {
+            return;
+        }
+        index.compute(key, (k, set) -> {
+            if (set == null) {
+                return Collections.singleton(session);
+            }
+            if (set.contains(session)) {
+                return set;
+            }
+            Set<ClientSession> copy = new HashSet<>(set);
+            copy.add(session);
+            return Collections.unmodifiableSet(copy);
+        });
+    }
+
+    private static <K> void removeFromIndex(ConcurrentMap<K, Set<ClientSession>> index, K key, ClientSession session) {
+        if (key == null) {
+            return;
+        }
+        index.computeIfPresent(key, (k, set) -> {
+            if (!set.contains(session)) {
+                return set;
+            }
+            if (set.size() == 1) {
+                return null;
+            }
+            Set<ClientSession> copy = new HashSet<>(set);
+            copy.remove(session);
+            return copy.size() == 1 ? Collections.singleton(copy.iterator().next()) : Collections.unmodifiableSet(copy);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.rain.chatroom.server.manager;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分条带执行器 - 多个单线程执行器，相同 key 的任务总是落在同一条带上按提交顺序执行
+ *
+ * 用于需要"同一会话/同一发送者内有序，不同会话之间并行"的场景，例如命令执行和消息扇出。
+ * 每条带的队列有界，满时抛出 RejectedExecutionException，由调用方决定如何降级
+ */
+public class StripedExecutor {
+    private final ThreadPoolExecutor[] stripes;
+
+    public StripedExecutor(ThreadPoolExecutor[] stripes) {
+        if (stripes.length == 0) {
+            throw new IllegalArgumentException("至少需要一个条带");
+        }
+        this.stripes = stripes;
+    }
+
+    public void execute(int key, Runnable task) throws RejectedExecutionException {
+        stripes[(key & 0x7fffffff) % stripes.length].execute(task);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 当前所有条带的运行状态，队列容量为各条带之和
+     */
+    public PoolStats getStats(String name) {
+        int active = 0;
+        int queued = 0;
+        int capacity = 0;
+        long completed = 0;
+        long rejected = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            active += stripe.getActiveCount();
+            queued += stripe.getQueue().size();
+            capacity += stripe.getQueue().size() + stripe.getQueue().remainingCapacity();
+            completed += stripe.getCompletedTaskCount();
+            rejected += PoolStats.rejectedCountOf(stripe);
+        }
+        return new PoolStats(name, stripes.length, active, queued, capacity, completed, rejected);
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor stripe : stripes) {
+            if (!stripe.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,4 +1,146 @@
 package com.rain.chatroom.server.manager;
 
-public class ThreadPoolManager {
+import com.rain.chatroom.common.metrics.MetricsRegistry;
+import com.rain.chatroom.server.config.ServerConfig;
+import com.rain.chatroom.server.config.ThreadPoolConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 线程池管理 - 按工作类型隔离(舱壁)的执行器，各自独立配置线程数和队列
+ *
+ * - 连接：阻塞模式下每连接一个线程(或虚拟线程)；NIO模式下执行会话的业务逻辑
+ * - 网络写出：把会话发送队列写到Socket，以及延迟合并写的定时器
+ * - 数据库：可能访问数据库的命令和私聊/群聊(按会话分条带)，以及离线消息投递
+ * - 扇出：大范围广播和群消息的逐个入队(按发送者分条带)
+ *
+ * 数据库变慢时只会占满数据库执行器的队列(新请求被拒绝并回复繁忙)，
+ * 连接线程、写出线程和扇出线程不受影响，在线消息照常送达
+ */
+@Slf4j
+@Getter
+public class ThreadPoolManager implements ThreadPoolManagerMXBean {
+    private static final int DATABASE_SCHEDULER_THREADS = 2;
+
+    // 阻塞模式下执行 handleClient、NIO模式下执行会话业务的执行器：平台线程池 或 虚拟线程
+    private final ExecutorService connectionExecutor;
+    // 平台线程池；使用虚拟线程时为 null
+    private final ThreadPoolExecutor connectionPool;
+    private final ThreadPoolExecutor writerPool;
+    private final ScheduledExecutorService flushTimer;
+    private final StripedExecutor databaseExecutor;
+    private final ScheduledExecutorService databaseScheduler;
+    private final StripedExecutor fanoutExecutor;
+
+    public ThreadPoolManager(ServerConfig config) {
+        ThreadPoolExecutor pool = null;
+        ExecutorService executor = null;
+        if (config.getTransport() == ServerConfig.TransportType.NIO) {
+            pool = ThreadPoolConfig.createSessionPool(config.getSessionPoolThreads());
+        } else if (config.getThreadMode() == ServerConfig.ThreadMode.VIRTUAL) {
+            executor = ThreadPoolConfig.createVirtualThreadExecutor();
+            if (executor == null) {
+                log.warn("当前JDK不支持虚拟线程(需要Java 21+)，回退到平台线程池");
+            }
+        }
+        if (pool == null && executor == null) {
+            pool = ThreadPoolConfig.createConnectionPool(config.getConnectionMaxThreads(),
+                    config.getConnectionQueueCapacity());
+        }
+        this.connectionPool = pool;
+        this.connectionExecutor = executor != null ? executor : pool;
+
+        this.writerPool = ThreadPoolConfig.createWriterThreadPool(config.getWriterThreads(),
+                config.getWriterQueueCapacity());
+        this.flushTimer = ThreadPoolConfig.createFlushTimer();
+        this.databaseExecutor = ThreadPoolConfig.createStripedExecutor("chat-db-",
+                config.getDatabaseThreads(), config.getDatabaseQueueCapacity());
+        this.databaseScheduler = ThreadPoolConfig.createOfflineDeliveryScheduler(DATABASE_SCHEDULER_THREADS);
+        this.fanoutExecutor = ThreadPoolConfig.createStripedExecutor("chat-fanout-",
+                config.getFanoutThreads(), config.getFanoutQueueCapacity());
+    }
+
+    @Override
+    public boolean isVirtualThreads() {
+        return connectionPool == null;
+    }
+
+    /**
+     * 各执行器当前的运行状态
+     */
+    @Override
+    public List<PoolStats> getStats() {
+        List<PoolStats> stats = new ArrayList<>(4);
+        if (connectionPool != null) {
+            stats.add(PoolStats.of("连接", connectionPool));
+        }
+        stats.add(PoolStats.of("写出", writerPool));
+        stats.add(databaseExecutor.getStats("数据库"));
+        stats.add(fanoutExecutor.getStats("扇出"));
+        return stats;
+    }
+
+    @Override
+    public boolean resizePool(String name, int threads) {
+        ThreadPoolExecutor pool = "connection".equals(name) ? connectionPool : "writer".equals(name) ? writerPool : null;
+        if (pool == null || threads < 1) {
+            return false;
+        }
+        // 核心线程数不能超过最大线程数，扩容先调最大值，缩容先调核心数
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+        log.info("线程池 {} 的线程数调整为 {}", name, threads);
+        return true;
+    }
+
+    /**
+     * 注册各执行器的活跃线程数、队列深度和累计拒绝次数仪表：pool.{名称}.active/queue/rejected
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        if (connectionPool != null) {
+            registerPool(registry, "connection", () -> PoolStats.of("连接", connectionPool));
+        }
+        registerPool(registry, "writer", () -> PoolStats.of("写出", writerPool));
+        registerPool(registry, "database", () -> databaseExecutor.getStats("数据库"));
+        registerPool(registry, "fanout", () -> fanoutExecutor.getStats("扇出"));
+    }
+
+    private static void registerPool(MetricsRegistry registry, String name, Supplier<PoolStats> stats) {
+        registry.gauge("pool." + name + ".active", () -> stats.get().getActiveThreads());
+        registry.gauge("pool." + name + ".queue", () -> stats.get().getQueueSize());
+        registry.gauge("pool." + name + ".rejected", () -> stats.get().getRejectedTasks());
+    }
+
+    /**
+     * 按依赖顺序关闭：先停止接收新任务，再等待数据库和扇出执行器处理完已排队的任务
+     */
+    public void shutdown() {
+        connectionExecutor.shutdown();
+        databaseScheduler.shutdownNow();
+        databaseExecutor.shutdown();
+        fanoutExecutor.shutdown();
+        try {
+            if (!databaseExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("数据库执行器未在5秒内处理完排队的任务");
+            }
+            fanoutExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerPool.shutdown();
+        flushTimer.shutdown();
+    }
 }
@@ -0,0 +1,18 @@
+package com.rain.chatroom.server.manager;
+
+import java.util.List;
+
+/**
+ * 线程池的 JMX 接口：各执行器的运行状态，以及运行时调整线程数
+ */
+public interface ThreadPoolManagerMXBean {
+    List<PoolStats> getStats();
+
+    boolean isVirtualThreads();
+
+    /**
+     * 调整线程池的线程数，name 为 connection(阻塞模式的连接池/NIO模式的会话池) 或 writer；
+     * 分条带执行器(database、fanout)的条带数决定任务的顺序归属，不支持运行时调整
+     */
+    boolean resizePool(String name, int threads);
+}
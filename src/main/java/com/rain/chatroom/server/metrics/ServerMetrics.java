@@ -0,0 +1,60 @@
+package com.rain.chatroom.server.metrics;
+
+import com.rain.chatroom.common.metrics.Counter;
+import com.rain.chatroom.common.metrics.Histogram;
+import com.rain.chatroom.common.metrics.MetricsRegistry;
+
+/**
+ * 服务器消息流水线的指标，热路径直接引用这里的静态字段
+ *
+ * 各阶段耗时(纳秒直方图)：
+ * - stage.read：NIO 事件循环一次读事件的读取+拆行/拆帧；阻塞模式的读包含空闲等待，不统计
+ * - stage.parse：命令查表+参数解析、二进制聊天帧解码
+ * - stage.persist：消息交给异步落库的耗时(入队/追加本地日志，队列满时包含同步写库)
+ * - stage.fanout：一次广播/群消息逐个放入接收者发送队列
+ * - stage.flush：一次把会话发送队列写到 Socket
+ *
+ * 集群模式下节点间转发的消息数(cluster.*)：发出、收到、批次数、因节点断开或队列满丢弃
+ *
+ * 直接内存缓冲区池(buffer.*)：申请次数、命中池、新分配、检测到的泄漏，见 BufferPool
+ *
+ * 发送频率限制(ratelimit.*)：会话、用户、群组、全局各级拒绝的输入数，见 RateLimiter
+ *
+ * 数据库调用和连接池等待时间见 PoolMetricsTracker(db.*)，线程池队列深度等仪表在启动时注册
+ */
+public final class ServerMetrics {
+    public static final MetricsRegistry REGISTRY = MetricsRegistry.getDefault();
+
+    public static final Histogram READ = REGISTRY.histogram("stage.read");
+    public static final Histogram PARSE = REGISTRY.histogram("stage.parse");
+    public static final Histogram PERSIST = REGISTRY.histogram("stage.persist");
+    public static final Histogram FANOUT = REGISTRY.histogram("stage.fanout");
+    public static final Histogram FLUSH = REGISTRY.histogram("stage.flush");
+
+    // 收到的行/帧、写出的消息
+    public static final Counter MESSAGES_IN = REGISTRY.counter("messages.in");
+    public static final Counter MESSAGES_OUT = REGISTRY.counter("messages.out");
+    public static final Counter BYTES_IN = REGISTRY.counter("bytes.in");
+    public static final Counter BYTES_OUT = REGISTRY.counter("bytes.out");
+
+    // 节点间转发
+    public static final Counter CLUSTER_OUT = REGISTRY.counter("cluster.out");
+    public static final Counter CLUSTER_IN = REGISTRY.counter("cluster.in");
+    public static final Counter CLUSTER_BATCHES = REGISTRY.counter("cluster.batches");
+    public static final Counter CLUSTER_DROPPED = REGISTRY.counter("cluster.dropped");
+
+    // 直接内存缓冲区池
+    public static final Counter BUFFER_ACQUIRE = REGISTRY.counter("buffer.acquire");
+    public static final Counter BUFFER_HIT = REGISTRY.counter("buffer.hit");
+    public static final Counter BUFFER_MISS = REGISTRY.counter("buffer.miss");
+    public static final Counter BUFFER_LEAK = REGISTRY.counter("buffer.leak");
+
+    // 发送频率限制
+    public static final Counter RATELIMIT_SESSION = REGISTRY.counter("ratelimit.session");
+    public static final Counter RATELIMIT_USER = REGISTRY.counter("ratelimit.user");
+    public static final Counter RATELIMIT_GROUP = REGISTRY.counter("ratelimit.group");
+    public static final Counter RATELIMIT_GLOBAL = REGISTRY.counter("ratelimit.global");
+
+    private ServerMetrics() {
+    }
+}
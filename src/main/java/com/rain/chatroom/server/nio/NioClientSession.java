@@ -0,0 +1,554 @@
+package com.rain.chatroom.server.nio;
+
+import com.rain.chatroom.common.protocol.BinaryFrame;
+import com.rain.chatroom.common.protocol.BinaryProtocol;
+import com.rain.chatroom.common.protocol.WireProtocol;
+import com.rain.chatroom.server.handler.ChatSessionHandler;
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.FlushPolicy;
+import com.rain.chatroom.server.handler.OutboundMessage;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.WriteContext;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BooleanSupplier;
+
+/**
+ * NIO客户端会话 - 非阻塞 SocketChannel 上的 ClientSession 实现
+ *
+ * 线程模型：
+ * - 读、解码(文本行或二进制帧)、写出都在所属的 NioEventLoop 线程执行
+ * - 解码出的行/帧按会话串行投递到业务线程池，交给 ChatSessionHandler 处理
+ * - sendMessage 可在任意线程调用，数据进入发送队列后由事件循环写出
+ *
+ * 读缓冲区由事件循环共享，会话只在有半行/半帧、部分写时才持有自己的缓冲区；
+ * 并发标志用字段更新器代替 Atomic 对象，不通过 channel.socket() 创建 Socket 适配对象
+ */
+@Slf4j
+public class NioClientSession extends ClientSession implements NioEventLoop.Handler {
+    // 单次调度最多处理的入站任务数，避免一个会话长期占用业务线程
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+    // 积压的入站消息超过该值时暂停读取
+    private static final int MAX_PENDING_INBOUND = 1024;
+
+    private static final AtomicIntegerFieldUpdater<NioClientSession> INBOUND_SCHEDULED =
+            AtomicIntegerFieldUpdater.newUpdater(NioClientSession.class, "inboundScheduled");
+    private static final AtomicIntegerFieldUpdater<NioClientSession> PENDING_INBOUND =
+            AtomicIntegerFieldUpdater.newUpdater(NioClientSession.class, "pendingInbound");
+    private static final AtomicIntegerFieldUpdater<NioClientSession> FLUSH_SCHEDULED =
+            AtomicIntegerFieldUpdater.newUpdater(NioClientSession.class, "flushScheduled");
+    private static final AtomicIntegerFieldUpdater<NioClientSession> CLOSED =
+            AtomicIntegerFieldUpdater.newUpdater(NioClientSession.class, "closed");
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final ChatSessionHandler sessionHandler;
+    private final Executor businessExecutor;
+    private final int maxLineLength;
+    private SelectionKey selectionKey;
+
+    // 入站：按会话串行执行
+    private final Queue<Runnable> inboundTasks = new ConcurrentLinkedQueue<>();
+    private volatile int inboundScheduled;
+    private volatile int pendingInbound;
+    private volatile boolean readSuspended;
+    private boolean inputClosed;
+
+    // 入站线路协议，收到首字节后确定，仅在事件循环线程访问
+    private WireProtocol inboundProtocol;
+    private boolean handshakeReceived;
+
+    // 未读完的半行/半帧数据，仅在事件循环线程访问，有残留数据时才分配
+    private byte[] partialLine;
+    private int partialLength;
+
+    // 出站：发送队列在父类；未写完的帧及其所属消息仅在事件循环线程访问，只有出现部分写时才分配。
+    // 帧可能是消息池化直接内存的视图，帧写完之前一直持有对应的消息
+    private ByteBuffer[] pending;
+    private OutboundMessage[] pendingMessages;
+    private int pendingIndex;
+    private int pendingCount;
+    private volatile int flushScheduled;
+    private volatile int closed;
+
+    public NioClientSession(SocketChannel channel, NioEventLoop eventLoop, OutboundQueue outboundQueue,
+                            WriteContext writeContext, ChatSessionHandler sessionHandler,
+                            Executor businessExecutor, int maxLineLength) {
+        super(outboundQueue, writeContext);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.sessionHandler = sessionHandler;
+        this.businessExecutor = businessExecutor;
+        this.maxLineLength = maxLineLength;
+    }
+
+    // 在事件循环线程调用
+    void register() throws IOException {
+        selectionKey = channel.register(eventLoop.selector(), SelectionKey.OP_READ, this);
+        runSerial(() -> sessionHandler.onConnect(this));
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        try {
+            SocketAddress address = channel.getRemoteAddress();
+            if (address instanceof InetSocketAddress) {
+                InetSocketAddress inet = (InetSocketAddress) address;
+                return inet.getAddress().getHostAddress() + ":" + inet.getPort();
+            }
+        } catch (IOException e) {
+            // 连接已关闭
+        }
+        return "unknown";
+    }
+
+    @Override
+    protected void onMessageQueued() {
+        scheduleFlush();
+    }
+
+    @Override
+    protected void onOutboundOverflow() {
+        active = false;
+        outboundQueue.clear();
+        // 走与对端断开相同的路径：取消读写并在业务线程完成会话清理
+        eventLoop.execute(this::onInputClosed);
+    }
+
+    @Override
+    public void close() {
+        active = false;
+        if (eventLoop.inEventLoop()) {
+            closeChannel();
+        } else {
+            eventLoop.execute(this::closeChannel);
+        }
+    }
+
+    /**
+     * 会话清理排在已提交的输入之后，在业务线程串行执行
+     */
+    @Override
+    public void disconnect() {
+        runSerial(() -> sessionHandler.onDisconnect(this));
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        if (key.isReadable()) {
+            read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onLoopClosing() {
+        closeChannel();
+    }
+
+    // ========== 读 ==========
+
+    private void read() {
+        long start = System.nanoTime();
+        ByteBuffer buffer = eventLoop.readBuffer();
+        buffer.clear();
+        int n;
+        try {
+            n = channel.read(buffer);
+        } catch (IOException e) {
+            log.debug("读取客户端数据失败: {}", e.getMessage());
+            n = -1;
+        }
+
+        if (n < 0) {
+            onInputClosed();
+            return;
+        }
+        if (n > 0) {
+            byte[] data = buffer.array();
+            if (inboundProtocol == null) {
+                inboundProtocol = data[0] == BinaryProtocol.MAGIC[0] ? WireProtocol.BINARY : WireProtocol.TEXT;
+            }
+            if (inboundProtocol == WireProtocol.BINARY) {
+                decodeFrames(data, buffer.position());
+            } else {
+                decodeLines(data, buffer.position());
+            }
+            ServerMetrics.BYTES_IN.add(n);
+            ServerMetrics.READ.recordSince(start);
+        }
+    }
+
+    // 与阻塞传输一致：一行不含行尾的 "\r\n" 不超过 maxLineLength 字节，超过时关闭连接
+    private void decodeLines(byte[] data, int length) {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (lineTooLong(data, start, i)) {
+                rejectLongLine();
+                return;
+            }
+            String line;
+            if (partialLength > 0) {
+                appendPartial(data, start, i - start);
+                line = toLine(partialLine, 0, partialLength);
+                partialLength = 0;
+                partialLine = null;
+            } else {
+                line = toLine(data, start, i - start);
+            }
+            start = i + 1;
+            dispatchLine(line);
+        }
+
+        if (start < length) {
+            // 多留一个字节给行尾的 '\r'，行结束时再精确检查
+            if (partialLength + (length - start) > maxLineLength + 1) {
+                rejectLongLine();
+                return;
+            }
+            appendPartial(data, start, length - start);
+        }
+    }
+
+    // 之前未结束的部分加上 data[start, end) 组成的一行是否超长
+    private boolean lineTooLong(byte[] data, int start, int end) {
+        int lineLength = partialLength + (end - start);
+        if (lineLength <= maxLineLength) {
+            return false;
+        }
+        byte last = end > start ? data[end - 1] : partialLine[partialLength - 1];
+        return lineLength > maxLineLength + 1 || last != '\r';
+    }
+
+    private void rejectLongLine() {
+        log.warn("客户端消息过长，关闭连接: {}", getRemoteAddress());
+        partialLine = null;
+        partialLength = 0;
+        onInputClosed();
+    }
+
+    private void decodeFrames(byte[] data, int length) {
+        byte[] source = data;
+        int limit = length;
+        if (partialLength > 0) {
+            appendPartial(data, 0, length);
+            source = partialLine;
+            limit = partialLength;
+        }
+
+        int consumed = consumeFrames(source, limit);
+        if (consumed < 0) {
+            partialLine = null;
+            partialLength = 0;
+            onInputClosed();
+            return;
+        }
+
+        int remaining = limit - consumed;
+        if (source == partialLine) {
+            if (remaining == 0) {
+                partialLine = null;
+            } else {
+                System.arraycopy(partialLine, consumed, partialLine, 0, remaining);
+            }
+            partialLength = remaining;
+        } else if (remaining > 0) {
+            appendPartial(data, consumed, remaining);
+        }
+    }
+
+    // 解析完整的握手和帧，返回已消费的字节数；协议错误返回 -1
+    private int consumeFrames(byte[] data, int limit) {
+        int position = 0;
+        if (!handshakeReceived) {
+            if (limit < BinaryProtocol.HANDSHAKE_LENGTH) {
+                return 0;
+            }
+            int version = BinaryProtocol.readHandshake(data, 0);
+            if (version < 0) {
+                log.warn("二进制协议握手失败，关闭连接: {}", getRemoteAddress());
+                return -1;
+            }
+            handshakeReceived = true;
+            position = BinaryProtocol.HANDSHAKE_LENGTH;
+            dispatch(() -> sessionHandler.onHandshake(this, version));
+        }
+
+        while (limit - position >= BinaryProtocol.LENGTH_FIELD_SIZE) {
+            int frameLength = BinaryProtocol.readInt(data, position);
+            if (frameLength < 1 || frameLength > maxLineLength) {
+                log.warn("非法的帧长度: {}，关闭连接: {}", frameLength, getRemoteAddress());
+                return -1;
+            }
+            int frameStart = position + BinaryProtocol.LENGTH_FIELD_SIZE;
+            if (limit - frameStart < frameLength) {
+                break;
+            }
+            // 读缓冲区由事件循环复用，交给业务线程前复制
+            BinaryFrame frame = BinaryFrame.copyOf(data, frameStart, frameLength);
+            position = frameStart + frameLength;
+            dispatch(() -> sessionHandler.onFrame(this, frame));
+        }
+        return position;
+    }
+
+    private void appendPartial(byte[] data, int offset, int length) {
+        if (partialLine == null) {
+            partialLine = new byte[Math.max(256, length)];
+        } else if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLength + length));
+        }
+        System.arraycopy(data, offset, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private static String toLine(byte[] data, int offset, int length) {
+        if (length > 0 && data[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private void dispatchLine(String line) {
+        dispatch(() -> sessionHandler.onMessage(this, line));
+    }
+
+    // 在业务线程串行执行 action，返回 false 时关闭连接
+    private void dispatch(BooleanSupplier action) {
+        if (PENDING_INBOUND.incrementAndGet(this) >= MAX_PENDING_INBOUND && !readSuspended) {
+            // 业务处理跟不上，暂停读取，由TCP窗口对客户端形成背压
+            readSuspended = true;
+            selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        }
+        runSerial(() -> {
+            try {
+                if (active && !action.getAsBoolean()) {
+                    sessionHandler.onDisconnect(this);
+                }
+            } finally {
+                if (PENDING_INBOUND.decrementAndGet(this) < MAX_PENDING_INBOUND / 2 && readSuspended) {
+                    eventLoop.execute(this::resumeRead);
+                }
+            }
+        });
+    }
+
+    private void resumeRead() {
+        if (readSuspended && selectionKey.isValid()) {
+            readSuspended = false;
+            selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void onInputClosed() {
+        if (inputClosed) {
+            return;
+        }
+        inputClosed = true;
+        selectionKey.cancel();
+        runSerial(() -> sessionHandler.onDisconnect(this));
+    }
+
+    // ========== 业务串行执行 ==========
+
+    private void runSerial(Runnable task) {
+        inboundTasks.offer(task);
+        if (INBOUND_SCHEDULED.compareAndSet(this, 0, 1)) {
+            businessExecutor.execute(this::drainInbound);
+        }
+    }
+
+    private void drainInbound() {
+        Runnable task;
+        int processed = 0;
+        while (processed < MAX_TASKS_PER_DRAIN && (task = inboundTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("处理客户端消息异常: {}", e.getMessage(), e);
+            }
+            processed++;
+        }
+        inboundScheduled = 0;
+        if (!inboundTasks.isEmpty() && INBOUND_SCHEDULED.compareAndSet(this, 0, 1)) {
+            businessExecutor.execute(this::drainInbound);
+        }
+    }
+
+    // ========== 写 ==========
+
+    private void scheduleFlush() {
+        if (FLUSH_SCHEDULED.compareAndSet(this, 0, 1)) {
+            long delayMicros = writeContext.getFlushPolicy().effectiveDelayMicros();
+            if (delayMicros > 0) {
+                // 延迟写出，让窗口内的后续消息合并到同一次聚集写
+                eventLoop.schedule(this::flush, delayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                eventLoop.execute(this::flush);
+            }
+        }
+    }
+
+    // 在事件循环线程执行
+    private void flush() {
+        flushScheduled = 0;
+        if (!channel.isOpen() || !selectionKey.isValid()) {
+            outboundQueue.clear();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (writeOut()) {
+                if ((selectionKey.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                    selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            } else {
+                // 内核发送缓冲区已满，等待可写事件
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            log.debug("发送消息失败: {}", e.getMessage());
+            releasePending();
+            outboundQueue.clear();
+            onInputClosed();
+        } finally {
+            ServerMetrics.FLUSH.recordSince(start);
+        }
+    }
+
+    /**
+     * 写出未完成的帧和发送队列中的消息，全部写完返回 true，内核缓冲区满返回 false
+     *
+     * 合并写开启时，一次从队列取出多条消息组成聚集写(writev)，受 MAX_GATHER 和 maxBatchBytes 限制；
+     * 关闭时每条消息单独写出
+     */
+    private boolean writeOut() throws IOException {
+        FlushPolicy policy = writeContext.getFlushPolicy();
+        while (true) {
+            if (pending == null || pendingIndex == pendingCount) {
+                pending = null;
+                pendingMessages = null;
+                ByteBuffer[] batch = eventLoop.gatherArray();
+                OutboundMessage[] messages = eventLoop.gatherMessages();
+                int count = fillBatch(batch, messages, policy.isBatching() ? batch.length : 1,
+                        policy.getMaxBatchBytes());
+                if (count == 0) {
+                    return true;
+                }
+                int written;
+                try {
+                    written = writeBatch(batch, 0, count);
+                } catch (IOException e) {
+                    Arrays.fill(batch, 0, count, null);
+                    releaseMessages(messages, 0, count);
+                    throw e;
+                }
+                if (written < count) {
+                    // 部分写：把剩余的帧转存到会话自己的数组，共享数组留给其他会话使用
+                    pending = Arrays.copyOfRange(batch, written, count);
+                    pendingMessages = Arrays.copyOfRange(messages, written, count);
+                    pendingIndex = 0;
+                    pendingCount = pending.length;
+                    Arrays.fill(messages, written, count, null);
+                }
+                Arrays.fill(batch, 0, count, null);
+                releaseMessages(messages, 0, written);
+                if (pending != null) {
+                    return false;
+                }
+            } else {
+                int from = pendingIndex;
+                pendingIndex += writeBatch(pending, pendingIndex, pendingCount - pendingIndex);
+                releaseMessages(pendingMessages, from, pendingIndex);
+                if (pendingIndex < pendingCount) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private int fillBatch(ByteBuffer[] batch, OutboundMessage[] messages, int maxFrames, int maxBytes) {
+        int count = 0;
+        long bytes = 0;
+        OutboundMessage message;
+        while (count < maxFrames && bytes < maxBytes && (message = outboundQueue.poll()) != null) {
+            ByteBuffer frame = message.frame(outboundProtocolFor(message));
+            messages[count] = message;
+            batch[count++] = frame;
+            bytes += frame.remaining();
+        }
+        return count;
+    }
+
+    // 帧已写完(或不再写出)的消息交还持有
+    private static void releaseMessages(OutboundMessage[] messages, int from, int to) {
+        for (int i = from; i < to; i++) {
+            messages[i].release();
+            messages[i] = null;
+        }
+    }
+
+    private void releasePending() {
+        if (pending != null) {
+            releaseMessages(pendingMessages, pendingIndex, pendingCount);
+            pending = null;
+            pendingMessages = null;
+        }
+    }
+
+    // 一次聚集写，返回已完整写出的帧数
+    private int writeBatch(ByteBuffer[] frames, int offset, int length) throws IOException {
+        long n = length == 1 ? channel.write(frames[offset]) : channel.write(frames, offset, length);
+        int done = 0;
+        while (done < length && !frames[offset + done].hasRemaining()) {
+            done++;
+        }
+        if (n > 0) {
+            recordWrite(n, done);
+        }
+        return done;
+    }
+
+    // 在事件循环线程执行：尽量写出剩余数据后关闭
+    private void closeChannel() {
+        if (!CLOSED.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        try {
+            if (channel.isOpen()) {
+                writeOut();
+            }
+        } catch (IOException ignored) {
+            // 连接已断开
+        }
+        releasePending();
+        outboundQueue.clear();
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("关闭客户端连接失败: {}", e.getMessage());
+        }
+    }
+}
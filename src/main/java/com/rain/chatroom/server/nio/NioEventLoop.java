@@ -0,0 +1,214 @@
+package com.rain.chatroom.server.nio;
+
+import com.rain.chatroom.server.handler.OutboundMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 事件循环 - 一个线程 + 一个Selector，负责一批连接的就绪事件和提交进来的任务
+ *
+ * 设计思路：
+ * 1. 所有对 SelectionKey/Channel 的操作都在本线程执行，避免加锁
+ * 2. 其他线程通过 execute() 投递任务，必要时唤醒 Selector
+ * 3. 读缓冲区和聚集写数组按循环共享，空闲连接不占用缓冲区
+ * 4. 支持简单的定时任务(用于延迟合并写出)
+ */
+@Slf4j
+public class NioEventLoop implements Executor {
+
+    /**
+     * 注册到Selector上的处理器，作为SelectionKey的attachment
+     */
+    interface Handler {
+        void onSelected(SelectionKey key);
+
+        void onLoopClosing();
+    }
+
+    // 单次聚集写最多包含的帧数
+    static final int MAX_GATHER = 64;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+    private final ByteBuffer readBuffer;
+    // 聚集写时使用的帧数组，仅本循环线程使用
+    private final ByteBuffer[] gatherArray = new ByteBuffer[MAX_GATHER];
+    // 与 gatherArray 一一对应的消息，帧写完后释放
+    private final OutboundMessage[] gatherMessages = new OutboundMessage[MAX_GATHER];
+    // 定时任务，仅本循环线程访问
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+    private long scheduledSequence;
+    private volatile boolean running = true;
+
+    public NioEventLoop(String name, int readBufferSize) throws IOException {
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocate(readBufferSize);
+        this.thread = new Thread(this::run, name);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    // 仅供本循环线程使用
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    // 仅供本循环线程使用
+    ByteBuffer[] gatherArray() {
+        return gatherArray;
+    }
+
+    // 仅供本循环线程使用
+    OutboundMessage[] gatherMessages() {
+        return gatherMessages;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        taskQueue.offer(task);
+        if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 延迟执行任务，精度受 select 超时限制，约为1毫秒
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(delay);
+        execute(() -> scheduledTasks.add(new ScheduledTask(deadline, scheduledSequence++, task)));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                wakenUp.set(false);
+                if (!taskQueue.isEmpty()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(selectTimeoutMillis());
+                }
+                processSelectedKeys();
+                runScheduledTasks();
+                runAllTasks();
+            } catch (Throwable t) {
+                log.error("事件循环异常: {}", t.getMessage(), t);
+            }
+        }
+        closeAll();
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            Handler handler = (Handler) key.attachment();
+            try {
+                if (key.isValid()) {
+                    handler.onSelected(key);
+                }
+            } catch (CancelledKeyException e) {
+                // 连接已关闭，忽略
+            }
+        }
+    }
+
+    private long selectTimeoutMillis() {
+        ScheduledTask next = scheduledTasks.peek();
+        if (next == null) {
+            return 1000;
+        }
+        long remaining = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime());
+        return Math.max(1, remaining);
+    }
+
+    private void runScheduledTasks() {
+        long now = System.nanoTime();
+        ScheduledTask next;
+        while ((next = scheduledTasks.peek()) != null && next.deadline - now <= 0) {
+            scheduledTasks.poll();
+            taskQueue.offer(next.task);
+        }
+    }
+
+    private void runAllTasks() {
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("事件循环任务执行失败: {}", t.getMessage(), t);
+            }
+        }
+    }
+
+    private void closeAll() {
+        runAllTasks();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Handler) {
+                ((Handler) attachment).onLoopClosing();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("关闭Selector失败: {}", e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public void awaitTermination(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long deadline;
+        private final long sequence;
+        private final Runnable task;
+
+        ScheduledTask(long deadline, long sequence, Runnable task) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask o) {
+            long diff = deadline - o.deadline;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.rain.chatroom.server.nio;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 事件循环组 - 固定数量的 NioEventLoop，新连接按轮询分配
+ */
+@Slf4j
+public class NioEventLoopGroup {
+    private final NioEventLoop[] loops;
+    private final AtomicInteger index = new AtomicInteger();
+
+    public NioEventLoopGroup(String namePrefix, int threads, int readBufferSize) throws IOException {
+        this.loops = new NioEventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new NioEventLoop(namePrefix + "-" + (i + 1), readBufferSize);
+        }
+    }
+
+    public void start() {
+        for (NioEventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public NioEventLoop next() {
+        return loops[Math.abs(index.getAndIncrement() % loops.length)];
+    }
+
+    public int size() {
+        return loops.length;
+    }
+
+    public void shutdown() {
+        for (NioEventLoop loop : loops) {
+            loop.shutdown();
+        }
+        for (NioEventLoop loop : loops) {
+            try {
+                loop.awaitTermination(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
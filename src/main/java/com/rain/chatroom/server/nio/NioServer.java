@@ -0,0 +1,137 @@
+package com.rain.chatroom.server.nio;
+
+import com.rain.chatroom.server.config.ServerConfig;
+import com.rain.chatroom.server.handler.ChatSessionHandler;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.WriteContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * NIO服务端 - boss/worker 事件循环模型
+ *
+ * 设计思路：
+ * 1. boss 循环只负责 accept，新连接轮询分配给 worker 循环
+ * 2. worker 循环负责读写和按行解码，一个线程可承载上万空闲连接
+ * 3. 业务逻辑(登录、命令、数据库)在业务线程池按会话串行执行，不阻塞事件循环
+ */
+@Slf4j
+public class NioServer {
+    private final ServerConfig config;
+    private final ChatSessionHandler sessionHandler;
+    private final Executor businessExecutor;
+    private final WriteContext writeContext;
+
+    private NioEventLoopGroup bossGroup;
+    private NioEventLoopGroup workerGroup;
+    private ServerSocketChannel serverChannel;
+
+    public NioServer(ServerConfig config, ChatSessionHandler sessionHandler, Executor businessExecutor,
+                     WriteContext writeContext) {
+        this.config = config;
+        this.sessionHandler = sessionHandler;
+        this.businessExecutor = businessExecutor;
+        this.writeContext = writeContext;
+    }
+
+    public void start() throws IOException {
+        bossGroup = new NioEventLoopGroup("nio-boss", 1, 1);
+        workerGroup = new NioEventLoopGroup("nio-worker", config.getNioWorkerThreads(),
+                config.getNioReadBufferSize());
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+        serverChannel.configureBlocking(false);
+
+        bossGroup.start();
+        workerGroup.start();
+
+        NioEventLoop boss = bossGroup.next();
+        boss.execute(() -> {
+            try {
+                serverChannel.register(boss.selector(), SelectionKey.OP_ACCEPT, new Acceptor());
+            } catch (IOException e) {
+                log.error("注册监听端口失败: {}", e.getMessage());
+            }
+        });
+
+        log.info("NIO聊天服务器启动在端口: {}, worker线程: {}", config.getPort(), workerGroup.size());
+    }
+
+    public void stop() {
+        if (bossGroup != null) {
+            bossGroup.shutdown();
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            log.error("关闭监听端口失败: {}", e.getMessage());
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdown();
+        }
+    }
+
+    private void register(SocketChannel channel) {
+        NioEventLoop worker = workerGroup.next();
+        worker.execute(() -> {
+            try {
+                NioClientSession session = new NioClientSession(channel, worker,
+                        new OutboundQueue(config.getOutboundQueueCapacity(), config.getOverflowPolicy()),
+                        writeContext, sessionHandler, businessExecutor, config.getMaxLineLength());
+                session.register();
+            } catch (IOException e) {
+                log.error("注册客户端连接失败: {}", e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 忽略
+        }
+    }
+
+    /**
+     * 接入处理器 - 挂在 ServerSocketChannel 的 SelectionKey 上
+     */
+    private class Acceptor implements NioEventLoop.Handler {
+        @Override
+        public void onSelected(SelectionKey key) {
+            SocketChannel channel;
+            try {
+                while ((channel = serverChannel.accept()) != null) {
+                    try {
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        log.debug("客户端连接: {}", channel.getRemoteAddress());
+                        register(channel);
+                    } catch (IOException e) {
+                        log.error("配置客户端连接失败: {}", e.getMessage());
+                        closeQuietly(channel);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("接受连接失败: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void onLoopClosing() {
+            // 监听端口在 stop() 中关闭
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.rain.chatroom.server.ratelimit;
+
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送频率限制 - 已登录用户的每条输入(聊天、私聊、群聊、命令)在读路径上先取令牌，再落库和扇出
+ *
+ * 设计思路：
+ * 1. 四级令牌桶，任一级没有令牌就丢弃这条输入：
+ *    - 会话：挂在 ClientSession 上，限制单个连接的刷屏
+ *    - 用户：按用户ID共享，同一账号开多个连接也不能绕过
+ *    - 群组：按群组ID，限制一个群的总消息量，在群消息校验成员之后检查
+ *    - 全局：整个节点的准入上限，超出时优先保护已经在途的消息
+ *    速率配置为 0 的级别不限制
+ * 2. 令牌桶只用 CAS 更新一个 long，不加锁；用户/群组桶放在 ConcurrentHashMap 中，
+ *    数量超过阈值时顺带清理已补满的桶(补满的桶与新建的桶等价，丢弃不影响限流效果)
+ * 3. 被拒绝时回复一条 [系统] 提示；每个会话每秒最多提示一次，避免提示本身刷满发送队列
+ * 4. 前面的级别已经扣掉的令牌不退还，被后面的级别拒绝的输入同样计入前面级别的用量
+ *
+ * 集群模式下各节点分别限制本节点的连接，群组和全局上限都是单节点的值
+ *
+ * 指标：ratelimit.session / ratelimit.user / ratelimit.group / ratelimit.global 为各级拒绝次数
+ */
+public class RateLimiter {
+    // 用户/群组桶超过该数量时开始清理空闲的桶
+    private static final int MIN_SWEEP_SIZE = 1024;
+    private static final long NOTICE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int sessionRate;
+    private final int sessionBurst;
+    private final BucketMap userBuckets;
+    private final BucketMap groupBuckets;
+    private final TokenBucket globalBucket;
+
+    public RateLimiter(int sessionRate, int sessionBurst, int userRate, int userBurst,
+                       int groupRate, int groupBurst, int globalRate, int globalBurst) {
+        this.sessionRate = sessionRate;
+        this.sessionBurst = sessionBurst;
+        this.userBuckets = userRate > 0 ? new BucketMap(userRate, userBurst) : null;
+        this.groupBuckets = groupRate > 0 ? new BucketMap(groupRate, groupBurst) : null;
+        this.globalBucket = globalRate > 0 ? new TokenBucket(globalRate, globalBurst) : null;
+    }
+
+    /**
+     * 已登录会话的一条输入：依次检查会话、用户、全局限额，被拒绝时已回复提示
+     */
+    public boolean tryAcquire(ClientSession session) {
+        long now = System.nanoTime();
+        if (sessionRate > 0 && !sessionBucket(session).tryAcquire(now)) {
+            ServerMetrics.RATELIMIT_SESSION.increment();
+            return reject(session, now, "[系统] 发送太频繁，请稍后再试");
+        }
+        if (userBuckets != null && session.getUser() != null
+                && !userBuckets.get(session.getUser().getId()).tryAcquire(now)) {
+            ServerMetrics.RATELIMIT_USER.increment();
+            return reject(session, now, "[系统] 发送太频繁，请稍后再试");
+        }
+        if (globalBucket != null && !globalBucket.tryAcquire(now)) {
+            ServerMetrics.RATELIMIT_GLOBAL.increment();
+            return reject(session, now, "[系统] 服务器繁忙，消息未发送，请稍后再试");
+        }
+        return true;
+    }
+
+    /**
+     * 发往群组的消息额外检查群组限额
+     */
+    public boolean tryAcquireGroup(ClientSession session, long groupId) {
+        long now = System.nanoTime();
+        if (groupBuckets == null || groupBuckets.get(groupId).tryAcquire(now)) {
+            return true;
+        }
+        ServerMetrics.RATELIMIT_GROUP.increment();
+        return reject(session, now, "[系统] 群组 " + groupId + " 消息太频繁，请稍后再试");
+    }
+
+    // 会话的输入是串行处理的，懒创建不需要同步
+    private TokenBucket sessionBucket(ClientSession session) {
+        TokenBucket bucket = session.getRateLimit();
+        if (bucket == null) {
+            bucket = new TokenBucket(sessionRate, sessionBurst);
+            session.setRateLimit(bucket);
+        }
+        return bucket;
+    }
+
+    private static boolean reject(ClientSession session, long now, String notice) {
+        long last = session.getThrottleNoticeTime();
+        if (last == 0 || now - last >= NOTICE_INTERVAL_NANOS) {
+            session.setThrottleNoticeTime(now);
+            session.sendMessage(notice);
+        }
+        return false;
+    }
+
+    public int getUserBucketCount() {
+        return userBuckets == null ? 0 : userBuckets.buckets.size();
+    }
+
+    public int getGroupBucketCount() {
+        return groupBuckets == null ? 0 : groupBuckets.buckets.size();
+    }
+
+    // 按ID索引的令牌桶，插入新桶时如果数量翻倍则清理一次空闲的桶
+    private static final class BucketMap {
+        private final int rate;
+        private final int burst;
+        private final ConcurrentHashMap<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private volatile int sweepAt = MIN_SWEEP_SIZE;
+
+        BucketMap(int rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        TokenBucket get(long id) {
+            TokenBucket bucket = buckets.get(id);
+            if (bucket != null) {
+                return bucket;
+            }
+            bucket = buckets.computeIfAbsent(id, key -> new TokenBucket(rate, burst));
+            if (buckets.size() >= sweepAt) {
+                sweep();
+            }
+            return bucket;
+        }
+
+        private synchronized void sweep() {
+            if (buckets.size() < sweepAt) {
+                return;
+            }
+            long now = System.nanoTime();
+            Iterator<TokenBucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isIdle(now)) {
+                    it.remove();
+                }
+            }
+            sweepAt = Math.max(MIN_SWEEP_SIZE, buckets.size() * 2);
+        }
+    }
+}
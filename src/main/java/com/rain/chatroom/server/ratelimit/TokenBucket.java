@@ -0,0 +1,57 @@
+package com.rain.chatroom.server.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 令牌桶 - 每秒补充 ratePerSecond 个令牌，最多积攒 burst 个
+ *
+ * 实现为 GCRA(通用信元速率算法)：只保存一个"理论到达时间"，
+ * 每放行一次向后推进一个令牌间隔，推进后超出当前时间 burst 个间隔即拒绝。
+ * 与按时间补充令牌的写法等价，但状态只有一个 long，用 CAS 更新，不加锁
+ */
+public final class TokenBucket {
+    private static final AtomicLongFieldUpdater<TokenBucket> TAT =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "tat");
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    // 理论到达时间(System.nanoTime)，不晚于当前时间表示桶是满的
+    private volatile long tat;
+
+    public TokenBucket(int ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("ratePerSecond 必须大于0: " + ratePerSecond);
+        }
+        this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        this.tat = System.nanoTime();
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * 取一个令牌，没有可用令牌时返回 false，不等待
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = tat;
+            long next = (current - nowNanos > 0 ? current : nowNanos) + intervalNanos;
+            if (next - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (TAT.compareAndSet(this, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 桶已补满(一段时间没有取令牌)，可以丢弃
+     */
+    public boolean isIdle(long nowNanos) {
+        return tat - nowNanos <= 0;
+    }
+}
@@ -1,19 +1,41 @@
 package com.rain.chatroom.server.service;
 
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.server.cluster.ClusterMessage;
+import com.rain.chatroom.server.cluster.MessageBus;
+import com.rain.chatroom.server.cluster.PresenceDirectory;
+import com.rain.chatroom.server.command.ArgSchema;
+import com.rain.chatroom.server.command.CommandArgs;
+import com.rain.chatroom.server.command.CommandDefinition;
+import com.rain.chatroom.server.command.CommandRegistry;
+import com.rain.chatroom.server.command.CommandType;
 import com.rain.chatroom.server.dao.FriendDao;
 import com.rain.chatroom.server.dao.GroupDao;
-import com.rain.chatroom.server.dao.MessageDao;
 import com.rain.chatroom.server.dao.UserDao;
 import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.OutboundMessage;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import com.rain.chatroom.server.handler.WriteStats;
+import com.rain.chatroom.server.manager.FriendManager;
+import com.rain.chatroom.server.manager.GroupManager;
 import com.rain.chatroom.server.manager.SessionManager;
+import com.rain.chatroom.server.manager.StripedExecutor;
+import com.rain.chatroom.server.metrics.ServerMetrics;
+import com.rain.chatroom.server.ratelimit.RateLimiter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 广播服务 - 负责消息的广播和定向发送
+ *
+ * 集群模式下先在本地扇出，再把消息发布到总线(每条逻辑消息一次)；
+ * 其他节点发来的消息由 onClusterMessage 只投递给本节点的会话，不再发布。
+ * 私聊按 PresenceDirectory 直接发往接收者所在的节点；不知道接收者在哪时交给其负责节点转发
  */
 //BroadcastService：负责消息的广播和定向发送，它依赖于SessionManager来获取所有会话。
 @Slf4j
@@ -21,150 +43,266 @@ import java.util.List;
 public class BroadcastService {
     //广播的本质还是靠sessionManageer去遍历所有的clientSession，这样才能给所有客户端发消息
     private final SessionManager sessionManager;
+    // 服务器共享的(带缓存的)UserDao
+    private final UserDao userDao;
+    // 群成员索引，群消息扇出不再查库
+    private final GroupManager groupManager;
+    // 在线用户的好友关系缓存
+    private final FriendManager friendManager;
+    // 私聊/群聊消息的写入和历史查询
+    private final HistoryService historyService;
+    // 接收者较多的广播/群消息交给扇出执行器，按发送者分条带保证同一发送者的消息顺序
+    private final StripedExecutor fanoutExecutor;
+    // 接收者不超过该值时直接在当前线程入队
+    private final int fanoutInlineThreshold;
+    // 集群总线和在线状态目录，单机模式为 null
+    private final MessageBus clusterBus;
+    private final PresenceDirectory presence;
+    // 群组消息频率限制，为 null 时不限制
+    private final RateLimiter rateLimiter;
 
     // 在BroadcastService中添加
-    private final FriendDao friendDao = new FriendDao();
     private final GroupDao groupDao = new GroupDao();
 
-    // 初始化 UserDao 实例
-    private final UserDao userDao = new UserDao();
-
-    private final MessageDao messageDao = new MessageDao();
-
     public void broadcastToAll(String message) {
         broadcastToAll(message, null);
     }
 
     //遍历所有在线的session，除了自己都发消息
+    //消息只编码一次，所有接收者共享同一份字节
     public void broadcastToAll(String message, ClientSession excludeSession) {
+        broadcastToAll(OutboundMessage.text(message), excludeSession);
+    }
+
+    public void broadcastToAll(OutboundMessage encoded, ClientSession excludeSession) {
+        deliverToAll(encoded, excludeSession, stripeOf(excludeSession));
+        publish(ClusterMessage.broadcast(nodeId(), encoded));
+    }
+
+    private void deliverToAll(OutboundMessage encoded, ClientSession excludeSession, int stripe) {
         Collection<ClientSession> sessions = sessionManager.getAllSessions();
+        fanOut(stripe, sessions.size(), encoded, () -> {
+            int sentCount = 0;
+            for (ClientSession session : sessions) {
+                if (session != excludeSession && session.isActive()) {
+                    session.sendMessage(encoded);
+                    sentCount++;
+                }
+            }
+            log.debug("广播消息, 接收者: {}", sentCount);
+        });
+    }
 
-        int sentCount = 0;
-        for (ClientSession session : sessions) {
-            if (session != excludeSession && session.isActive()) {
-                session.sendMessage(message);
-                sentCount++;
+    // 扇出执行器队列满时退回到发送者线程执行，相当于对发送者施加背压，消息不会丢。
+    // 扇出期间持有消息，先入队的接收者写完时不会提前归还共享的直接内存
+    private void fanOut(int stripe, int audience, OutboundMessage message, Runnable delivery) {
+        Runnable timed = () -> {
+            long start = System.nanoTime();
+            message.retain();
+            try {
+                delivery.run();
+            } finally {
+                message.release();
             }
+            ServerMetrics.FANOUT.recordSince(start);
+        };
+        if (audience <= fanoutInlineThreshold) {
+            timed.run();
+            return;
         }
+        try {
+            fanoutExecutor.execute(stripe, timed);
+        } catch (RejectedExecutionException e) {
+            timed.run();
+        }
+    }
 
-        log.debug("广播消息: {}, 接收者: {}", message, sentCount);
+    private static int stripeOf(ClientSession sender) {
+        return sender != null ? Long.hashCode(sender.getSessionId()) : 0;
     }
 
-    //私聊：发消息给指定用户
-    public void sendToUser(String username, String message) {
-        //流遍历，过滤实现
-        sessionManager.getAllSessions().stream()
-                .filter(session -> username.equals(session.getUsername()) && session.isActive())
-                .forEach(session -> session.sendMessage(message));
+    // ========== 集群 ==========
+
+    private String nodeId() {
+        return clusterBus != null ? clusterBus.getNodeId() : null;
     }
 
-    // 修改sendPrivateMessage方法
-    public boolean sendPrivateMessage(String fromUser, String toUser, String message) {
-        // 查找发送者用户信息
-        UserDao.User fromUserObj = null;
-        UserDao.User toUserObj = null;
-
-        // 从在线用户中查找
-        for (ClientSession session : sessionManager.getAllSessions()) {
-            if (fromUser.equals(session.getUsername())) {
-                fromUserObj = session.getUser();
-            }
-            if (toUser.equals(session.getUsername())) {
-                toUserObj = session.getUser();
-            }
+    private boolean publish(ClusterMessage message) {
+        return clusterBus != null && clusterBus.publish(message);
+    }
+
+    /**
+     * 其他节点发来的消息，在总线的接收线程上调用；只投递给本节点的会话
+     *
+     * 同一发送者的消息按发送者用户名分条带扇出，保持顺序
+     */
+    public void onClusterMessage(ClusterMessage message) {
+        switch (message.getKind()) {
+            case BROADCAST:
+            case NOTICE:
+                deliverToAll(message.toOutbound(), null, stripeOf(message));
+                break;
+            case PRIVATE:
+                deliverPrivate(message.getMessage().getToUser(), message.toOutbound());
+                break;
+            case PRIVATE_VIA_OWNER:
+                routePrivate(message);
+                break;
+            case GROUP:
+                deliverToGroup(message.getGroupId(), message.toOutbound(), stripeOf(message));
+                // 群消息发布给所有节点，追加到本节点的热点历史，/history 才能看到经其他节点发送的消息
+                historyService.cacheRemoteGroup(message.getSenderId(), message.getSenderNickname(),
+                        message.getGroupId(), message.getMessage().getContent(), message.getMessage().getTimestamp());
+                break;
+            case GROUP_MEMBER:
+                groupManager.onRemoteMemberAdded(message.getGroupId(), message.getUserId());
+                break;
+            default:
+                log.warn("未知的节点消息: {}", message);
+                break;
         }
+    }
 
-        // 如果在线用户中没找到，从数据库查找
-        if (fromUserObj == null) {
-            fromUserObj = userDao.findUserByUsername(fromUser);
+    // 本节点是接收者的负责节点：投递本地会话，并转发给接收者所在的其他节点(不回发给发送节点)
+    private void routePrivate(ClusterMessage message) {
+        deliverPrivate(message.getMessage().getToUser(), message.toOutbound());
+        Set<String> nodes = presence != null ? presence.remoteNodesOf(message.getUserId()) : null;
+        if (nodes == null) {
+            return;
         }
-        if (toUserObj == null) {
-            toUserObj = userDao.findUserByUsername(toUser);
+        ClusterMessage direct = message.asDirectPrivate();
+        for (String node : nodes) {
+            if (!node.equals(message.getOrigin())) {
+                clusterBus.send(node, direct);
+            }
         }
+    }
+
+    private static int stripeOf(ClusterMessage message) {
+        String fromUser = message.getMessage() != null ? message.getMessage().getFromUser() : null;
+        return fromUser != null ? fromUser.hashCode() : 0;
+    }
+
+    //私聊：发消息给指定用户，通过用户名索引直接定位会话
+    public void sendToUser(String username, String message) {
+        for (ClientSession session : sessionManager.getSessionsByUsername(username)) {
+            if (session.isActive()) {
+                session.sendMessage(message);
+            }
+        }
+    }
+
+    // 修改sendPrivateMessage方法
+    public boolean sendPrivateMessage(String fromUser, String toUser, String message) {
+        // 从在线用户索引中查找用户信息，没找到再从数据库查找
+        UserDao.Identity fromUserObj = findUser(fromUser);
+        UserDao.Identity toUserObj = findUser(toUser);
 
         if (fromUserObj == null || toUserObj == null) {
             return false;
         }
 
-        // 保存私聊消息到数据库
-        messageDao.savePrivateMessage(fromUserObj.getId(), toUserObj.getId(), message);
+        ChatMessage privateMessage = new ChatMessage(ChatMessage.MessageType.PRIVATE, fromUser, message);
+        privateMessage.setToUser(toUser);
 
         // 发送给接收者（如果在线）
-        boolean targetOnline = false;
-        for (ClientSession session : sessionManager.getAllSessions()) {
-            if (toUser.equals(session.getUsername()) && session.isActive()) {
-                session.sendMessage("[私聊][" + fromUser + "->你]: " + message);
-                targetOnline = true;
+        String deliveredText = "[私聊][" + fromUser + "->你]: " + message;
+        boolean targetOnline = deliverPrivate(toUser, OutboundMessage.chat(privateMessage, deliveredText));
+        boolean forwarded = false;
+        if (presence != null) {
+            // 接收者可能在其他节点登录(包括多端登录)
+            long toUserId = toUserObj.getId();
+            Set<String> nodes = presence.remoteNodesOf(toUserId);
+            if (nodes != null) {
+                // 已知所在节点：直接发过去，一跳送达；只是放入节点链路的发送队列，不代表已送达
+                ClusterMessage direct = ClusterMessage.privateMessage(nodeId(), privateMessage, deliveredText, toUserId);
+                for (String node : nodes) {
+                    forwarded |= clusterBus.send(node, direct);
+                }
+            } else {
+                // 未知：交给负责节点转发，同时订阅，之后的私聊直接发往所在节点
+                forwarded = clusterBus.send(presence.ownerOf(toUserId),
+                        ClusterMessage.privateViaOwner(nodeId(), privateMessage, deliveredText, toUserId));
+                presence.subscribe(toUserId);
             }
         }
 
+        // 保存私聊消息(热点历史 + 数据库)；本节点会话已收到的直接记为已读，登录时不再作为离线消息投递
+        // 发往其他节点的(直接或经负责节点)无法确认是否送达：链路断开会丢弃，在线状态也可能已过期，按未读保存
+        historyService.recordPrivate(fromUserObj, toUserObj, message, targetOnline, privateMessage.getTimestamp());
+
         // 给发送者反馈
-        for (ClientSession session : sessionManager.getAllSessions()) {
-            if (fromUser.equals(session.getUsername()) && session.isActive()) {
-                String status = targetOnline ? "✓" : "✗";
-                session.sendMessage("[私聊][你->" + toUser + "]" + status + ": " + message);
+        for (ClientSession session : sessionManager.getSessionsByUsername(fromUser)) {
+            if (session.isActive()) {
+                String status = targetOnline ? "✓" : forwarded ? "→" : "✗";
+                session.sendMessage(OutboundMessage.chat(privateMessage,
+                        "[私聊][你->" + toUser + "]" + status + ": " + message));
                 break;
             }
         }
 
         log.info("私聊消息: {} -> {}: {}", fromUser, toUser, message);
-        return targetOnline;
+        return targetOnline || forwarded;
+    }
+
+    // 投递给本节点上该用户的所有会话，返回是否有在线会话
+    private boolean deliverPrivate(String toUser, OutboundMessage delivered) {
+        boolean online = false;
+        for (ClientSession session : sessionManager.getSessionsByUsername(toUser)) {
+            if (session.isActive()) {
+                session.sendMessage(delivered);
+                online = true;
+            }
+        }
+        return online;
+    }
+
+    private UserDao.Identity findUser(String username) {
+        for (ClientSession session : sessionManager.getSessionsByUsername(username)) {
+            return session.getUser();
+        }
+        UserDao.User user = userDao.findUserByUsername(username);
+        return user != null ? user.toIdentity() : null;
     }
 
     public void sendSystemMessage(String message) {
         String formattedMessage = "[系统] " + message;
-        broadcastToAll(formattedMessage);
+        // 上下线等系统通知，接收方发送队列满时可优先丢弃
+        broadcastToAll(OutboundMessage.systemNotice(formattedMessage), null);
         log.info("系统消息: {}", message);
     }
 
-    // 扩展handleCommand方法
-    public void handleCommand(ClientSession session, String command) {
-        String[] parts = command.split(" ", 3);
-        String cmd = parts[0].toLowerCase();
-        String param1 = parts.length > 1 ? parts[1] : "";
-        String param2 = parts.length > 2 ? parts[2] : "";
-
-        switch (cmd) {
-            case "/users":
-                listOnlineUsers(session);
-                break;
-            case "/stats":
-                showStats(session);
-                break;
-            case "/help":
-                showHelp(session);
-                break;
-            case "/msg":
-            case "/whisper":
-                handlePrivateMessage(session, param1, param2);
-                break;
-            case "/addfriend":
-                handleAddFriend(session, param1);
-                break;
-            case "/delfriend":
-                handleDeleteFriend(session, param1);
-                break;
-            case "/friends":
-                handleListFriends(session);
-                break;
-            case "/creategroup":
-                handleCreateGroup(session, param1, param2);
-                break;
-            case "/joingroup":
-                handleJoinGroup(session, param1);
-                break;
-            case "/groups":
-                handleListGroups(session);
-                break;
-            case "/groupmsg":
-                handleGroupMessage(session, param1, param2);
-                break;
-            default:
-                session.sendMessage("[系统] 未知命令: " + cmd + "，输入 /help 查看帮助");
-        }
+    /**
+     * 注册内置命令：只访问内存的为 CPU 型，在读线程上直接执行；可能查库的为 IO 型，由命令执行器异步执行
+     */
+    public void registerCommands(CommandRegistry registry) {
+        registry.register(new CommandDefinition("/users", ArgSchema.none(), CommandType.CPU,
+                (session, args) -> listOnlineUsers(session)));
+        registry.register(new CommandDefinition("/stats", ArgSchema.none(), CommandType.CPU,
+                (session, args) -> showStats(session)));
+        registry.register(new CommandDefinition("/help", ArgSchema.none(), CommandType.CPU,
+                (session, args) -> showHelp(session)));
+        registry.register(new CommandDefinition("/msg", ArgSchema.of(2, 0, true, "/msg 用户名 消息内容"), CommandType.IO,
+                (session, args) -> handlePrivateMessage(session, args.get(0), args.get(1)), "/whisper"));
+        registry.register(new CommandDefinition("/addfriend", ArgSchema.of(1, 0, false, "/addfriend 用户名"),
+                CommandType.IO, (session, args) -> handleAddFriend(session, args.get(0))));
+        registry.register(new CommandDefinition("/delfriend", ArgSchema.of(1, 0, false, "/delfriend 用户名"),
+                CommandType.IO, (session, args) -> handleDeleteFriend(session, args.get(0))));
+        registry.register(new CommandDefinition("/friends", ArgSchema.none(), CommandType.IO,
+                (session, args) -> handleListFriends(session)));
+        registry.register(new CommandDefinition("/creategroup", ArgSchema.of(1, 1, true, "/creategroup 群组名称 [描述]"),
+                CommandType.IO, (session, args) -> handleCreateGroup(session, args.get(0), args.get(1))));
+        registry.register(new CommandDefinition("/joingroup", ArgSchema.of(1, 0, false, "/joingroup 群组ID"),
+                CommandType.IO, this::handleJoinGroup));
+        registry.register(new CommandDefinition("/groups", ArgSchema.none(), CommandType.IO,
+                (session, args) -> handleListGroups(session)));
+        registry.register(new CommandDefinition("/groupmsg", ArgSchema.of(2, 0, true, "/groupmsg 群组ID 消息内容"),
+                CommandType.IO, this::handleGroupMessage));
+        registry.register(new CommandDefinition("/history", ArgSchema.of(0, 1, false, "/history 用户名 | /history #群组ID"),
+                CommandType.IO, (session, args) -> handleHistory(session, args.get(0))));
     }
 
-    private void handlePrivateMessage(ClientSession session, String targetUser, String message) {
+    public void handlePrivateMessage(ClientSession session, String targetUser, String message) {
         if (targetUser.isEmpty() || message.isEmpty()) {
             session.sendMessage("[系统] 用法: /msg 用户名 消息内容");
             return;
@@ -181,17 +319,12 @@ public class BroadcastService {
     }
 
     private void handleAddFriend(ClientSession session, String friendUsername) {
-        if (friendUsername.isEmpty()) {
-            session.sendMessage("[系统] 用法: /addfriend 用户名");
-            return;
-        }
-
         if (friendUsername.equals(session.getUsername())) {
             session.sendMessage("[系统] 不能添加自己为好友");
             return;
         }
 
-        UserDao.User currentUser = session.getUser();
+        UserDao.Identity currentUser = session.getUser();
         UserDao.User friendUser = userDao.findUserByUsername(friendUsername);
 
         if (friendUser == null) {
@@ -199,12 +332,12 @@ public class BroadcastService {
             return;
         }
 
-        if (friendDao.isFriend(currentUser.getId(), friendUser.getId())) {
+        if (friendManager.isFriend(currentUser.getId(), friendUser.getId())) {
             session.sendMessage("[系统] " + friendUsername + " 已经是你的好友");
             return;
         }
 
-        if (friendDao.addFriend(currentUser.getId(), friendUser.getId(), friendUser.getNickname())) {
+        if (friendManager.addFriend(currentUser.getId(), friendUser)) {
             session.sendMessage("[系统] 成功添加 " + friendUsername + " 为好友");
         } else {
             session.sendMessage("[系统] 添加好友失败");
@@ -212,12 +345,7 @@ public class BroadcastService {
     }
 
     private void handleDeleteFriend(ClientSession session, String friendUsername) {
-        if (friendUsername.isEmpty()) {
-            session.sendMessage("[系统] 用法: /delfriend 用户名");
-            return;
-        }
-
-        UserDao.User currentUser = session.getUser();
+        UserDao.Identity currentUser = session.getUser();
         UserDao.User friendUser = userDao.findUserByUsername(friendUsername);
 
         if (friendUser == null) {
@@ -225,12 +353,12 @@ public class BroadcastService {
             return;
         }
 
-        if (!friendDao.isFriend(currentUser.getId(), friendUser.getId())) {
+        if (!friendManager.isFriend(currentUser.getId(), friendUser.getId())) {
             session.sendMessage("[系统] " + friendUsername + " 不是你的好友");
             return;
         }
 
-        if (friendDao.removeFriend(currentUser.getId(), friendUser.getId())) {
+        if (friendManager.removeFriend(currentUser.getId(), friendUser.getId())) {
             session.sendMessage("[系统] 成功删除好友 " + friendUsername);
         } else {
             session.sendMessage("[系统] 删除好友失败");
@@ -238,8 +366,8 @@ public class BroadcastService {
     }
 
     private void handleListFriends(ClientSession session) {
-        UserDao.User currentUser = session.getUser();
-        List<FriendDao.FriendInfo> friends = friendDao.getFriends(currentUser.getId());
+        UserDao.Identity currentUser = session.getUser();
+        List<FriendDao.FriendInfo> friends = friendManager.getFriends(currentUser.getId());
 
         if (friends.isEmpty()) {
             session.sendMessage("[系统] 你还没有好友，使用 /addfriend 用户名 添加好友");
@@ -257,13 +385,8 @@ public class BroadcastService {
     }
 
     private void handleCreateGroup(ClientSession session, String groupName, String description) {
-        if (groupName.isEmpty()) {
-            session.sendMessage("[系统] 用法: /creategroup 群组名称 [描述]");
-            return;
-        }
-
-        UserDao.User currentUser = session.getUser();
-        Long groupId = groupDao.createGroup(groupName, description, currentUser.getId());
+        UserDao.Identity currentUser = session.getUser();
+        Long groupId = groupManager.createGroup(groupName, description, currentUser.getId());
 
         if (groupId != null) {
             session.sendMessage("[系统] 群组 '" + groupName + "' 创建成功，ID: " + groupId);
@@ -272,20 +395,16 @@ public class BroadcastService {
         }
     }
 
-    private void handleJoinGroup(ClientSession session, String groupIdStr) {
-        if (groupIdStr.isEmpty()) {
-            session.sendMessage("[系统] 用法: /joingroup 群组ID");
-            return;
-        }
-
+    private void handleJoinGroup(ClientSession session, CommandArgs args) {
         try {
-            Long groupId = Long.parseLong(groupIdStr);
-            UserDao.User currentUser = session.getUser();
+            Long groupId = args.getLong(0);
+            UserDao.Identity currentUser = session.getUser();
 
             // 检查是否已经是群成员
             // 这里简化处理，实际应该检查群是否存在等
 
-            if (groupDao.addGroupMember(groupId, currentUser.getId(), 0)) {
+            if (groupManager.addGroupMember(groupId, currentUser.getId(), 0)) {
+                publish(ClusterMessage.groupMember(nodeId(), groupId, currentUser.getId()));
                 session.sendMessage("[系统] 成功加入群组 " + groupId);
             } else {
                 session.sendMessage("[系统] 加入群组失败");
@@ -297,7 +416,7 @@ public class BroadcastService {
     }
 
     private void handleListGroups(ClientSession session) {
-        UserDao.User currentUser = session.getUser();
+        UserDao.Identity currentUser = session.getUser();
         List<GroupDao.GroupInfo> groups = groupDao.getUserGroups(currentUser.getId());
 
         if (groups.isEmpty()) {
@@ -320,42 +439,88 @@ public class BroadcastService {
         session.sendMessage(groupList.toString());
     }
 
-    private void handleGroupMessage(ClientSession session, String groupIdStr, String message) {
-        if (groupIdStr.isEmpty() || message.isEmpty()) {
+    private void handleGroupMessage(ClientSession session, CommandArgs args) {
+        long groupId;
+        try {
+            groupId = args.getLong(0);
+        } catch (NumberFormatException e) {
+            session.sendMessage("[系统] 群组ID必须是数字");
+            return;
+        }
+        handleGroupMessage(session, groupId, args.get(1));
+    }
+
+    public void handleGroupMessage(ClientSession session, Long groupId, String message) {
+        if (groupId == null || message.isEmpty()) {
             session.sendMessage("[系统] 用法: /groupmsg 群组ID 消息内容");
             return;
         }
+        // 成员关系来自内存索引，校验不需要查库
+        if (!groupManager.isMember(groupId, session.getUser().getId())) {
+            session.sendMessage("[系统] 你不是群组 " + groupId + " 的成员");
+            return;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquireGroup(session, groupId)) {
+            return;
+        }
 
-        try {
-            Long groupId = Long.parseLong(groupIdStr);
-            // 这里应该检查用户是否在群组中
-
-            // 获取群组成员
-            List<GroupDao.GroupMember> members = groupDao.getGroupMembers(groupId);
-
-            // 发送群消息
-            String groupMessage = "[群聊][" + session.getUsername() + "]: " + message;
-            for (GroupDao.GroupMember member : members) {
-                // 查找在线的群成员
-                for (ClientSession clientSession : sessionManager.getAllSessions()) {
-                    if (member.getUserId().equals(clientSession.getUser().getId()) &&
-                            clientSession.isActive()) {
-                        clientSession.sendMessage(groupMessage);
-                    }
+        // 发送群消息
+        ChatMessage chatMessage = new ChatMessage(ChatMessage.MessageType.GROUP, session.getUsername(), message);
+        chatMessage.setGroupId(groupId);
+        OutboundMessage groupMessage = OutboundMessage.chat(chatMessage,
+                "[群聊][" + session.getUsername() + "]: " + message);
+        deliverToGroup(groupId, groupMessage, stripeOf(session));
+        publish(ClusterMessage.group(nodeId(), chatMessage, groupMessage.getText(), session.getUser()));
+
+        // 保存群消息(热点历史 + 数据库)，created_time 与转发给其他节点的时间戳一致
+        historyService.recordGroup(session.getUser(), groupId, message, chatMessage.getTimestamp());
+
+        session.sendMessage("[系统] 群消息发送成功");
+    }
+
+    // 只遍历本节点的在线成员
+    private void deliverToGroup(Long groupId, OutboundMessage groupMessage, int stripe) {
+        Set<ClientSession> members = groupManager.getOnlineMembers(groupId);
+        fanOut(stripe, members.size(), groupMessage, () -> {
+            for (ClientSession clientSession : members) {
+                if (clientSession.isActive()) {
+                    clientSession.sendMessage(groupMessage);
+                } else {
+                    groupManager.removeStaleSession(groupId, clientSession);
                 }
             }
+        });
+    }
 
-            // 保存群消息到数据库
-            messageDao.saveMessage(2, session.getUser().getId(), null, groupId, message, 1, null);
+    // /history 用户名 | /history #群组ID 查看最近的记录，不带参数继续往前翻页
+    private void handleHistory(ClientSession session, String target) {
+        if (target.isEmpty()) {
+            historyService.showMore(session);
+            return;
+        }
 
-            session.sendMessage("[系统] 群消息发送成功");
+        if (target.startsWith("#")) {
+            try {
+                Long groupId = Long.parseLong(target.substring(1));
+                if (!groupManager.isMember(groupId, session.getUser().getId())) {
+                    session.sendMessage("[系统] 你不是群组 " + groupId + " 的成员");
+                    return;
+                }
+                historyService.showGroupHistory(session, groupId);
+            } catch (NumberFormatException e) {
+                session.sendMessage("[系统] 群组ID必须是数字");
+            }
+            return;
+        }
 
-        } catch (NumberFormatException e) {
-            session.sendMessage("[系统] 群组ID必须是数字");
+        UserDao.User other = userDao.findUserByUsername(target);
+        if (other == null) {
+            session.sendMessage("[系统] 用户 " + target + " 不存在");
+            return;
         }
+        historyService.showPrivateHistory(session, other);
     }
 
-
     private void listOnlineUsers(ClientSession session) {
         Collection<ClientSession> sessions = sessionManager.getAllSessions();
         StringBuilder userList = new StringBuilder("[系统] 在线用户 (" + sessions.size() + "): ");
@@ -374,28 +539,12 @@ public class BroadcastService {
     //在线用户数：通过session.size()获取
     private void showStats(ClientSession session) {
         Collection<ClientSession> sessions = sessionManager.getAllSessions();
-        session.sendMessage("[系统] 服务器状态 - 在线用户: " + sessions.size());
-    }
-
-    private void handlePrivateMessageCommand(ClientSession session, String param) {
-        if (param.isEmpty()) {
-            session.sendMessage("[系统] 用法: /msg 用户名 消息内容");
-            return;
-        }
-
-        String[] msgParts = param.split(" ", 2);
-        if (msgParts.length < 2) {
-            session.sendMessage("[系统] 用法: /msg 用户名 消息内容");
-            return;
-        }
-
-        String targetUser = msgParts[0];
-        String privateMsg = msgParts[1];
-        if (sendPrivateMessage(session.getUsername(), targetUser, privateMsg)) {
-            log.info("{} 发送私聊给 {}: {}", session.getUsername(), targetUser, privateMsg);
-        } else {
-            session.sendMessage("[系统] 用户 " + targetUser + " 不在线或不存在");
-        }
+        OutboundQueue queue = session.getOutboundQueue();
+        WriteStats writeStats = session.getWriteStats();
+        session.sendMessage("[系统] 服务器状态 - 在线用户: " + sessions.size() +
+                ", 你的发送队列: " + queue.size() + "/" + queue.getCapacity() +
+                ", 已丢弃: " + queue.getDroppedCount() +
+                String.format(", 平均字节/次写: %.1f", writeStats.getBytesPerWrite()));
     }
 
     // 更新帮助信息
@@ -416,7 +565,11 @@ public class BroadcastService {
                 "/creategroup 名称 [描述] - 创建群组\n" +
                 "/joingroup ID   - 加入群组\n" +
                 "/groups         - 查看我的群组\n" +
-                "/groupmsg ID 消息 - 发送群消息\n";
+                "/groupmsg ID 消息 - 发送群消息\n\n" +
+                "历史记录:\n" +
+                "/history 用户   - 查看与该用户的私聊记录\n" +
+                "/history #ID   - 查看群聊记录\n" +
+                "/history        - 继续查看更早的记录\n";
 
         session.sendMessage(help);
     }
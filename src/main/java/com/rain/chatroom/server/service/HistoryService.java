@@ -0,0 +1,209 @@
+package com.rain.chatroom.server.service;
+
+import com.rain.chatroom.server.cache.HistoryCache;
+import com.rain.chatroom.server.dao.AsyncMessageWriter;
+import com.rain.chatroom.server.dao.MessageDao;
+import com.rain.chatroom.server.dao.UserDao;
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.HistoryCursor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 历史消息 - 私聊/群聊消息的写入和 /history 分页查询
+ *
+ * 设计思路：
+ * 1. 写路径：消息在服务器接收时确定 created_time，先追加到 HistoryCache 再交给异步落库；
+ *    集群模式下其他节点转发来的群消息只追加到本节点的 HistoryCache(由发送节点落库)，
+ *    否则本节点的环会缺少经其他节点发送的消息
+ * 3. 集群模式下私聊只发往接收者所在的节点，没有哪个节点能看到会话的全部消息，私聊历史不经过环、直接查数据库
+ * 2. 读路径：最近的消息直接从 HistoryCache 的环中读取；环里不够时
+ *    按 (created_time, id) 键集分页查数据库，游标保存在会话上，/history 继续往前翻
+ */
+@Slf4j
+public class HistoryService {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MM-dd HH:mm");
+
+    private final HistoryCache cache;
+    private final MessageDao messageDao;
+    private final AsyncMessageWriter messageWriter;
+    private final int pageSize;
+    // 私聊会话是否使用环，集群模式下为 false
+    private final boolean cachePrivate;
+
+    public HistoryService(HistoryCache cache, MessageDao messageDao, AsyncMessageWriter messageWriter, int pageSize,
+                          boolean cachePrivate) {
+        this.cache = cache;
+        this.messageDao = messageDao;
+        this.messageWriter = messageWriter;
+        this.pageSize = Math.max(1, pageSize);
+        this.cachePrivate = cachePrivate;
+    }
+
+    /**
+     * 记录一条私聊消息；delivered 为 true 表示接收者在线且已投递，入库即为已读
+     *
+     * @param createdMillis 消息的 created_time，与转发给其他节点的时间戳一致
+     */
+    public void recordPrivate(UserDao.Identity from, UserDao.Identity to, String content, boolean delivered,
+                              long createdMillis) {
+        MessageDao.ChatMessage message = newMessage(1, from.getId(), from.getNickname(), content, createdMillis);
+        message.setToUserId(to.getId());
+        message.setRead(delivered);
+        if (cachePrivate) {
+            cache.append(HistoryCache.privateKey(from.getId(), to.getId()), message);
+        }
+        messageWriter.save(message);
+    }
+
+    public void recordGroup(UserDao.Identity from, Long groupId, String content, long createdMillis) {
+        MessageDao.ChatMessage message = newGroup(from.getId(), from.getNickname(), groupId, content, createdMillis);
+        cache.append(HistoryCache.groupKey(groupId), message);
+        messageWriter.save(message);
+    }
+
+    /**
+     * 其他节点转发来的群消息：只追加到本节点的热点历史，落库由发送节点完成
+     */
+    public void cacheRemoteGroup(long fromUserId, String fromNickname, Long groupId, String content,
+                                 long createdMillis) {
+        cache.append(HistoryCache.groupKey(groupId),
+                newGroup(fromUserId, fromNickname, groupId, content, createdMillis));
+    }
+
+    private static MessageDao.ChatMessage newGroup(long fromUserId, String fromNickname, Long groupId,
+                                                   String content, long createdMillis) {
+        MessageDao.ChatMessage message = newMessage(2, fromUserId, fromNickname, content, createdMillis);
+        message.setGroupId(groupId);
+        return message;
+    }
+
+    private static MessageDao.ChatMessage newMessage(int messageType, long fromUserId, String fromNickname,
+                                                     String content, long createdMillis) {
+        MessageDao.ChatMessage message = new MessageDao.ChatMessage();
+        message.setMessageType(messageType);
+        message.setFromUserId(fromUserId);
+        message.setFromNickname(fromNickname);
+        message.setContent(content);
+        message.setContentType(1);
+        message.setCreatedTime(new Timestamp(createdMillis));
+        return message;
+    }
+
+    public void showPrivateHistory(ClientSession session, UserDao.User other) {
+        String key = HistoryCache.privateKey(session.getUser().getId(), other.getId());
+        showPage(session, key, "与 " + other.getUsername() + " 的私聊", Long.MAX_VALUE, 0);
+    }
+
+    public void showGroupHistory(ClientSession session, Long groupId) {
+        showPage(session, HistoryCache.groupKey(groupId), "群 " + groupId, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * 接着上一次 /history 的位置往前翻一页
+     */
+    public void showMore(ClientSession session) {
+        HistoryCursor cursor = session.getHistoryCursor();
+        if (cursor == null) {
+            session.sendMessage("[系统] 用法: /history 用户名 | /history #群组ID，之后输入 /history 继续往前翻页");
+            return;
+        }
+        showPage(session, cursor.getConversationKey(), cursor.getTitle(),
+                cursor.getBeforeMillis(), cursor.getBeforeId());
+    }
+
+    private void showPage(ClientSession session, String key, String title, long beforeMillis, long beforeId) {
+        List<MessageDao.ChatMessage> messages = loadPage(key, beforeMillis, beforeId, pageSize);
+        if (messages == null) {
+            session.sendMessage("[系统] 获取聊天记录失败，请稍后重试");
+            return;
+        }
+        if (messages.isEmpty()) {
+            session.setHistoryCursor(null);
+            session.sendMessage("[系统] " + title + " 没有更早的消息了");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder("[系统] ").append(title).append(" 的聊天记录:\n");
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            MessageDao.ChatMessage message = messages.get(i);
+            text.append('[').append(TIME_FORMAT.format(message.getCreatedTime().toLocalDateTime())).append("][")
+                    .append(message.getFromNickname()).append("]: ").append(message.getContent()).append('\n');
+        }
+
+        if (messages.size() >= pageSize) {
+            MessageDao.ChatMessage oldest = messages.get(messages.size() - 1);
+            session.setHistoryCursor(new HistoryCursor(key, title, oldest.getCreatedTime().getTime(),
+                    oldest.getId() != null ? oldest.getId() : 0));
+            text.append("[系统] 输入 /history 查看更早的消息");
+        } else {
+            session.setHistoryCursor(null);
+            text.append("[系统] 已到最早的消息");
+        }
+        session.sendMessage(text.toString());
+    }
+
+    /**
+     * 游标之前的一页消息，按时间倒序；查询数据库失败返回 null
+     *
+     * beforeId 不为 0 的游标来自数据库中的消息，直接按键集查数据库；
+     * 否则先读缓存中的环，不够的部分再从环的时间边界往前查数据库
+     */
+    List<MessageDao.ChatMessage> loadPage(String key, long beforeMillis, long beforeId, int limit) {
+        if (beforeId != 0) {
+            return query(key, new Timestamp(beforeMillis), beforeId, limit);
+        }
+        if (!cachePrivate && HistoryCache.isPrivateKey(key)) {
+            return query(key, beforeMillis != Long.MAX_VALUE ? new Timestamp(beforeMillis) : null, 0, limit);
+        }
+
+        HistoryCache.Slice slice = cache.read(key, beforeMillis, limit);
+        if (slice.isNeedsSeed()) {
+            // 会话第一次被读取：用数据库中早于环内消息的部分补足
+            List<MessageDao.ChatMessage> older = new ArrayList<>();
+            if (slice.getSeedLimit() > 0) {
+                long seedBefore = slice.getDatabaseBeforeMillis();
+                older = query(key, seedBefore != Long.MAX_VALUE ? new Timestamp(seedBefore) : null, 0,
+                        slice.getSeedLimit());
+                if (older == null) {
+                    return null;
+                }
+            }
+            cache.seed(key, older, slice.getSeedLimit());
+            slice = cache.read(key, beforeMillis, limit);
+            if (slice.isNeedsSeed()) {
+                // 刚补足就因内存预算被淘汰，直接查数据库
+                return query(key, beforeMillis != Long.MAX_VALUE ? new Timestamp(beforeMillis) : null, 0, limit);
+            }
+        }
+
+        List<MessageDao.ChatMessage> messages = new ArrayList<>(slice.getMessages());
+        if (messages.size() < limit && !slice.isComplete()) {
+            List<MessageDao.ChatMessage> older = query(key, new Timestamp(slice.getDatabaseBeforeMillis()), 0,
+                    limit - messages.size());
+            if (older == null) {
+                return null;
+            }
+            messages.addAll(older);
+        }
+        return messages;
+    }
+
+    // 会话 key 的格式见 HistoryCache.privateKey / groupKey
+    private List<MessageDao.ChatMessage> query(String key, Timestamp before, long beforeId, int limit) {
+        String[] parts = key.split(":");
+        if ("p".equals(parts[0])) {
+            return messageDao.getPrivateHistoryBefore(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    before, beforeId, limit);
+        }
+        return messageDao.getGroupHistoryBefore(Long.parseLong(parts[1]), before, beforeId, limit);
+    }
+
+    public HistoryCache getCache() {
+        return cache;
+    }
+}
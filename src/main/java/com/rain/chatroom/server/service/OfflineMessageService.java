@@ -0,0 +1,197 @@
+package com.rain.chatroom.server.service;
+
+import com.rain.chatroom.common.model.ChatMessage;
+import com.rain.chatroom.server.dao.MessageDao;
+import com.rain.chatroom.server.handler.ClientSession;
+import com.rain.chatroom.server.handler.OutboundMessage;
+import com.rain.chatroom.server.handler.OutboundQueue;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 离线消息投递 - 登录成功后把未读私聊分页推送给用户
+ *
+ * 设计思路：
+ * 1. 按 (created_time, id) 键集分页，一次只读取 chunkSize 条，积压再多也不会一次性加载进内存
+ * 2. 每页放入会话发送队列后，等写线程/事件循环把这一页全部取走，才标记这一页为已读并读取下一页；
+ *    客户端读得慢时投递随之变慢，不会把发送队列挤满而触发丢弃或断开
+ * 3. 等待期间不占用线程：条件不满足时把自己重新调度到 pollIntervalMillis 之后
+ * 4. 连接断开、发送队列丢弃过消息或数据库出错时停止投递，尚未确认的页保持未读，下次登录重新投递
+ *
+ * 投递期间新到的私聊照常实时送达，因此可能先于较早的离线消息显示
+ */
+@Slf4j
+public class OfflineMessageService {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MM-dd HH:mm");
+
+    private final MessageDao messageDao;
+    private final ScheduledExecutorService executor;
+    private final int chunkSize;
+    private final long pollIntervalMillis;
+
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder chunkCount = new LongAdder();
+
+    public OfflineMessageService(MessageDao messageDao, ScheduledExecutorService executor,
+                                 int chunkSize, long pollIntervalMillis) {
+        this.messageDao = messageDao;
+        this.executor = executor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pollIntervalMillis = Math.max(1, pollIntervalMillis);
+    }
+
+    /**
+     * 登录成功后调用，投递在后台进行，不阻塞连接线程
+     */
+    public void deliver(ClientSession session) {
+        Delivery delivery = new Delivery(session);
+        try {
+            executor.execute(delivery);
+        } catch (RejectedExecutionException e) {
+            log.debug("服务器关闭中，跳过离线消息投递: {}", session.getUsername());
+        }
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    public long getChunkCount() {
+        return chunkCount.sum();
+    }
+
+    // 单个会话的投递进度，同一时刻只在一个调度线程上运行
+    private final class Delivery implements Runnable {
+        private final ClientSession session;
+        private final Long userId;
+        private final int pageSize;
+
+        // 键集游标：上一页最后一条消息
+        private Timestamp afterCreated;
+        private long afterId;
+
+        // 已放入发送队列、等待写出确认的一页
+        private List<Long> pendingIds;
+        private boolean pendingLastPage;
+        private long pendingEnqueuedMark;
+        private long pendingDroppedMark;
+        private int total;
+
+        Delivery(ClientSession session) {
+            this.session = session;
+            this.userId = session.getUser().getId();
+            // 一页至少要能整页放进发送队列
+            this.pageSize = Math.max(1, Math.min(chunkSize, session.getOutboundQueue().getCapacity() / 2));
+        }
+
+        @Override
+        public void run() {
+            try {
+                step();
+            } catch (Exception e) {
+                log.error("离线消息投递异常: {}, {}", session.getUsername(), e.getMessage(), e);
+            }
+        }
+
+        private void step() {
+            if (!session.isActive()) {
+                return;
+            }
+            OutboundQueue queue = session.getOutboundQueue();
+
+            if (pendingIds != null) {
+                if (queue.getDroppedCount() != pendingDroppedMark) {
+                    session.sendMessage("[系统] 部分离线消息未能送达，将在下次登录时重新投递");
+                    log.warn("离线消息投递期间发送队列丢弃了消息，停止投递: {}", session.getUsername());
+                    return;
+                }
+                if (queue.getPolledCount() < pendingEnqueuedMark) {
+                    reschedule();
+                    return;
+                }
+                // 这一页已全部交给传输层，确认已读
+                if (!messageDao.markMessagesRead(userId, pendingIds)) {
+                    return;
+                }
+                chunkCount.increment();
+                deliveredCount.add(pendingIds.size());
+                total += pendingIds.size();
+                pendingIds = null;
+                if (pendingLastPage) {
+                    finish();
+                    return;
+                }
+            }
+
+            // 发送队列里还有较多其他消息时先等待，保证下一页能整页放入
+            if (queue.size() > queue.getCapacity() - pageSize) {
+                reschedule();
+                return;
+            }
+
+            List<MessageDao.ChatMessage> page = messageDao.getUnreadMessagesPage(userId, afterCreated, afterId, pageSize);
+            if (page == null) {
+                session.sendMessage("[系统] 读取离线消息失败，将在下次登录时重新投递");
+                return;
+            }
+            if (page.isEmpty()) {
+                finish();
+                return;
+            }
+
+            if (total == 0) {
+                session.sendMessage("[系统] 你有未读的离线消息:");
+            }
+            pendingDroppedMark = queue.getDroppedCount();
+            List<Long> ids = new ArrayList<>(page.size());
+            for (MessageDao.ChatMessage message : page) {
+                session.sendMessage(toOutbound(message));
+                ids.add(message.getId());
+            }
+            // 读取时可能已混入其他发送方的消息，只会让确认稍晚，不会提前
+            pendingEnqueuedMark = queue.getEnqueuedCount();
+            pendingIds = ids;
+            pendingLastPage = page.size() < pageSize;
+
+            MessageDao.ChatMessage last = page.get(page.size() - 1);
+            afterCreated = last.getCreatedTime();
+            afterId = last.getId();
+            reschedule();
+        }
+
+        private OutboundMessage toOutbound(MessageDao.ChatMessage message) {
+            String from = message.getFromNickname() != null ? message.getFromNickname() : "未知用户";
+            ChatMessage chatMessage = new ChatMessage(ChatMessage.MessageType.PRIVATE, from, message.getContent());
+            chatMessage.setToUser(session.getUsername());
+            String time = "";
+            if (message.getCreatedTime() != null) {
+                chatMessage.setTimestamp(message.getCreatedTime().getTime());
+                time = " " + TIME_FORMAT.format(message.getCreatedTime().toLocalDateTime());
+            }
+            return OutboundMessage.chat(chatMessage, "[离线私聊][" + from + "->你]" + time + ": " + message.getContent());
+        }
+
+        private void finish() {
+            if (total > 0) {
+                session.sendMessage("[系统] 离线消息已全部送达, 共 " + total + " 条");
+                log.info("离线消息投递完成: {}, {} 条", session.getUsername(), total);
+            }
+        }
+
+        private void reschedule() {
+            try {
+                executor.schedule(this, pollIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.debug("服务器关闭中，停止离线消息投递: {}", session.getUsername());
+            }
+        }
+    }
+}